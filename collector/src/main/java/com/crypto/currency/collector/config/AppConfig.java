@@ -3,6 +3,7 @@ package com.crypto.currency.collector.config;
 import com.crypto.currency.common.http.AsynHttpClient;
 import com.crypto.currency.common.http.HttpClientConnector;
 import com.crypto.currency.common.http.RxWebSocketClient;
+import com.crypto.currency.common.http.WebSocketSessionManager;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.context.annotation.Bean;
@@ -29,10 +30,34 @@ public class AppConfig {
         return new AsynHttpClient.DefaultWebClient(client);
     }
 
+    /**
+     * one connection pool per exchange, the settings of the pools come from @Exchange
+     *
+     * @return
+     */
+    @Bean
+    public AsynHttpClient.PooledWebClients createPooledWebClients() {
+
+        return AsynHttpClient.builder().isSecure(true).acquireTimeout(50000).readTimeout(30).writeTimeout(30)
+            .connectTimeout(30000).buildPooled();
+    }
+
     @Bean
     public RxWebSocketClient createWebSocketClient() {
 
         return RxWebSocketClient.create(
             HttpClientConnector.create().isSecure(true).connectTimeout(60000).readTimeout(15).writeTimeout(15).build());
     }
+
+    /**
+     * the long-lived websocket sessions, one per endpoint. the heartbeats keep them under the read timeout
+     *
+     * @return
+     */
+    @Bean(destroyMethod = "close")
+    public WebSocketSessionManager createWebSocketSessionManager() {
+
+        return WebSocketSessionManager.create(
+            HttpClientConnector.create().isSecure(true).connectTimeout(60000).readTimeout(30).writeTimeout(15).build());
+    }
 }
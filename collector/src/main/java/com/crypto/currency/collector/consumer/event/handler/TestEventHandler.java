@@ -3,6 +3,7 @@ package com.crypto.currency.collector.consumer.event.handler;
 import com.crypto.currency.collector.config.KafkaConfig;
 import com.crypto.currency.collector.consumer.event.SchedulerTaskEvent;
 import com.crypto.currency.collector.exchange.IExchange;
+import com.crypto.currency.collector.exchange.TickerSnapshotStore;
 import com.crypto.currency.collector.support.FunctionalFactory;
 import com.crypto.currency.common.utils.CollectionUtils;
 import com.crypto.currency.common.utils.DateTimeUtils;
@@ -10,7 +11,9 @@ import com.crypto.currency.common.utils.JacksonUtils;
 import com.crypto.currency.common.utils.SpringBeanUtils;
 import com.crypto.currency.common.utils.StringUtils;
 import com.crypto.currency.data.entity.ExchangeScheduleTaskEntity;
+import com.crypto.currency.data.entity.OrderBookEntity;
 import com.crypto.currency.data.entity.TickerEntity;
+import com.crypto.currency.data.enums.DataType;
 import com.lmax.disruptor.WorkHandler;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.producer.ProducerRecord;
@@ -23,6 +26,7 @@ import reactor.kafka.sender.SenderRecord;
 
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * @author Panzi
@@ -50,34 +54,79 @@ public class TestEventHandler implements WorkHandler<SchedulerTaskEvent> {
 
     private void sendMessage(KafkaSender<String, String> producer, ExchangeScheduleTaskEntity taskEntity) {
         log.info("producer={},taskEntity={}", producer, taskEntity.toString());
-        Publisher<SenderRecord<String, String, TickerEntity>> publisher = buildSenderRecordPublisher(taskEntity);
+        if (taskEntity.getType() == DataType.ORDER_BOOK) {
+            producer.send(buildOrderBookRecordPublisher(taskEntity)).subscribe(r -> {
+                if (r.exception() != null) {
+                    log.error("send order book failed, taskEntity={}", taskEntity, r.exception());
+                }
+            }, e -> log.error("send order book failed, taskEntity={}", taskEntity, e));
+            return;
+        }
+        final TickerSnapshotStore snapshotStore = SpringBeanUtils.getBean(TickerSnapshotStore.class);
+        producer.send(buildSenderRecordPublisher(taskEntity, snapshotStore)).subscribe(r -> {
+            if (r.exception() != null) {
+                log.error("send tickers failed, taskEntity={}", taskEntity, r.exception());
+                snapshotStore.requestSnapshot(taskEntity.getExchangeId());
+            }
+        }, e -> {
+            log.error("send tickers failed, taskEntity={}", taskEntity, e);
+            snapshotStore.requestSnapshot(taskEntity.getExchangeId());
+        });
     }
 
     /**
+     * one record per order book, the levels are already truncated to the depth
+     *
      * @param taskEntity
      * @return
      */
-    private Publisher<SenderRecord<String, String, TickerEntity>> buildSenderRecordPublisher(
+    private Publisher<SenderRecord<String, String, OrderBookEntity>> buildOrderBookRecordPublisher(
         ExchangeScheduleTaskEntity taskEntity) {
 
+        final IExchange exchange = FunctionalFactory.getExchange(taskEntity.getExchangeId().toString());
+        return Mono.just(taskEntity).flatMap(t -> exchange.getOrderBooksData(taskEntity)).map(r -> {
+            r.setPushTime(DateTimeUtils.nowUTC());
+            return SenderRecord.create(
+                new ProducerRecord<>(KafkaConfig.getTestProducerConfig().getTopic(), StringUtils.uuid(),
+                    JacksonUtils.serialize(r)), r);
+        });
+    }
+
+    /**
+     * @param taskEntity
+     * @param snapshotStore
+     * @return
+     */
+    private Publisher<SenderRecord<String, String, TickerEntity>> buildSenderRecordPublisher(
+        ExchangeScheduleTaskEntity taskEntity, TickerSnapshotStore snapshotStore) {
+
         final IExchange exchange = FunctionalFactory.getExchange(taskEntity.getExchangeId().toString());
         Publisher<SenderRecord<String, String, TickerEntity>> tickerPublisher;
-        tickerPublisher = Mono.just(taskEntity).flatMap(t -> exchange.getTickerData(taskEntity)).map(r -> {
+        final boolean fullQuery = exchange.isFullQuery(taskEntity);
+        tickerPublisher = Mono.just(taskEntity).flatMap(t -> exchange.getTickerData(taskEntity))
+            .map(r -> snapshotStore.toPublished(r, fullQuery)).map(r -> {
             r.setPushTime(DateTimeUtils.nowUTC());
             List<TickerEntity.CMCTicker> cmcTickers = r.getCmcTickers();
             log.info("cmcTickers:={}", cmcTickers);
+            if (r.isDelta() && CollectionUtils.isEmpty(cmcTickers)) {
+                return List.<SenderRecord<String, String, TickerEntity>>of();
+            }
             if (!CollectionUtils.isEmpty(cmcTickers) && cmcTickers.size() > THRESHOLD) {
                 List<List<TickerEntity.CMCTicker>> partition =
                     CollectionUtils.groupListByQuantity(cmcTickers, THRESHOLD);
-                return partition.stream().map(sub -> {
+                return IntStream.range(0, partition.size()).mapToObj(i -> {
                     TickerEntity entity = new TickerEntity();
                     BeanUtils.copyProperties(r, entity);
-                    entity.setCmcTickers(sub);
+                    entity.setCmcTickers(partition.get(i));
+                    entity.setPart(i + 1);
+                    entity.setParts(partition.size());
                     return SenderRecord.create(
                         new ProducerRecord<>(KafkaConfig.getTestProducerConfig().getTopic(), StringUtils.uuid(),
                             JacksonUtils.serialize(entity)), entity);
                 }).collect(Collectors.toList());
             } else {
+                r.setPart(1);
+                r.setParts(1);
                 return List.of(SenderRecord.create(
                     new ProducerRecord<>(KafkaConfig.getTestProducerConfig().getTopic(), StringUtils.uuid(),
                         JacksonUtils.serialize(r)), r));
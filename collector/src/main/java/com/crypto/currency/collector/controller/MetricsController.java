@@ -0,0 +1,194 @@
+package com.crypto.currency.collector.controller;
+
+import com.crypto.currency.collector.exchange.AExchange;
+import com.crypto.currency.collector.exchange.ExchangeTickerStreams;
+import com.crypto.currency.collector.exchange.LatestTickerBook;
+import com.crypto.currency.collector.exchange.LiveOrderBook;
+import com.crypto.currency.collector.exchange.TickerSnapshotStore;
+import com.crypto.currency.common.http.AdaptiveLimiter;
+import com.crypto.currency.common.http.AsynHttpClient;
+import com.crypto.currency.common.http.Bulkhead;
+import com.crypto.currency.common.http.CircuitBreaker;
+import com.crypto.currency.common.http.ConnectionPoolGauges;
+import com.crypto.currency.common.http.LatencyTracker;
+import com.crypto.currency.common.http.MetadataCache;
+import com.crypto.currency.common.http.RateLimiter;
+import com.crypto.currency.common.http.TrafficCounter;
+import com.crypto.currency.common.http.ValidatorCache;
+import com.crypto.currency.common.http.WebSocketSessionManager;
+import com.google.common.collect.Maps;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+/**
+ * @author Panzi
+ * @Description the runtime metrics of the collector
+ * @date 2022/6/12 21:30
+ */
+@RestController
+@RequestMapping("/metrics")
+public class MetricsController {
+
+    @Autowired
+    private AsynHttpClient.PooledWebClients pooledWebClients;
+
+    @Autowired
+    private WebSocketSessionManager sessionManager;
+
+    @Autowired
+    private ExchangeTickerStreams tickerStreams;
+
+    @Autowired
+    private TickerSnapshotStore tickerSnapshotStore;
+
+    @Autowired
+    private Map<String, AExchange> exchanges;
+
+    /**
+     * the connection pool gauges by exchange
+     *
+     * @return
+     */
+    @GetMapping("/pools")
+    public ResponseEntity<Map<String, ConnectionPoolGauges.PoolGauge>> pools() {
+        return new ResponseEntity<>(pooledWebClients.gauges(), HttpStatus.OK);
+    }
+
+    /**
+     * the conditional get hit/miss/bytes-saved counters by exchange
+     *
+     * @return
+     */
+    @GetMapping("/validators")
+    public ResponseEntity<Map<String, ValidatorCache.Stats>> validators() {
+        return new ResponseEntity<>(pooledWebClients.validatorStats(), HttpStatus.OK);
+    }
+
+    /**
+     * the rate limiters by exchange: tokens, pause and the throttled count
+     *
+     * @return
+     */
+    @GetMapping("/limits")
+    public ResponseEntity<Map<String, RateLimiter.Stats>> limits() {
+        return new ResponseEntity<>(pooledWebClients.rateLimiterStats(), HttpStatus.OK);
+    }
+
+    /**
+     * the quota usage reported by the exchanges and the adapted concurrency
+     *
+     * @return
+     */
+    @GetMapping("/usage")
+    public ResponseEntity<Map<String, AdaptiveLimiter.Stats>> usage() {
+        return new ResponseEntity<>(pooledWebClients.usageStats(), HttpStatus.OK);
+    }
+
+    /**
+     * the latency percentiles, the hedge rate and the hedge win rate by exchange
+     *
+     * @return
+     */
+    @GetMapping("/latency")
+    public ResponseEntity<Map<String, LatencyTracker.Stats>> latency() {
+        return new ResponseEntity<>(pooledWebClients.latencyStats(), HttpStatus.OK);
+    }
+
+    /**
+     * the wire bytes and the decompressed body bytes by exchange
+     *
+     * @return
+     */
+    @GetMapping("/traffic")
+    public ResponseEntity<Map<String, TrafficCounter.Stats>> traffic() {
+        return new ResponseEntity<>(pooledWebClients.trafficStats(), HttpStatus.OK);
+    }
+
+    /**
+     * the websocket sessions by endpoint: connected, reconnects, routed and unrouted messages
+     *
+     * @return
+     */
+    @GetMapping("/websockets")
+    public ResponseEntity<Map<String, WebSocketSessionManager.SessionStats>> websockets() {
+        return new ResponseEntity<>(sessionManager.stats(), HttpStatus.OK);
+    }
+
+    /**
+     * the streamed ticker books by exchange: symbols, updates and the last update
+     *
+     * @return
+     */
+    @GetMapping("/streams")
+    public ResponseEntity<Map<String, LatestTickerBook.Stats>> streams() {
+        return new ResponseEntity<>(tickerStreams.stats(), HttpStatus.OK);
+    }
+
+    /**
+     * the metadata caches by exchange: age, hits, stale hits, loads and failures
+     *
+     * @return
+     */
+    @GetMapping("/metadata")
+    public ResponseEntity<Map<String, Map<String, MetadataCache.Stats>>> metadata() {
+
+        Map<String, Map<String, MetadataCache.Stats>> stats = Maps.newTreeMap();
+        exchanges.forEach((name, exchange) -> stats.put(name, exchange.metadataStats()));
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    /**
+     * the live order books by exchange and symbol: synced, levels, snapshots, updates and gaps
+     *
+     * @return
+     */
+    @GetMapping("/orderbooks")
+    public ResponseEntity<Map<String, Map<String, LiveOrderBook.Stats>>> orderBooks() {
+
+        Map<String, Map<String, LiveOrderBook.Stats>> stats = Maps.newTreeMap();
+        exchanges.forEach((name, exchange) -> stats.put(name, exchange.liveOrderBookStats()));
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    /**
+     * the published tickers by exchange id: full snapshots, tickers sent and left out of the deltas
+     *
+     * @return
+     */
+    @GetMapping("/tickers")
+    public ResponseEntity<Map<Integer, TickerSnapshotStore.Stats>> tickers() {
+        return new ResponseEntity<>(tickerSnapshotStore.stats(), HttpStatus.OK);
+    }
+
+    /**
+     * the circuit breakers by exchange: state, failure and slow call rates, rejected tasks
+     *
+     * @return
+     */
+    @GetMapping("/breakers")
+    public ResponseEntity<Map<String, CircuitBreaker.Stats>> breakers() {
+
+        Map<String, CircuitBreaker.Stats> stats = Maps.newTreeMap();
+        exchanges.forEach((name, exchange) -> stats.put(name, exchange.circuitBreakerStats()));
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+
+    /**
+     * the bulkheads by exchange: the running tasks, the peak and the rejected tasks
+     *
+     * @return
+     */
+    @GetMapping("/bulkheads")
+    public ResponseEntity<Map<String, Bulkhead.Stats>> bulkheads() {
+
+        Map<String, Bulkhead.Stats> stats = Maps.newTreeMap();
+        exchanges.forEach((name, exchange) -> stats.put(name, exchange.bulkheadStats()));
+        return new ResponseEntity<>(stats, HttpStatus.OK);
+    }
+}
@@ -1,5 +1,7 @@
 package com.crypto.currency.collector.controller;
 
+import com.crypto.currency.collector.exchange.ExchangeWarmUp;
+import com.crypto.currency.collector.exchange.TickerSnapshotStore;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.context.ApplicationContext;
@@ -8,6 +10,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -26,6 +29,7 @@ public class SystemController {
     private static final String OK = "I am OK!";
     private static final String NOT_OK = "Not health!";
     private static final String SHUT_DOWN = "Shutting Down in 15 seconds!";
+    private static final String SNAPSHOT = "The next ticker message is a full snapshot!";
 
     private static final AtomicBoolean HEALTH = new AtomicBoolean(true);
 
@@ -36,6 +40,12 @@ public class SystemController {
     @Autowired
     private SystemShutDownController shutDownController;
 
+    @Autowired
+    private ExchangeWarmUp exchangeWarmUp;
+
+    @Autowired
+    private TickerSnapshotStore tickerSnapshotStore;
+
     @GetMapping("/shutdown")
     public ResponseEntity<String> shutdownApp() {
         HEALTH.set(false);
@@ -57,10 +67,23 @@ public class SystemController {
 
     @RequestMapping(value = "/health", method = {RequestMethod.GET, RequestMethod.POST, RequestMethod.HEAD})
     public ResponseEntity<String> health() {
-        if (HEALTH.get()) {
+        if (HEALTH.get() && exchangeWarmUp.isReady()) {
             return new ResponseEntity<>(OK, HttpStatus.OK);
         } else {
             return new ResponseEntity<>(NOT_OK, HttpStatus.BAD_GATEWAY);
         }
     }
+
+    /**
+     * publish a full ticker snapshot instead of the next delta, eg: a consumer lost its state
+     *
+     * @param exchangeId null : all the exchanges
+     * @return
+     */
+    @RequestMapping(value = "/snapshot", method = {RequestMethod.GET, RequestMethod.POST})
+    public ResponseEntity<String> snapshot(@RequestParam(required = false) Integer exchangeId) {
+
+        tickerSnapshotStore.requestSnapshot(exchangeId);
+        return new ResponseEntity<>(SNAPSHOT, HttpStatus.OK);
+    }
 }
@@ -1,33 +1,68 @@
 package com.crypto.currency.collector.exchange;
 
 import com.crypto.currency.collector.entity.ExchangeLogEntity;
+import com.crypto.currency.collector.support.BeanScanHandler;
+import com.crypto.currency.collector.support.annotation.Exchange;
+import com.crypto.currency.collector.support.annotation.Quota;
 import com.crypto.currency.collector.util.SymbolUtils;
 import com.crypto.currency.common.http.AsynHttpClient;
-import com.crypto.currency.common.http.RxWebSocketClient;
+import com.crypto.currency.common.http.Bulkhead;
+import com.crypto.currency.common.http.CircuitBreaker;
+import com.crypto.currency.common.http.JsonStreamDecoder;
+import com.crypto.currency.common.http.MetadataCache;
+import com.crypto.currency.common.http.RequestTemplate;
+import com.crypto.currency.common.http.RequestTemplates;
+import com.crypto.currency.common.http.SingleFlight;
+import com.crypto.currency.common.http.WebSocketSessionManager;
 import com.crypto.currency.common.utils.DateTimeUtils;
 import com.crypto.currency.common.utils.JacksonUtils;
 import com.crypto.currency.data.entity.ExchangeScheduleTaskEntity;
+import com.crypto.currency.data.entity.OrderBookEntity;
 import com.crypto.currency.data.entity.TickerEntity;
 import com.crypto.currency.data.enums.DataType;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.annotation.AnnotationUtils;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.ClassUtils;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.core.scheduler.Schedulers;
 import reactor.util.context.Context;
+import reactor.util.retry.Retry;
 
+import javax.annotation.PreDestroy;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.net.InetAddress;
+import java.net.URI;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * @author Panzi
@@ -39,6 +74,14 @@ public abstract class AExchange implements IExchange {
 
     public static final String TICKER_LOG = "tickerLog";
 
+    private static final Pattern BASE_URL = Pattern.compile("^(https?://[^/?#%]+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * the single-flight key prefixes of the plain and the conditional gets
+     */
+    private static final String GET_FLIGHT = "get:";
+    private static final String CONDITIONAL_FLIGHT = "conditional:";
+
     // https://git.coinmarketcap.supply/cmc-ops/infra-docs/-/blob/master/migrate-to-lambda-proxy.md
     @Value("${service.proxy:}")
     public String PROXY_URL;
@@ -46,6 +89,90 @@ public abstract class AExchange implements IExchange {
     @Value("${service.fixed:}")
     public String FIXED_IP;
 
+    /**
+     * millis, how long the result of a get is shared by the identical requests, 0 : only the in-flight ones
+     */
+    @Value("${service.single-flight-ttl:2000}")
+    private long singleFlightTtl;
+
+    /**
+     * millis, the spot task is served from the ticker book while the stream updated it within max-age
+     */
+    @Value("${service.stream.max-age:10000}")
+    private long streamMaxAge;
+
+    /**
+     * millis, the symbols of the ticker book not updated within expire are dropped
+     */
+    @Value("${service.stream.expire:3600000}")
+    private long streamExpire;
+
+    /**
+     * millis, the metadata is fresh for the ttl and reloaded in the background after 80% of it
+     */
+    @Value("${service.metadata.ttl:3600000}")
+    private long metadataTtl;
+
+    /**
+     * millis, the stale metadata is served while it revalidates up to max-stale
+     */
+    @Value("${service.metadata.max-stale:21600000}")
+    private long metadataMaxStale;
+
+    /**
+     * the order book levels kept per side, 0 : all the levels of the exchange
+     */
+    @Value("${service.orderbook.depth:500}")
+    private int orderBookDepth;
+
+    /**
+     * keep the order books of the requested symbols in memory from the diff-depth streams
+     */
+    @Value("${service.orderbook.stream:false}")
+    private boolean orderBookStream;
+
+    /**
+     * millis, the live order book is served while its stream updated it within max-age
+     */
+    @Value("${service.orderbook.stream-max-age:30000}")
+    private long orderBookMaxAge;
+
+    /**
+     * the last tasks the failure and slow call rates of the circuit breaker are computed on
+     */
+    @Value("${service.breaker.window:20}")
+    private int breakerWindow;
+
+    @Value("${service.breaker.minimum-calls:10}")
+    private int breakerMinimumCalls;
+
+    /**
+     * percentage of the failed tasks opening the circuit breaker
+     */
+    @Value("${service.breaker.failure-rate:50}")
+    private double breakerFailureRate;
+
+    /**
+     * percentage of the slow tasks opening the circuit breaker
+     */
+    @Value("${service.breaker.slow-call-rate:80}")
+    private double breakerSlowCallRate;
+
+    /**
+     * millis, a task longer than it is slow
+     */
+    @Value("${service.breaker.slow-call:20000}")
+    private long breakerSlowCall;
+
+    /**
+     * millis the tasks of the exchange fail fast once the breaker is open
+     */
+    @Value("${service.breaker.open-wait:60000}")
+    private long breakerOpenWait;
+
+    @Value("${service.breaker.half-open-calls:2}")
+    private int breakerHalfOpenCalls;
+
     @Getter
     @Setter
     private String exchangeName;
@@ -68,17 +195,302 @@ public abstract class AExchange implements IExchange {
     private WebClient client;
 
     /**
-     * default web client, the processing log is written to the database.
+     * the web clients isolated by exchange, the processing log is written to the database.
      */
     @Autowired
-    private AsynHttpClient.DefaultWebClient defaultWebClient;
+    private AsynHttpClient.PooledWebClients pooledWebClients;
+
+    private volatile AsynHttpClient.DefaultWebClient defaultWebClient;
+
+    /**
+     * the web clients of the declared quotas by quota name
+     */
+    private final ConcurrentMap<String, AsynHttpClient.DefaultWebClient> quotaWebClients = Maps.newConcurrentMap();
+
+    private volatile SingleFlight<ResponseEntity<String>> singleFlight;
+
+    private volatile CircuitBreaker circuitBreaker;
+
+    private volatile Bulkhead bulkhead;
+
+    /**
+     * the latest streamed tickers
+     */
+    @Getter
+    private final LatestTickerBook tickerBook = new LatestTickerBook();
+
+    private final ConcurrentMap<String, MetadataCache<?>> metadataCaches = Maps.newConcurrentMap();
+
+    /**
+     * the live order books by baseSymbol/mainSymbol
+     */
+    private final ConcurrentMap<String, LiveOrderBook> liveOrderBooks = Maps.newConcurrentMap();
+
+    private final Disposable.Composite liveOrderBookStreams = Disposables.composite();
 
     @Autowired
-    private RxWebSocketClient webSocketClient;
+    private WebSocketSessionManager sessionManager;
 
     @Autowired
     private ExchangeLogService logService;
 
+    /**
+     * the @Exchange metadata of the adapter
+     *
+     * @return
+     */
+    protected Exchange getExchangeMeta() {
+
+        return AnnotationUtils.findAnnotation(ClassUtils.getUserClass(getClass()), Exchange.class);
+    }
+
+    /**
+     * the web client on the exchange's own connection pool,so one slow exchange can not starve the others.
+     *
+     * @return
+     */
+    protected AsynHttpClient.DefaultWebClient getWebClient() {
+
+        if (defaultWebClient == null) {
+            Exchange meta = getExchangeMeta();
+            AsynHttpClient.PoolSettings.PoolSettingsBuilder pool =
+                AsynHttpClient.PoolSettings.builder().name(BeanScanHandler.EXCHANGE + exchangeId);
+            if (meta != null) {
+                pool.maxConnections(meta.maxConnections()).pendingAcquireMaxCount(meta.pendingAcquireMaxCount())
+                    .maxIdleTime(meta.maxIdleTime()).permits(meta.permits()).interval(meta.interval())
+                    .usageHeader(meta.usageHeader()).usageLimit(meta.usageLimit())
+                    .usageRemaining(meta.usageRemaining()).hedge(meta.hedge());
+            } else {
+                pool.maxConnections(64).pendingAcquireMaxCount(512).maxIdleTime(30000L).interval(1000L);
+            }
+            defaultWebClient = pooledWebClients.get(pool.build());
+        }
+        return defaultWebClient;
+    }
+
+    /**
+     * the web client of the quota the url is counted on: the quota declaring its host, else the exchange's own.
+     * every quota has its own pool, so the usage header of a response only syncs the limiter of its quota.
+     *
+     * @param url
+     * @return
+     */
+    protected AsynHttpClient.DefaultWebClient getWebClient(String url) {
+
+        final Quota quota = getQuota(url);
+        if (quota == null) {
+            return getWebClient();
+        }
+        return quotaWebClients.computeIfAbsent(quota.name(), name -> {
+            Exchange meta = getExchangeMeta();
+            return pooledWebClients.get(
+                AsynHttpClient.PoolSettings.builder().name(BeanScanHandler.EXCHANGE + exchangeId + "." + name)
+                    .maxConnections(meta.maxConnections()).pendingAcquireMaxCount(meta.pendingAcquireMaxCount())
+                    .maxIdleTime(meta.maxIdleTime()).permits(quota.permits()).interval(quota.interval())
+                    .usageHeader(quota.usageHeader()).usageLimit(quota.usageLimit())
+                    .usageRemaining(quota.usageRemaining()).hedge(meta.hedge()).build());
+        });
+    }
+
+    /**
+     * the declared quota of the url's host, the proxy and fixed-ip urls keep the host in their path
+     *
+     * @param url
+     * @return null : the quota of the exchange
+     */
+    protected Quota getQuota(String url) {
+
+        Exchange meta = getExchangeMeta();
+        if (meta == null || url == null) {
+            return null;
+        }
+        for (Quota quota : meta.quotas()) {
+            for (String host : quota.hosts()) {
+                if (containsHost(url, host)) {
+                    return quota;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean containsHost(String url, String host) {
+
+        int start = url.indexOf("/" + host);
+        while (start >= 0) {
+            int end = start + host.length() + 1;
+            if (end == url.length() || "/?#:".indexOf(url.charAt(end)) >= 0) {
+                return true;
+            }
+            start = url.indexOf("/" + host, end);
+        }
+        return false;
+    }
+
+    /**
+     * the concurrent identical gets of the exchange share one request,
+     * eg: the spot, perpetual and futures tasks fetching the same exchange info.
+     *
+     * @return
+     */
+    private SingleFlight<ResponseEntity<String>> getSingleFlight() {
+
+        if (singleFlight == null) {
+            synchronized (this) {
+                if (singleFlight == null) {
+                    singleFlight = new SingleFlight<>(singleFlightTtl);
+                }
+            }
+        }
+        return singleFlight;
+    }
+
+    /**
+     * a collection task of the exchange: it fails fast while the circuit breaker of the exchange is open or
+     * the tasks of the exchange already running fill its bulkhead, so a dead exchange can not hold the threads
+     * and the workers of the healthy ones.
+     *
+     * @param task
+     * @return
+     */
+    protected <T> Mono<T> guard(final Mono<T> task) {
+        return getBulkhead().protect(getCircuitBreaker().protect(task));
+    }
+
+    private CircuitBreaker getCircuitBreaker() {
+
+        if (circuitBreaker == null) {
+            synchronized (this) {
+                if (circuitBreaker == null) {
+                    circuitBreaker = new CircuitBreaker(exchangeName,
+                        new CircuitBreaker.Settings(breakerWindow, breakerMinimumCalls, breakerFailureRate,
+                            breakerSlowCallRate, breakerSlowCall, breakerOpenWait, breakerHalfOpenCalls));
+                }
+            }
+        }
+        return circuitBreaker;
+    }
+
+    private Bulkhead getBulkhead() {
+
+        if (bulkhead == null) {
+            synchronized (this) {
+                if (bulkhead == null) {
+                    Exchange meta = getExchangeMeta();
+                    bulkhead = new Bulkhead(exchangeName, meta == null ? 32 : meta.maxTasks());
+                }
+            }
+        }
+        return bulkhead;
+    }
+
+    public CircuitBreaker.Stats circuitBreakerStats() {
+        return getCircuitBreaker().stats();
+    }
+
+    public Bulkhead.Stats bulkheadStats() {
+        return getBulkhead().stats();
+    }
+
+    /**
+     * the single-flight key: the kind of the request, the url and the headers.
+     * the kind keeps a plain get, a conditional get and a template of the same url from sharing a response.
+     *
+     * @param kind
+     * @param url
+     * @param header
+     * @return
+     */
+    private static String flightKey(String kind, String url, Consumer<HttpHeaders> header) {
+
+        if (header == null) {
+            return kind + url;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        header.accept(headers);
+        return headers.isEmpty() ? kind + url : kind + url + headers;
+    }
+
+    /**
+     * the typed snapshot of slow changing metadata, eg: symbol -> instrument info, indexed once per load.
+     * loaded on first use, refreshed in the background and served stale while it revalidates.
+     * the snapshot is shared, do not modify it.
+     *
+     * @param name   the name of the metadata in the exchange
+     * @param loader loads and indexes the metadata
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    protected <T> Mono<T> metadata(final String name, final Supplier<Mono<T>> loader) {
+
+        return ((MetadataCache<T>)metadataCaches.computeIfAbsent(name,
+            n -> new MetadataCache<>(exchangeName + "." + n, loader, metadataTtl, metadataTtl * 4 / 5,
+                Math.max(metadataTtl, metadataMaxStale)))).get();
+    }
+
+    public Map<String, MetadataCache.Stats> metadataStats() {
+
+        Map<String, MetadataCache.Stats> stats = Maps.newTreeMap();
+        metadataCaches.forEach((name, cache) -> stats.put(name, cache.stats()));
+        return stats;
+    }
+
+    /**
+     * the endpoints of the adapter: the url constants of the class and their proxy/fixed-ip variants
+     *
+     * @return scheme://host[:port]
+     */
+    protected Set<String> getEndpoints() {
+
+        Set<String> endpoints = Sets.newLinkedHashSet();
+        for (Field field : ClassUtils.getUserClass(getClass()).getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) || field.getType() != String.class) {
+                continue;
+            }
+            try {
+                field.setAccessible(true);
+                String url = (String)field.get(null);
+                Stream.of(url, buildProxyUrl(url, null), buildFixedIp(url)).map(AExchange::baseUrl)
+                    .filter(Objects::nonNull).forEach(endpoints::add);
+            } catch (IllegalAccessException | RuntimeException e) {
+                log.warn("Read the endpoint {} of {} failed.", field.getName(), exchangeName, e);
+            }
+        }
+        return endpoints;
+    }
+
+    /**
+     * scheme://host[:port] of the url
+     *
+     * @param url
+     * @return null if not a http url
+     */
+    private static String baseUrl(String url) {
+
+        if (url == null) {
+            return null;
+        }
+        Matcher matcher = BASE_URL.matcher(url);
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * resolve the hosts of the endpoints and pre-open the connections in the pools of their quotas,
+     * so the first task does not pay dns, tcp and tls.
+     *
+     * @param connections the connections per host
+     * @return the count of the opened connections
+     */
+    public Mono<Long> warmUp(int connections) {
+
+        return Flux.fromIterable(getEndpoints()).flatMap(endpoint -> Mono.fromCallable(
+                () -> InetAddress.getAllByName(URI.create(endpoint).getHost())).subscribeOn(Schedulers.boundedElastic())
+            .flatMap(addresses -> getWebClient(endpoint).warmUp(endpoint, connections)).onErrorResume(e -> {
+                log.warn("Warm up the endpoint {} of {} failed: {}", endpoint, exchangeName, e.getMessage());
+                return Mono.just(0L);
+            })).reduce(0L, Long::sum);
+    }
+
     protected String buildProxyUrl(String url, String region) {
         if (StringUtils.isAnyBlank(url, PROXY_URL)) {
             return null;
@@ -99,20 +511,6 @@ public abstract class AExchange implements IExchange {
         return FIXED_IP + newUrl;
     }
 
-    /**
-     * full query
-     *
-     * @param task
-     * @return
-     */
-    protected boolean isFullQuery(ExchangeScheduleTaskEntity task) {
-
-        if (task == null) {
-            return true;
-        }
-        return StringUtils.isAllBlank(task.getMainSymbol(), task.getBaseSymbol());
-    }
-
     /**
      * get spot ticker datas
      *
@@ -125,7 +523,8 @@ public abstract class AExchange implements IExchange {
         final ExchangeLogEntity tickerLog = buildLog(taskEntity);
         final Long startTime = System.currentTimeMillis();
         ZonedDateTime zonedDateTime = taskEntity.getScheduleTime().atZone(ZoneId.systemDefault());
-        return Mono.just(taskEntity).publishOn(Schedulers.boundedElastic()).flatMap(this::getTickers).map(result -> {
+        return guard(Mono.just(taskEntity).publishOn(Schedulers.boundedElastic()).flatMap(this::getStreamedTickers))
+            .map(result -> {
                 result.setDataType(DataType.SPOT);
                 return appendSpotLogResult(tickerLog, result);
             }).subscriberContext(Context.of(TICKER_LOG, tickerLog))
@@ -136,30 +535,73 @@ public abstract class AExchange implements IExchange {
             });
     }
 
+    /**
+     * the full query is answered from the ticker book while the stream is fresh, otherwise from the rest api
+     *
+     * @param task
+     * @return
+     */
+    private Mono<TickerEntity> getStreamedTickers(ExchangeScheduleTaskEntity task) {
+
+        if (!isFullQuery(task) || !tickerBook.isFresh(streamMaxAge)) {
+            return getTickers(task);
+        }
+        return Mono.subscriberContext().map(context -> {
+            List<TickerEntity.CMCTicker> tickers = tickerBook.snapshot(streamExpire);
+            appendResponse("stream", context, "[ticker book, " + tickers.size() + " tickers]");
+            return TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName())
+                .cmcTickers(tickers).updatedTime(DateTimeUtils.nowUTC()).build();
+        });
+    }
+
+    /**
+     * stream the tickers and keep the latest ones in the ticker book
+     *
+     * @return
+     */
+    @Override
+    public Flux<TickerEntity.CMCTicker> streamTickers() {
+        return subscribeTickers().doOnNext(tickerBook::put);
+    }
+
+    /**
+     * subscribe the ticker channel of the exchange's websocket, empty : no stream
+     *
+     * @return
+     */
+    protected Flux<TickerEntity.CMCTicker> subscribeTickers() {
+
+        return Flux.empty();
+    }
+
     /**
      * get order books
      *
      * @param task
      * @return
      */
-    //    @Override
-    //    @Metrics("getOrderBooksData")
-    //    public Mono<OrderBookEntity> getOrderBooksData(ExchangeScheduleTaskEntity task) {
-    //
-    //        final ExchangeLogEntity orderBooksLog = buildLog(task);
-    //        final Long startTime = System.currentTimeMillis();
-    //        ZonedDateTime zonedDateTime = task.getScheduleTime().atZone(ZoneId.systemDefault());
-    //        mr.recordExecutionTime("OrderBookMsg", startTime - zonedDateTime.toInstant().toEpochMilli());
-    //        return Mono.just(task).publishOn(Schedulers.boundedElastic()).flatMap(this::getOrderBooks).map(result -> {
-    //                result.setDataType(EDataType.ORDER_BOOK);
-    //                return appendOrderBooksLogResult(orderBooksLog, result);
-    //            }).subscriberContext(Context.of(TICKER_LOG, orderBooksLog))
-    //            .doOnError(throwable -> orderBooksLog.setResponse(throwable.getMessage())).doFinally(f -> {
-    //                log.info("Finished order book data collection: {}", task);
-    //                orderBooksLog.setTotalElapsedTime(System.currentTimeMillis() - startTime);
-    //                logService.addLog(orderBooksLog);
-    //            });
-    //    }
+    @Override
+    public Mono<OrderBookEntity> getOrderBooksData(final ExchangeScheduleTaskEntity task) {
+
+        final ExchangeLogEntity orderBooksLog = buildLog(task);
+        final Long startTime = System.currentTimeMillis();
+        return guard(Mono.just(task).publishOn(Schedulers.boundedElastic()).flatMap(this::getLiveOrderBook))
+            .map(levels -> {
+                OrderBookEntity result = levels.build(orderBookDepth);
+                result.setExchangeId(getExchangeId());
+                result.setExchangeName(getExchangeName());
+                result.setBaseSymbol(task.getBaseSymbol());
+                result.setMainSymbol(task.getMainSymbol());
+                result.setUpdatedTime(DateTimeUtils.nowUTC());
+                result.setDataType(DataType.ORDER_BOOK);
+                return appendOrderBooksLogResult(orderBooksLog, result);
+            }).subscriberContext(Context.of(TICKER_LOG, orderBooksLog))
+            .doOnError(throwable -> orderBooksLog.setResponse(throwable.getMessage())).doFinally(f -> {
+                log.info("Finished order book data collection: {}", task);
+                orderBooksLog.setTotalElapsedTime(System.currentTimeMillis() - startTime);
+                logService.addLog(orderBooksLog);
+            });
+    }
 
     /**
      * get Swap ticker datas
@@ -173,7 +615,7 @@ public abstract class AExchange implements IExchange {
         final ExchangeLogEntity tickerLog = buildLog(taskEntity);
         final Long startTime = System.currentTimeMillis();
         ZonedDateTime zonedDateTime = taskEntity.getScheduleTime().atZone(ZoneId.systemDefault());
-        return Mono.just(taskEntity).publishOn(Schedulers.boundedElastic()).flatMap(this::getSwapTickers)
+        return guard(Mono.just(taskEntity).publishOn(Schedulers.boundedElastic()).flatMap(this::getSwapTickers))
             .map(result -> {
                 result.setDataType(DataType.PERPETUAL);
                 return appendSpotLogResult(tickerLog, result);
@@ -197,7 +639,7 @@ public abstract class AExchange implements IExchange {
         final ExchangeLogEntity tickerLog = buildLog(taskEntity);
         final Long startTime = System.currentTimeMillis();
         ZonedDateTime zonedDateTime = taskEntity.getScheduleTime().atZone(ZoneId.systemDefault());
-        return Mono.just(taskEntity).publishOn(Schedulers.boundedElastic()).flatMap(this::getOptionsTickers)
+        return guard(Mono.just(taskEntity).publishOn(Schedulers.boundedElastic()).flatMap(this::getOptionsTickers))
             .map(result -> {
                 result.setDataType(DataType.OPTIONS);
                 return appendSpotLogResult(tickerLog, result);
@@ -221,7 +663,7 @@ public abstract class AExchange implements IExchange {
         final ExchangeLogEntity tickerLog = buildLog(taskEntity);
         final Long startTime = System.currentTimeMillis();
         ZonedDateTime zonedDateTime = taskEntity.getScheduleTime().atZone(ZoneId.systemDefault());
-        return Mono.just(taskEntity).publishOn(Schedulers.boundedElastic()).flatMap(this::getPerpetualTickers)
+        return guard(Mono.just(taskEntity).publishOn(Schedulers.boundedElastic()).flatMap(this::getPerpetualTickers))
             .map(result -> {
                 result.setDataType(DataType.PERPETUAL);
                 return appendSpotLogResult(tickerLog, result);
@@ -245,7 +687,7 @@ public abstract class AExchange implements IExchange {
         final ExchangeLogEntity tickerLog = buildLog(taskEntity);
         final Long startTime = System.currentTimeMillis();
         ZonedDateTime zonedDateTime = taskEntity.getScheduleTime().atZone(ZoneId.systemDefault());
-        return Mono.just(taskEntity).publishOn(Schedulers.boundedElastic()).flatMap(this::getFuturesTickers)
+        return guard(Mono.just(taskEntity).publishOn(Schedulers.boundedElastic()).flatMap(this::getFuturesTickers))
             .map(result -> {
                 result.setDataType(DataType.FUTURES);
                 return appendSpotLogResult(tickerLog, result);
@@ -282,6 +724,87 @@ public abstract class AExchange implements IExchange {
      */
     protected abstract Mono<TickerEntity> getTickers(ExchangeScheduleTaskEntity task);
 
+    /**
+     * the live order book while its stream is fresh, otherwise the rest order book.
+     * the first request of a symbol starts its stream.
+     *
+     * @param task
+     * @return
+     */
+    private Mono<OrderBookLevels> getLiveOrderBook(ExchangeScheduleTaskEntity task) {
+
+        if (!orderBookStream) {
+            return getOrderBooks(task);
+        }
+        final LiveOrderBook book = liveOrderBooks.computeIfAbsent(task.getBaseSymbol() + "/" + task.getMainSymbol(),
+            key -> startLiveOrderBook(key, task));
+        if (!book.isFresh(orderBookMaxAge)) {
+            return getOrderBooks(task);
+        }
+        return Mono.subscriberContext().map(context -> {
+            OrderBookLevels levels = book.toLevels();
+            LiveOrderBook.Stats stats = book.stats();
+            appendResponse("stream", context,
+                "[live order book, " + stats.getBids() + " bids, " + stats.getAsks() + " asks]");
+            return levels;
+        });
+    }
+
+    private LiveOrderBook startLiveOrderBook(String key, ExchangeScheduleTaskEntity task) {
+
+        final LiveOrderBook book = new LiveOrderBook();
+        if (orderBookDepth > 0) {
+            book.setMaxDepth(orderBookDepth);
+        }
+        liveOrderBookStreams.add(Mono.defer(() -> syncOrderBook(task, book)).doOnError(e -> book.reset()).retryWhen(
+                Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1L)).maxBackoff(Duration.ofMinutes(1L))
+                    .doBeforeRetry(r -> log.warn("Resync the order book {} of {}: {}", key, exchangeName,
+                        r.failure().getMessage())))
+            .subscribe(v -> {
+            }, e -> log.error("The order book stream {} of {} stopped.", key, exchangeName, e)));
+        return book;
+    }
+
+    /**
+     * the live order books by baseSymbol/mainSymbol
+     *
+     * @return
+     */
+    public Map<String, LiveOrderBook.Stats> liveOrderBookStats() {
+
+        Map<String, LiveOrderBook.Stats> stats = Maps.newTreeMap();
+        liveOrderBooks.forEach((key, book) -> stats.put(key, book.stats()));
+        return stats;
+    }
+
+    @PreDestroy
+    public void closeLiveOrderBooks() {
+        liveOrderBookStreams.dispose();
+    }
+
+    /**
+     * get the order book levels of the task's symbol, empty : the exchange has no order book
+     *
+     * @return
+     */
+    protected Mono<OrderBookLevels> getOrderBooks(ExchangeScheduleTaskEntity task) {
+
+        return Mono.empty();
+    }
+
+    /**
+     * keep the book up to date from the diff-depth stream of the task's symbol, never completes while it works.
+     * an error resets the book and restarts the stream with backoff. empty : the exchange has no stream
+     *
+     * @param task
+     * @param book
+     * @return
+     */
+    protected Mono<Void> syncOrderBook(ExchangeScheduleTaskEntity task, LiveOrderBook book) {
+
+        return Mono.empty();
+    }
+
     /**
      * get exchange derivatives - Swap 永续合约 tickers
      *
@@ -329,8 +852,9 @@ public abstract class AExchange implements IExchange {
      * @return
      */
     protected Mono<String> get(final String url) {
-        return Mono.subscriberContext()
-            .flatMap(context -> defaultWebClient.get(url).map(r -> appendResponse(url, context, r.getBody())));
+        return Mono.subscriberContext().flatMap(
+            context -> getSingleFlight().execute(flightKey(GET_FLIGHT, url, null), () -> getWebClient(url).get(url))
+                .map(r -> appendResponse(url, context, r.getBody())));
     }
 
     /**
@@ -341,8 +865,117 @@ public abstract class AExchange implements IExchange {
      */
     protected Mono<String> get(final String url, final Consumer<HttpHeaders> header) {
 
-        return Mono.subscriberContext()
-            .flatMap(context -> defaultWebClient.get(url, header).map(r -> appendResponse(url, context, r.getBody())));
+        return Mono.subscriberContext().flatMap(
+            context -> getSingleFlight()
+                .execute(flightKey(GET_FLIGHT, url, header), () -> getWebClient(url).get(url, header))
+                .map(r -> appendResponse(url, context, r.getBody())));
+    }
+
+    /**
+     * conditional get of the rarely changed metadata, a 304 returns the object parsed from the cached body.
+     * the parsed object is shared between the requests, do not modify it.
+     *
+     * @param url
+     * @param parser
+     * @return
+     */
+    protected <T> Mono<T> getConditional(final String url, final Function<String, T> parser) {
+
+        final AsynHttpClient.DefaultWebClient webClient = getWebClient(url);
+        return Mono.subscriberContext().flatMap(
+            context -> getSingleFlight().execute(flightKey(CONDITIONAL_FLIGHT, url, null),
+                () -> webClient.getConditional(url, h -> {
+                })).map(r -> webClient.getValidatorCache()
+                .parse(url, appendResponse(url, context, r.getBody()), parser)));
+    }
+
+    /**
+     * send the request of a precompiled template
+     *
+     * @param template
+     * @param params
+     * @return
+     */
+    protected Mono<String> get(final RequestTemplate template, final Object... params) {
+
+        final URI uri = template.expand(params);
+        final String url = uri.toString();
+        return Mono.subscriberContext().flatMap(context -> getSingleFlight()
+            .execute(flightKey(template.getName() + ":", url, null),
+                () -> getWebClient(url).executeUri(template, uri, null))
+            .map(r -> appendResponse(url, context, r.getBody())));
+    }
+
+    /**
+     * send get request and build the tickers straight from the streamed body,
+     * the body is not kept so the log only records a summary of the response.
+     *
+     * @param url
+     * @param parsers a new parser for every attempt, the parsers keep the state of the token stream
+     * @return
+     */
+    protected Mono<List<TickerEntity.CMCTicker>> getStreaming(final String url,
+        final Supplier<TickerTokenParser> parsers) {
+
+        return Mono.subscriberContext().flatMap(context -> Mono.defer(() -> {
+            final TickerTokenParser parser = parsers.get();
+            final List<TickerEntity.CMCTicker> tickers = Lists.newArrayListWithCapacity(2048);
+            return JsonStreamDecoder.decode(getWebClient(url).getDataBuffers(url, h -> {
+                }), (p, t) -> parser.onToken(p, t, tickers::add))
+                .map(bytes -> {
+                    appendResponse(url, context, "[streamed " + tickers.size() + " tickers, " + bytes + " bytes]");
+                    return tickers;
+                });
+        }));
+    }
+
+    /**
+     * the tickers of a declared endpoint, streamed
+     *
+     * @param adapter
+     * @return
+     */
+    protected Mono<List<TickerEntity.CMCTicker>> getStreaming(final TickerAdapter adapter) {
+        return getStreaming(adapter.getUrl(),
+            () -> adapter.newParser(symbol -> symbolUtils.splitWithFullString(getExchangeId(), symbol)));
+    }
+
+    /**
+     * the ticker entity of a declared endpoint
+     *
+     * @param adapter
+     * @return
+     */
+    protected Mono<TickerEntity> getTickers(final TickerAdapter adapter) {
+
+        return getStreaming(adapter).map(tickers -> TickerEntity.builder().exchangeId(getExchangeId())
+            .exchangeName(getExchangeName()).cmcTickers(tickers).updatedTime(DateTimeUtils.nowUTC()).build());
+    }
+
+    /**
+     * the exchange's request template, registered once on first use
+     *
+     * @param name       the name of the endpoint
+     * @param urlPattern the url with %s placeholders
+     * @return
+     */
+    protected RequestTemplate template(final String name, final String urlPattern) {
+        return template(name, urlPattern, 1);
+    }
+
+    /**
+     * the exchange's request template, a request takes `weight` tokens of the rate budget of its quota
+     *
+     * @param name       the name of the endpoint
+     * @param urlPattern the url with %s placeholders
+     * @param weight     the weight of the endpoint
+     * @return
+     */
+    protected RequestTemplate template(final String name, final String urlPattern, final int weight) {
+
+        final String templateName = exchangeId + "." + name;
+        return RequestTemplates.getOrRegister(templateName,
+            () -> RequestTemplate.builder(templateName, urlPattern).weight(weight).build());
     }
 
     /**
@@ -353,7 +986,7 @@ public abstract class AExchange implements IExchange {
      */
     protected Mono<String> post(final String url, final Object body) {
 
-        return Mono.subscriberContext().flatMap(context -> defaultWebClient.post(url, body, (h) -> {
+        return Mono.subscriberContext().flatMap(context -> getWebClient(url).post(url, body, (h) -> {
         }).map(r -> appendResponse(url, context, r.getBody())));
     }
 
@@ -367,12 +1000,13 @@ public abstract class AExchange implements IExchange {
      */
     protected Mono<String> post(final String url, final Object body, final Consumer<HttpHeaders> header) {
 
-        return Mono.subscriberContext().flatMap(context -> defaultWebClient.post(url, body, header::accept)
+        return Mono.subscriberContext().flatMap(context -> getWebClient(url).post(url, body, header::accept)
             .map(r -> appendResponse(url, context, r.getBody())));
     }
 
     /**
-     * websocket send.
+     * websocket request over the shared session of the endpoint, answered by the message with the same id,
+     * or the next message when the body has no id.
      *
      * @param url
      * @param body
@@ -381,7 +1015,29 @@ public abstract class AExchange implements IExchange {
     protected Mono<String> send(String url, String body) {
 
         return Mono.subscriberContext()
-            .flatMap(context -> webSocketClient.send(url, body).map(r -> appendResponse(url, context, r)));
+            .flatMap(context -> getSession(url).request(body).map(r -> appendResponse(url, context, r)));
+    }
+
+    /**
+     * the shared websocket session of the endpoint
+     *
+     * @param url
+     * @return
+     */
+    protected WebSocketSessionManager.ManagedSession getSession(String url) {
+        return sessionManager.session(url);
+    }
+
+    /**
+     * the shared websocket session of the endpoint, the options of the first call win
+     *
+     * @param url
+     * @param options
+     * @return
+     */
+    protected WebSocketSessionManager.ManagedSession getSession(String url,
+        WebSocketSessionManager.SessionOptions options) {
+        return sessionManager.session(url, options);
     }
 
     /**
@@ -443,12 +1099,12 @@ public abstract class AExchange implements IExchange {
      * @param result
      * @return
      */
-    //    private OrderBookEntity appendOrderBooksLogResult(ExchangeLogEntity log, OrderBookEntity result) {
-    //
-    //        log.setResult(JSON.toJSONString(result));
-    //        log.setStatus(ExchangeLogEntity.EXCHANGE_HAS_RESULT);
-    //        return result;
-    //    }
+    private OrderBookEntity appendOrderBooksLogResult(ExchangeLogEntity log, OrderBookEntity result) {
+
+        log.setResult(JacksonUtils.serialize(result));
+        log.setStatus(ExchangeLogEntity.EXCHANGE_HAS_RESULT);
+        return result;
+    }
 
     /**
      * Checks if a {@link JsonNode} is a valid node to parse into a {@link java.math.BigDecimal}
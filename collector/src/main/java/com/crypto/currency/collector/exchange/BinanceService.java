@@ -1,23 +1,40 @@
 package com.crypto.currency.collector.exchange;
 
 import com.crypto.currency.collector.support.annotation.Exchange;
+import com.crypto.currency.collector.support.annotation.Quota;
+import com.crypto.currency.common.exception.BusinessException;
+import com.crypto.currency.common.http.BoundedSink;
+import com.crypto.currency.common.http.FanOut;
+import com.crypto.currency.common.http.RateLimiter;
 import com.crypto.currency.common.utils.DateTimeUtils;
+import com.crypto.currency.common.utils.ExtUtils;
 import com.crypto.currency.common.utils.JacksonUtils;
+import com.crypto.currency.common.utils.LazyDecimal;
 import com.crypto.currency.common.utils.StringUtils;
 import com.crypto.currency.data.entity.ExchangeScheduleTaskEntity;
 import com.crypto.currency.data.entity.TickerEntity;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Value;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.util.function.Tuple2;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 /**
  * @author Panzi
@@ -25,7 +42,10 @@ import java.util.Map;
  * @date 2022/5/5 23:10
  */
 @Slf4j
-@Exchange(id = "270", name = "Binance")
+@Exchange(id = "270", name = "Binance", permits = 1200, interval = 60000L, usageHeader = "X-MBX-USED-WEIGHT-1M",
+    quotas = {@Quota(name = "usdm", hosts = "fapi.binance.com", permits = 2400, interval = 60000L,
+        usageHeader = "X-MBX-USED-WEIGHT-1M"), @Quota(name = "coinm", hosts = "dapi.binance.com", permits = 2400,
+        interval = 60000L, usageHeader = "X-MBX-USED-WEIGHT-1M")})
 public class BinanceService extends AExchange {
     // Global
     private static final String URL = "https://api.binance.com/api/v1/ticker/24hr";
@@ -34,6 +54,11 @@ public class BinanceService extends AExchange {
 
     private static final String OB_URL = "https://api.binance.com/api/v3/depth?limit=5000&symbol=";
 
+    /**
+     * the snapshot of a live order book, weight 50 instead of 250 for 5000 levels
+     */
+    private static final String OB_SNAPSHOT_URL = "https://api.binance.com/api/v3/depth?limit=1000&symbol=";
+
     private static final String SWAP_URL = "https://fapi.binance.com/fapi/v1/ticker/24hr";
 
     private static final String SWAP_INFO = "https://fapi.binance.com/fapi/v1/exchangeInfo";
@@ -50,20 +75,407 @@ public class BinanceService extends AExchange {
     private static final String COIN_FUTURES_OPEN_INTEREST = "https://dapi.binance.com/dapi/v1/openInterest?symbol=%s";
     private static final String COIN_FUTURES_PREMIUM_INDEX = "https://dapi.binance.com/dapi/v1/premiumIndex";
 
+    /**
+     * combined stream: {"stream":"!ticker@arr","data":[{"s":"BNBBTC","c":"0.0025","v":"1000",...}]},
+     * only the tickers changed in the last second are pushed.
+     */
+    private static final String WS_URL = "wss://stream.binance.com:9443/stream";
+    private static final String WS_TICKERS = "!ticker@arr";
+
+    /**
+     * diff depth: {"stream":"bnbbtc@depth@100ms","data":{"e":"depthUpdate","U":157,"u":160,
+     * "b":[["0.0024","10"]],"a":[["0.0026","100"]]}}, U and u are the first and the last update id.
+     */
+    private static final String WS_DEPTH = "%s@depth@100ms";
+
+    /**
+     * the open interest calls per market and cycle, the other contracts keep their cached value
+     */
+    private static final int OPEN_INTEREST_REFRESH = 100;
+
+    /**
+     * the open interest calls stop while the weight budget of the market holds fewer tokens,
+     * they are left to the bulk endpoints of the market
+     */
+    private static final int OPEN_INTEREST_RESERVE = 300;
+
+    private static final FanOut OPEN_INTEREST_FAN_OUT =
+        new FanOut(4, Duration.ofSeconds(5L), Duration.ofSeconds(30L));
+
+    /**
+     * the expiry of the perpetual contracts: 2100 year
+     */
+    private static final long PERPETUAL_EXPIRY = 4133376000000L;
+
+    /**
+     * millis, the open interest of a contract is fetched at most once per ttl
+     */
+    @Value("${service.binance.open-interest-ttl:300000}")
+    private long openInterestTtl;
+
+    /**
+     * the open interest by contract symbol
+     */
+    private final ConcurrentMap<String, OpenInterest> openInterests = Maps.newConcurrentMap();
+
     // China
     // private final static String URL = "https://api.binancezh.com/api/v1/ticker/24hr";
 
     @Override
     public Mono<TickerEntity> getTickers(ExchangeScheduleTaskEntity task) {
-        return Mono.zip(get(buildProxyUrl(URL, null)).map(
-                m -> JacksonUtils.deserialize(m, new TypeReference<List<BinanceTickerData>>() {
-                })), get(buildProxyUrl(EX_INFO_URL, null)).map(m -> JacksonUtils.deserialize(m, BinanceExInfoData.class)))
+        return Mono.zip(getStreaming(buildProxyUrl(URL, null), BinanceTickerParser::new), getSpotSymbols())
             .map(item -> this.toEntity(item, true));
     }
 
-    private TickerEntity toEntity(Tuple2<List<BinanceTickerData>, BinanceExInfoData> tuple, boolean isSpot) {
-        List<BinanceTickerData> tickers = tuple.getT1();
-        BinanceExInfoData info = tuple.getT2();
+    /**
+     * the spot symbols of the exchange info by symbol, kept by the metadata cache
+     *
+     * @return
+     */
+    private Mono<Map<String, BinanceExInfoSymbol>> getSpotSymbols() {
+
+        return metadata("spotSymbols", () -> getConditional(buildProxyUrl(EX_INFO_URL, null),
+            m -> JacksonUtils.deserialize(m, BinanceExInfoData.class)).map(this::toSymbolMap));
+    }
+
+    @Override
+    protected Flux<TickerEntity.CMCTicker> subscribeTickers() {
+
+        return getSpotSymbols().flatMapMany(
+            symbolMap -> getSession(WS_URL).subscribe(WS_TICKERS,
+                    "{\"method\":\"SUBSCRIBE\",\"params\":[\"" + WS_TICKERS + "\"],\"id\":1}",
+                    "{\"method\":\"UNSUBSCRIBE\",\"params\":[\"" + WS_TICKERS + "\"],\"id\":2}")
+                .flatMapIterable(m -> toStreamTickers(m, symbolMap)));
+    }
+
+    /**
+     * the tickers of a !ticker@arr message, the symbols not split are skipped.
+     *
+     * @param message
+     * @param symbolMap
+     * @return
+     */
+    private List<TickerEntity.CMCTicker> toStreamTickers(String message, Map<String, BinanceExInfoSymbol> symbolMap) {
+
+        JsonNode data = JacksonUtils.readTree(message).get("data");
+        if (data == null || !data.isArray()) {
+            return Collections.emptyList();
+        }
+        List<TickerEntity.CMCTicker> tickers = Lists.newArrayListWithCapacity(data.size());
+        for (JsonNode row : data) {
+            Pair<String, String> p = split(row.path("s").asText(), symbolMap, true);
+            if (p == null) {
+                continue;
+            }
+            BigDecimal lastPrice = ExtUtils.parseBigDecimal(row.path("c").asText());
+            tickers.add(TickerEntity.CMCTicker.builder().baseSymbol(p.getLeft()).mainSymbol(p.getRight())
+                .quote(lastPrice).mainVolume(ExtUtils.parseBigDecimal(row.path("v").asText()).multiply(lastPrice))
+                .build());
+        }
+        return tickers;
+    }
+
+    /**
+     * the diffs are applied in update id order, the first one and the one after a gap load a snapshot:
+     * the diffs buffered meanwhile up to the snapshot's lastUpdateId are stale, the next one must contain
+     * lastUpdateId + 1.
+     *
+     * @param task
+     * @param book
+     * @return
+     */
+    @Override
+    protected Mono<Void> syncOrderBook(ExchangeScheduleTaskEntity task, LiveOrderBook book) {
+
+        final String symbol = (task.getBaseSymbol() + task.getMainSymbol()).toUpperCase();
+        final String channel = String.format(WS_DEPTH, symbol.toLowerCase());
+        return getSession(WS_URL).subscribe(channel,
+                "{\"method\":\"SUBSCRIBE\",\"params\":[\"" + channel + "\"],\"id\":3}",
+                "{\"method\":\"UNSUBSCRIBE\",\"params\":[\"" + channel + "\"],\"id\":4}", BoundedSink.Overflow.ERROR)
+            .concatMap(m -> applyDepth(symbol, book, JacksonUtils.readTree(m).path("data"))).then();
+    }
+
+    private Mono<Void> applyDepth(String symbol, LiveOrderBook book, JsonNode diff) {
+
+        final long first = diff.path("U").asLong();
+        final long last = diff.path("u").asLong();
+        if (book.update(first, last, diff.path("b"), diff.path("a")) != LiveOrderBook.Update.GAP) {
+            return Mono.empty();
+        }
+        return get(template("depthSnapshot", buildProxyUrl(OB_SNAPSHOT_URL, null) + "%s"), symbol).flatMap(m -> {
+            JsonNode snapshot = JacksonUtils.readTree(m);
+            book.snapshot(snapshot.path("lastUpdateId").asLong(), snapshot.path("bids"), snapshot.path("asks"));
+            if (book.update(first, last, diff.path("b"), diff.path("a")) == LiveOrderBook.Update.GAP) {
+                return Mono.error(new BusinessException(
+                    "The depth snapshot " + snapshot.path("lastUpdateId").asLong() + " of " + symbol
+                        + " is older than the diff " + first + "."));
+            }
+            return Mono.empty();
+        });
+    }
+
+    /**
+     * the perpetual contracts of usdⓈ-m and coin-m. swap is the perpetual contract at binance, the swap tickers
+     * are left empty so the perpetuals are published once per cycle.
+     *
+     * @param task
+     * @return
+     */
+    @Override
+    protected Mono<TickerEntity> getPerpetualTickers(ExchangeScheduleTaskEntity task) {
+        return getDerivativesTickers(true);
+    }
+
+    /**
+     * the delivery contracts of usdⓈ-m and coin-m: current and next quarter
+     *
+     * @param task
+     * @return
+     */
+    @Override
+    protected Mono<TickerEntity> getFuturesTickers(ExchangeScheduleTaskEntity task) {
+        return getDerivativesTickers(false);
+    }
+
+    private Mono<TickerEntity> getDerivativesTickers(boolean perpetual) {
+
+        return Flux.fromArray(FuturesMarket.values()).flatMap(market -> getDerivatives(market, perpetual))
+            .collectList().map(lists -> {
+                List<TickerEntity.DerivativesTicker> tickers = Lists.newArrayList();
+                lists.forEach(tickers::addAll);
+                return TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName())
+                    .derivativesTicker(tickers).updatedTime(DateTimeUtils.nowUTC()).build();
+            });
+    }
+
+    /**
+     * the bulk 24hr, bookTicker and premiumIndex of the market are fetched once and joined by symbol,
+     * the open interest is the only call per contract. the perpetual and the delivery tasks of a cycle share
+     * the bulk responses through the single-flight.
+     *
+     * @param market
+     * @param perpetual the perpetual contracts, else the delivery contracts
+     * @return
+     */
+    private Mono<List<TickerEntity.DerivativesTicker>> getDerivatives(FuturesMarket market, boolean perpetual) {
+
+        return Mono.zip(getFuturesSymbols(market), getBulk(market, "ticker", market.tickerUrl, market.tickerWeight),
+            getBulk(market, "bookTicker", market.bookTickerUrl, market.bookTickerWeight),
+            getBulk(market, "premiumIndex", market.premiumIndexUrl, market.premiumIndexWeight)).flatMap(t -> {
+            Map<String, JsonNode> tickers = t.getT2();
+            List<BinanceExInfoSymbol> contracts = t.getT1().values().stream()
+                .filter(s -> isTrading(s) && (perpetual ? isPerpetual(s) : isDelivery(s))
+                    && tickers.containsKey(s.getSymbol())).collect(Collectors.toList());
+            return refreshOpenInterests(market, contracts).map(
+                n -> toDerivatives(market, contracts, tickers, t.getT3(), t.getT4()));
+        });
+    }
+
+    /**
+     * the rows of a bulk endpoint of the market by symbol, charged with the endpoint weight
+     *
+     * @param market
+     * @param name
+     * @param url
+     * @param weight
+     * @return
+     */
+    private Mono<Map<String, JsonNode>> getBulk(FuturesMarket market, String name, String url, int weight) {
+
+        return get(template(market.metadataName + "." + name, buildProxyUrl(url, null), weight)).map(
+            this::indexBySymbol);
+    }
+
+    /**
+     * the futures symbols of the exchange info by symbol, kept by the metadata cache
+     *
+     * @param market
+     * @return
+     */
+    private Mono<Map<String, BinanceExInfoSymbol>> getFuturesSymbols(FuturesMarket market) {
+
+        return metadata(market.metadataName, () -> getConditional(buildProxyUrl(market.exchangeInfoUrl, null),
+            m -> JacksonUtils.deserialize(m, BinanceExInfoData.class)).map(this::toSymbolMap));
+    }
+
+    /**
+     * fetch the open interest of the contracts without one or with the oldest expired one, at most
+     * OPEN_INTEREST_REFRESH. every call takes the endpoint weight from the budget of its market, the calls stop
+     * once the budget holds less than OPEN_INTEREST_RESERVE.
+     *
+     * @param market
+     * @param contracts
+     * @return the refreshed count
+     */
+    private Mono<Integer> refreshOpenInterests(FuturesMarket market, List<BinanceExInfoSymbol> contracts) {
+
+        final long now = System.currentTimeMillis();
+        List<String> stale = contracts.stream().map(BinanceExInfoSymbol::getSymbol).filter(symbol -> {
+            OpenInterest openInterest = openInterests.get(symbol);
+            return openInterest == null || now - openInterest.time > openInterestTtl;
+        }).sorted(Comparator.comparingLong(symbol -> {
+            OpenInterest openInterest = openInterests.get(symbol);
+            return openInterest == null ? 0L : openInterest.time;
+        })).limit(OPEN_INTEREST_REFRESH).collect(Collectors.toList());
+        if (stale.isEmpty()) {
+            return Mono.just(0);
+        }
+        final RateLimiter budget = getWebClient(market.openInterestUrl).getRateLimiter();
+        return OPEN_INTEREST_FAN_OUT.execute(stale, symbol -> {
+            if (!budget.hasAvailable(OPEN_INTEREST_RESERVE + market.openInterestWeight)) {
+                return Mono.<String>empty();
+            }
+            return get(template(market.metadataName + ".openInterest", buildProxyUrl(market.openInterestUrl, null),
+                market.openInterestWeight), symbol).map(m -> {
+                JsonNode node = JacksonUtils.readTree(m);
+                openInterests.put(symbol, new OpenInterest(
+                    ExtUtils.parseBigDecimal(node == null ? null : node.path("openInterest").asText()),
+                    System.currentTimeMillis()));
+                return symbol;
+            });
+        }).map(result -> {
+            log.info("Binance {} open interests: {}", market, result);
+            return result.getValues().size();
+        });
+    }
+
+    private List<TickerEntity.DerivativesTicker> toDerivatives(FuturesMarket market,
+        List<BinanceExInfoSymbol> contracts, Map<String, JsonNode> tickers, Map<String, JsonNode> bookTickers,
+        Map<String, JsonNode> premiumIndexes) {
+
+        List<TickerEntity.DerivativesTicker> result = Lists.newArrayListWithCapacity(contracts.size());
+        for (BinanceExInfoSymbol contract : contracts) {
+            JsonNode ticker = tickers.get(contract.getSymbol());
+            JsonNode book = bookTickers.get(contract.getSymbol());
+            JsonNode premium = premiumIndexes.get(contract.getSymbol());
+            boolean perpetual = isPerpetual(contract);
+
+            BigDecimal lastPrice = ExtUtils.parseBigDecimal(ticker.path("lastPrice").asText());
+            BigDecimal markPrice = premium == null ? lastPrice : ExtUtils.parseBigDecimal(
+                premium.path("markPrice").asText());
+            LocalDateTime expiry = toDateTime(perpetual ? PERPETUAL_EXPIRY : contract.getDeliveryDate());
+
+            TickerEntity.DerivativesTicker derivatives =
+                TickerEntity.DerivativesTicker.builder().productType(contract.getContractType())
+                    .tickerId(contract.getSymbol()).baseSymbol(contract.getBaseAsset())
+                    .mainSymbol(contract.getQuoteAsset()).quote(lastPrice)
+                    .deliveryTime(perpetual || expiry == null ? "PERPETUAL" : expiry.toLocalDate().toString())
+                    .high(ExtUtils.parseBigDecimal(ticker.path("highPrice").asText()))
+                    .low(ExtUtils.parseBigDecimal(ticker.path("lowPrice").asText()))
+                    .creationTimestamp(toDateTime(contract.getOnboardDate())).expiryTimestamp(expiry).build();
+            if (book != null) {
+                derivatives.setBid(ExtUtils.parseBigDecimal(book.path("bidPrice").asText()));
+                derivatives.setAsk(ExtUtils.parseBigDecimal(book.path("askPrice").asText()));
+            }
+            if (premium != null) {
+                derivatives.setIndexPrice(ExtUtils.parseBigDecimal(premium.path("indexPrice").asText()));
+                if (perpetual) {
+                    derivatives.setFundingRate(ExtUtils.parseBigDecimal(premium.path("lastFundingRate").asText()));
+                }
+            }
+            OpenInterest openInterest = openInterests.get(contract.getSymbol());
+            if (market.coinMargined) {
+                // volume and open interest in contracts of contractSize usd, baseVolume in the base asset
+                BigDecimal contractSize =
+                    contract.getContractSize() == null ? BigDecimal.ONE : contract.getContractSize();
+                derivatives.setBaseVolume(ExtUtils.parseBigDecimal(ticker.path("baseVolume").asText()));
+                derivatives.setMainVolume(
+                    ExtUtils.parseBigDecimal(ticker.path("volume").asText()).multiply(contractSize));
+                if (openInterest != null) {
+                    derivatives.setOpenInterest(openInterest.value);
+                    derivatives.setOpen_InterestUsd(openInterest.value.multiply(contractSize));
+                }
+            } else {
+                // volume and open interest in the base asset, quoteVolume in the margin asset: usdt or busd
+                derivatives.setBaseVolume(ExtUtils.parseBigDecimal(ticker.path("volume").asText()));
+                derivatives.setMainVolume(ExtUtils.parseBigDecimal(ticker.path("quoteVolume").asText()));
+                if (openInterest != null) {
+                    derivatives.setOpenInterest(openInterest.value);
+                    derivatives.setOpen_InterestUsd(openInterest.value.multiply(markPrice));
+                    derivatives.setOpenInterestSymbol(contract.getQuoteAsset());
+                }
+            }
+            result.add(derivatives);
+        }
+        return result;
+    }
+
+    /**
+     * the rows of a bulk endpoint by symbol
+     *
+     * @param message
+     * @return
+     */
+    private Map<String, JsonNode> indexBySymbol(String message) {
+
+        JsonNode rows = JacksonUtils.readTree(message);
+        if (rows == null || !rows.isArray()) {
+            return Collections.emptyMap();
+        }
+        Map<String, JsonNode> index = Maps.newHashMapWithExpectedSize(rows.size());
+        rows.forEach(row -> index.put(row.path("symbol").asText(), row));
+        return index;
+    }
+
+    /**
+     * usdⓈ-m reports status, coin-m reports contractStatus
+     *
+     * @param symbol
+     * @return
+     */
+    private static boolean isTrading(BinanceExInfoSymbol symbol) {
+
+        String status = symbol.getContractStatus() != null ? symbol.getContractStatus() : symbol.getStatus();
+        return StringUtils.equalsIgnoreCase(status, "TRADING");
+    }
+
+    private static boolean isPerpetual(BinanceExInfoSymbol symbol) {
+        return StringUtils.equalsIgnoreCase(symbol.getContractType(), "PERPETUAL");
+    }
+
+    /**
+     * the quarterly contracts, not the perpetual ones being delisted: PERPETUAL DELIVERING
+     *
+     * @param symbol
+     * @return
+     */
+    private static boolean isDelivery(BinanceExInfoSymbol symbol) {
+
+        return StringUtils.equalsAnyIgnoreCase(symbol.getContractType(), "CURRENT_QUARTER", "NEXT_QUARTER");
+    }
+
+    private static LocalDateTime toDateTime(Long epochMillis) {
+
+        if (epochMillis == null) {
+            return null;
+        }
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), DateTimeUtils.UTC);
+    }
+
+    /**
+     * the streamed tickers carry the raw symbol in baseSymbol, split it with the exchange info.
+     *
+     * @param tuple
+     * @param isSpot
+     * @return
+     */
+    private TickerEntity toEntity(Tuple2<List<TickerEntity.CMCTicker>, Map<String, BinanceExInfoSymbol>> tuple,
+        boolean isSpot) {
+        List<TickerEntity.CMCTicker> tickers = tuple.getT1();
+        Map<String, BinanceExInfoSymbol> symbolMap = tuple.getT2();
+
+        for (TickerEntity.CMCTicker t : tickers) {
+            Pair<String, String> p = split(t.getBaseSymbol(), symbolMap, isSpot);
+            if (p != null) {
+                t.setMainSymbol(p.getRight());
+                t.setBaseSymbol(p.getLeft());
+            }
+        }
+        return TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName()).cmcTickers(tickers)
+            .updatedTime(DateTimeUtils.nowUTC()).build();
+    }
+
+    private Map<String, BinanceExInfoSymbol> toSymbolMap(BinanceExInfoData info) {
 
         Map<String, BinanceExInfoSymbol> symbolMap = Maps.newHashMapWithExpectedSize(1500);
         try {
@@ -73,67 +485,121 @@ public class BinanceService extends AExchange {
         } catch (Exception ex) {
             // nothing
         }
+        return symbolMap;
+    }
 
-        TickerEntity tickerEntity = TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName())
-            .cmcTickers(Lists.newArrayListWithCapacity(tickers.size())).updatedTime(DateTimeUtils.nowUTC()).build();
-
-        List<TickerEntity.CMCTicker> list = tickerEntity.getCmcTickers();
-        for (BinanceTickerData d : tickers) {
-            Pair<String, String> p = symbolUtils.splitWithFullString(getExchangeId(), d.getSymbol());
-
-            BinanceExInfoSymbol symbolInfo = symbolMap.get(d.getSymbol());
-            if (symbolInfo != null) {
-                if (p == null) {
-                    // main = right = quote, base = left = base
-                    p = Pair.of(symbolInfo.getBaseAsset(), symbolInfo.getQuoteAsset());
-                }
+    /**
+     * split the raw symbol, null if unknown or, for spot, not trading
+     *
+     * @param symbol
+     * @param symbolMap
+     * @param isSpot
+     * @return base, main
+     */
+    private Pair<String, String> split(String symbol, Map<String, BinanceExInfoSymbol> symbolMap, boolean isSpot) {
 
-                if (isSpot && !StringUtils.equalsIgnoreCase(symbolInfo.getStatus(), "TRADING")) {
-                    p = null;
-                }
+        Pair<String, String> p = symbolUtils.splitWithFullString(getExchangeId(), symbol);
 
+        BinanceExInfoSymbol symbolInfo = symbolMap.get(symbol);
+        if (symbolInfo != null) {
+            if (p == null) {
+                // main = right = quote, base = left = base
+                p = Pair.of(symbolInfo.getBaseAsset(), symbolInfo.getQuoteAsset());
             }
 
-            TickerEntity.CMCTicker t;
-            if (p != null) {
-                t = TickerEntity.CMCTicker.builder().mainSymbol(p.getRight()).baseSymbol(p.getLeft())
-                    .quote(d.getLastPrice()).mainVolume(d.getVolume().multiply(d.getLastPrice())).build();
-            } else {
-                t = TickerEntity.CMCTicker.builder().baseSymbol(d.getSymbol()).quote(d.getLastPrice())
-                    .mainVolume(d.getVolume().multiply(d.getLastPrice())).build();
+            if (isSpot && !StringUtils.equalsIgnoreCase(symbolInfo.getStatus(), "TRADING")) {
+                p = null;
             }
-            list.add(t);
 
         }
-        return tickerEntity;
+        return p;
     }
 
-    @Data
-    public static class BinanceTickerData {
-
-        private final BigDecimal priceChange;
-        private final BigDecimal priceChangePercent;
-        private final BigDecimal weightedAvgPrice;
-        private final BigDecimal prevClosePrice;
-        private final BigDecimal lastPrice;
-        private final BigDecimal lastQty;
-        private final BigDecimal bidPrice;
-        private final BigDecimal bidQty;
-        private final BigDecimal askPrice;
-        private final BigDecimal askQty;
-        private final BigDecimal openPrice;
-        private final BigDecimal highPrice;
-        private final BigDecimal lowPrice;
-        private final BigDecimal volume;
-        private final BigDecimal quoteVolume;
-        private final BigDecimal baseVolume;
-        private final long openTime;
-        private final long closeTime;
-        private final long firstId;
-        private final long lastId;
-        private final long count;
-        private final String symbol;
-        private final String pair;
+    /**
+     * {"lastUpdateId":1027024,"bids":[["4.00000000","431.00000000"]],"asks":[["4.00000200","12.00000000"]]}
+     *
+     * @param task
+     * @return
+     */
+    @Override
+    protected Mono<OrderBookLevels> getOrderBooks(ExchangeScheduleTaskEntity task) {
+
+        return get(template("depth", buildProxyUrl(OB_URL, null) + "%s"),
+            (task.getBaseSymbol() + task.getMainSymbol()).toUpperCase()).map(
+            OrderBookLevels::of);
+    }
+
+    /**
+     * usdⓈ-m: margined and settled in usdt or busd, coin-m: margined and settled in the base asset.
+     * each market has its own weight quota, the weights are the ones of the endpoints without symbol.
+     */
+    private enum FuturesMarket {
+
+        USDM("usdmSymbols", SWAP_INFO, SWAP_URL, BOOK_TICKER, PERMIUM_INDEX, OPEN_INTEREST, false,
+            new int[] {40, 2, 1, 1}),
+        COINM("coinmSymbols", COIN_FUTURES_ECHANGE_INFO, COIN_FUTURES_TICKER_24HR, COIN_FUTURES_BOOK_TICKER,
+            COIN_FUTURES_PREMIUM_INDEX, COIN_FUTURES_OPEN_INTEREST, true, new int[] {40, 2, 10, 1});
+
+        private final String metadataName;
+        private final String exchangeInfoUrl;
+        private final String tickerUrl;
+        private final String bookTickerUrl;
+        private final String premiumIndexUrl;
+        private final String openInterestUrl;
+        private final boolean coinMargined;
+        private final int tickerWeight;
+        private final int bookTickerWeight;
+        private final int premiumIndexWeight;
+        private final int openInterestWeight;
+
+        /**
+         * @param weights 24hr, bookTicker, premiumIndex and openInterest
+         */
+        FuturesMarket(String metadataName, String exchangeInfoUrl, String tickerUrl, String bookTickerUrl,
+            String premiumIndexUrl, String openInterestUrl, boolean coinMargined, int[] weights) {
+
+            this.metadataName = metadataName;
+            this.exchangeInfoUrl = exchangeInfoUrl;
+            this.tickerUrl = tickerUrl;
+            this.bookTickerUrl = bookTickerUrl;
+            this.premiumIndexUrl = premiumIndexUrl;
+            this.openInterestUrl = openInterestUrl;
+            this.coinMargined = coinMargined;
+            this.tickerWeight = weights[0];
+            this.bookTickerWeight = weights[1];
+            this.premiumIndexWeight = weights[2];
+            this.openInterestWeight = weights[3];
+        }
+    }
+
+    private static class OpenInterest {
+
+        private final BigDecimal value;
+        private final long time;
+
+        OpenInterest(BigDecimal value, long time) {
+
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    /**
+     * /ticker/24hr rows: {"symbol":"ETHBTC","lastPrice":"0.07","volume":"1000",...}
+     */
+    private static class BinanceTickerParser extends RowTokenParser {
+
+        BinanceTickerParser() {
+            super("symbol", "lastPrice", "volume");
+        }
+
+        @Override
+        protected void onRow(String[] values, Consumer<TickerEntity.CMCTicker> sink) {
+
+            BigDecimal lastPrice = ExtUtils.parseBigDecimal(values[1]);
+            sink.accept(TickerEntity.CMCTicker.builder().baseSymbol(values[0]).quote(lastPrice)
+                .mainVolume(ExtUtils.parseBigDecimal(values[2]).multiply(lastPrice)).build());
+        }
     }
 
     @Data
@@ -154,9 +620,9 @@ public class BinanceService extends AExchange {
         private String contractStatus;
         private BigDecimal contractSize;
         private String marginAsset;
-        private BigDecimal maintMarginPercent;
-        private BigDecimal requiredMarginPercent;
-        private BigDecimal triggerProtect;
+        private LazyDecimal maintMarginPercent;
+        private LazyDecimal requiredMarginPercent;
+        private LazyDecimal triggerProtect;
 
         private String status;
         private String baseAsset;
@@ -75,4 +75,17 @@ public class BinanceUsService extends AExchange {
         }
         return tickerEntity;
     }
+
+    /**
+     * {"lastUpdateId":1027024,"bids":[["4.00000000","431.00000000"]],"asks":[["4.00000200","12.00000000"]]}
+     *
+     * @param task
+     * @return
+     */
+    @Override
+    protected Mono<OrderBookLevels> getOrderBooks(ExchangeScheduleTaskEntity task) {
+
+        return get(template("depth", ORDER_BOOK_URL), StringUtils.upperCase(task.getBaseSymbol()),
+            StringUtils.upperCase(task.getMainSymbol())).map(OrderBookLevels::of);
+    }
 }
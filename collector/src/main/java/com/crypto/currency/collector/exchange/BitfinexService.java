@@ -4,10 +4,8 @@ import com.crypto.currency.collector.support.annotation.Exchange;
 import com.crypto.currency.collector.util.SymbolUtils;
 import com.crypto.currency.common.utils.DateTimeUtils;
 import com.crypto.currency.common.utils.ExtUtils;
-import com.crypto.currency.common.utils.JacksonUtils;
 import com.crypto.currency.data.entity.ExchangeScheduleTaskEntity;
 import com.crypto.currency.data.entity.TickerEntity;
-import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.collect.Lists;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -16,6 +14,7 @@ import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.function.Consumer;
 
 /**
  * @author Panzi
@@ -36,21 +35,22 @@ public class BitfinexService extends AExchange {
 
     @Override
     public Mono<TickerEntity> getTickers(ExchangeScheduleTaskEntity taskEntity) {
-        return get(URL).map(m -> JacksonUtils.deserialize(m, new TypeReference<List<String[]>>() {
-        })).map(item -> this.toEntity(item, "spot"));
+        return getStreaming(URL, BitfinexTickerParser::new).map(item -> this.toEntity(item, "spot"));
     }
 
-    private TickerEntity toEntity(List<String[]> response, String type) {
+    /**
+     * the streamed tickers carry the raw symbol in baseSymbol
+     *
+     * @param response
+     * @param type
+     * @return
+     */
+    private TickerEntity toEntity(List<TickerEntity.CMCTicker> response, String type) {
         TickerEntity tickerEntity = TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName())
             .cmcTickers(Lists.newArrayListWithCapacity(response.size())).updatedTime(DateTimeUtils.nowUTC()).build();
 
-        for (String[] entity : response) {
-            String symbol = entity[0];
-            if (!StringUtils.startsWith(symbol, "t")) {
-                continue;
-            }
-
-            symbol = StringUtils.removeStart(symbol, "t");
+        for (TickerEntity.CMCTicker ticker : response) {
+            String symbol = StringUtils.removeStart(ticker.getBaseSymbol(), "t");
 
             Pair<String, String> pair = null;
 
@@ -74,18 +74,48 @@ public class BitfinexService extends AExchange {
             }
 
             if (pair != null) {
-                tickerEntity.getCmcTickers().add(
-                    TickerEntity.CMCTicker.builder().mainSymbol(pair.getRight()).baseSymbol(pair.getLeft())
-                        .quote(new BigDecimal(entity[7]))
-                        .mainVolume(ExtUtils.parseBigDecimal(entity[8]).multiply(ExtUtils.parseBigDecimal((entity[7]))))
-                        .build());
+                ticker.setMainSymbol(pair.getRight());
+                ticker.setBaseSymbol(pair.getLeft());
             } else {
-                tickerEntity.getCmcTickers().add(
-                    TickerEntity.CMCTicker.builder().baseSymbol(symbol).quote(new BigDecimal(entity[7]))
-                        .mainVolume(ExtUtils.parseBigDecimal(entity[8]).multiply(ExtUtils.parseBigDecimal((entity[7]))))
-                        .build());
+                ticker.setBaseSymbol(symbol);
             }
+            tickerEntity.getCmcTickers().add(ticker);
         }
         return tickerEntity;
     }
+
+    /**
+     * {"bids":[{"price":"574.61","amount":"0.14","timestamp":"1472506127.0"}],"asks":[...]}
+     *
+     * @param task
+     * @return
+     */
+    @Override
+    protected Mono<OrderBookLevels> getOrderBooks(ExchangeScheduleTaskEntity task) {
+
+        return get(template("book", ORDER_BOOK_URL), StringUtils.lowerCase(task.getBaseSymbol()),
+            StringUtils.lowerCase(task.getMainSymbol())).map(OrderBookLevels::of);
+    }
+
+    /**
+     * /v2/tickers rows: [SYMBOL, BID, BID_SIZE, ASK, ASK_SIZE, DAILY_CHANGE, DAILY_CHANGE_RELATIVE, LAST_PRICE,
+     * VOLUME, HIGH, LOW], the funding rows(fUSD) are skipped.
+     */
+    private static class BitfinexTickerParser extends RowTokenParser {
+
+        BitfinexTickerParser() {
+            super(0, 7, 8);
+        }
+
+        @Override
+        protected void onRow(String[] values, Consumer<TickerEntity.CMCTicker> sink) {
+
+            if (!StringUtils.startsWith(values[0], "t")) {
+                return;
+            }
+            BigDecimal lastPrice = ExtUtils.parseBigDecimal(values[1]);
+            sink.accept(TickerEntity.CMCTicker.builder().baseSymbol(values[0]).quote(lastPrice)
+                .mainVolume(ExtUtils.parseBigDecimal(values[2]).multiply(lastPrice)).build());
+        }
+    }
 }
@@ -1,26 +1,42 @@
 package com.crypto.currency.collector.exchange;
 
+import com.crypto.currency.collector.support.annotation.Exchange;
 import com.crypto.currency.collector.util.SymbolUtils;
 import com.crypto.currency.common.exception.BusinessException;
+import com.crypto.currency.common.http.BoundedSink;
+import com.crypto.currency.common.http.FanOut;
+import com.crypto.currency.common.http.WebSocketSessionManager;
 import com.crypto.currency.common.utils.DateTimeUtils;
+import com.crypto.currency.common.utils.ExtUtils;
 import com.crypto.currency.common.utils.JacksonUtils;
 import com.crypto.currency.data.entity.ExchangeScheduleTaskEntity;
 import com.crypto.currency.data.entity.TickerEntity;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
  * @author Panzi
- * @Description the exchange Coinbase
+ * @Description the exchange Coinbase, the public endpoints allow 10 requests per second by ip
  * @date 2022/5/6 23:28
  */
+@Slf4j
+@Exchange(id = "89", name = "Coinbase Exchange", permits = 10, interval = 1000L)
 public class CoinbaseProService extends AExchange {
 
     private final static String URL = "https://discover.coinmarketcap.supply/exchange/89";
@@ -31,16 +47,194 @@ public class CoinbaseProService extends AExchange {
 
     private final static String TICKER_URL = "https://api.pro.coinbase.com/products/%s/ticker";
 
+    private final static String STATS_URL = "https://api.pro.coinbase.com/products/stats";
+
+    /**
+     * the fallback: 8 product tickers in flight, 5s each, 60s for the cycle
+     */
+    private final static FanOut FAN_OUT = new FanOut(8, Duration.ofSeconds(5L), Duration.ofSeconds(60L));
+
+    /**
+     * ticker messages: {"type":"ticker","product_id":"BTC-USD","price":"30000.01","volume_24h":"12345.6",...}
+     */
+    private final static String WS_URL = "wss://ws-feed.exchange.coinbase.com";
+    private final static String WS_TICKER = "ticker";
+
+    /**
+     * level2 messages: {"type":"snapshot","product_id":"BTC-USD","bids":[["10101.10","0.45"]],"asks":[...]},
+     * then {"type":"l2update","product_id":"BTC-USD","changes":[["buy","10101.80","0.16"]]}. no sequence,
+     * every subscription, also the one resent after a reconnect, starts with a new snapshot.
+     */
+    private final static String WS_LEVEL2 = "level2";
+
+    private final static Function<String, String> WS_TYPE = WebSocketSessionManager.topLevelFields("type");
+    private final static Function<String, String> WS_PRODUCT = WebSocketSessionManager.topLevelFields("product_id");
+
+    /**
+     * routed by the type, the level2 messages by the product too.
+     * a slow ticker consumer only gets the latest ticker of every product
+     */
+    private final static WebSocketSessionManager.SessionOptions WS_OPTIONS =
+        WebSocketSessionManager.SessionOptions.builder().router(CoinbaseProService::channelOf)
+            .overflow(BoundedSink.Overflow.LATEST).conflationKey(WS_PRODUCT).build();
+
+    /**
+     * the stats of all the products in one call, the product tickers are the fallback
+     */
     @Override
     protected Mono<TickerEntity> getTickers(ExchangeScheduleTaskEntity taskEntity) {
-        return get(PAIRS_URL).map(r -> JacksonUtils.readTree(r)).flatMapIterable(this::getPairList)
-            .flatMap(item -> get(buildProxyUrl(String.format(TICKER_URL, item), null)).map(m -> {
-                CoinbaseTickerData coinbaseTickerData = JacksonUtils.deserialize(m, CoinbaseTickerData.class);
-                Pair<String, String> pair = SymbolUtils.splitWithDash(item);
-                coinbaseTickerData.setBaseSymbol(pair.getLeft());
-                coinbaseTickerData.setMainSymbol(pair.getRight());
-                return coinbaseTickerData;
-            })).collectList().map(this::toEntity);
+
+        return getProducts().flatMap(
+            pairs -> getBulkTickers(pairs).onErrorResume(e -> {
+                log.warn("Coinbase product stats failed, fall back to the product tickers: {}", e.getMessage());
+                return getProductTickers(pairs);
+            })).map(this::toEntity);
+    }
+
+    /**
+     * {"BTC-USD":{"stats_24hour":{"open":"..","high":"..","low":"..","volume":"..","last":".."},"stats_30day":{..}}}
+     *
+     * @param pairs
+     * @return
+     */
+    private Mono<List<CoinbaseTickerData>> getBulkTickers(List<String> pairs) {
+
+        return get(STATS_URL).map(m -> {
+            JsonNode stats = JacksonUtils.readTree(m);
+            List<CoinbaseTickerData> tickers = Lists.newArrayListWithCapacity(pairs.size());
+            for (String item : pairs) {
+                JsonNode day = stats.path(item).path("stats_24hour");
+                if (isValidNumericNode(day.get("last")) && isValidNumericNode(day.get("volume"))) {
+                    tickers.add(toTickerData(item, ExtUtils.parseBigDecimal(day.get("last").asText()),
+                        ExtUtils.parseBigDecimal(day.get("volume").asText())));
+                }
+            }
+            if (tickers.isEmpty()) {
+                BusinessException.throwIfMessage("No product stats in the response.");
+            }
+            return tickers;
+        });
+    }
+
+    /**
+     * one ticker request per product under the fan-out limits, the products not answered in time are skipped
+     *
+     * @param pairs
+     * @return
+     */
+    private Mono<List<CoinbaseTickerData>> getProductTickers(List<String> pairs) {
+
+        return FAN_OUT.execute(pairs, item -> get(template("ticker", buildProxyUrl(TICKER_URL, null)), item).map(m -> {
+            CoinbaseTickerData coinbaseTickerData = JacksonUtils.deserialize(m, CoinbaseTickerData.class);
+            Pair<String, String> pair = SymbolUtils.splitWithDash(item);
+            coinbaseTickerData.setBaseSymbol(pair.getLeft());
+            coinbaseTickerData.setMainSymbol(pair.getRight());
+            return coinbaseTickerData;
+        })).map(result -> {
+            log.info("Coinbase product tickers: {}", result);
+            return result.getValues();
+        });
+    }
+
+    /**
+     * the product ids, kept by the metadata cache
+     *
+     * @return
+     */
+    private Mono<List<String>> getProducts() {
+
+        return metadata("products", () -> getConditional(PAIRS_URL, m -> getPairList(JacksonUtils.readTree(m))));
+    }
+
+    private static CoinbaseTickerData toTickerData(String item, BigDecimal price, BigDecimal volume) {
+
+        CoinbaseTickerData data = new CoinbaseTickerData();
+        Pair<String, String> pair = SymbolUtils.splitWithDash(item);
+        if (pair != null) {
+            data.setBaseSymbol(pair.getLeft());
+            data.setMainSymbol(pair.getRight());
+        }
+        data.setPrice(price);
+        data.setVolume(volume);
+        return data;
+    }
+
+    @Override
+    protected Flux<TickerEntity.CMCTicker> subscribeTickers() {
+
+        return getProducts().flatMapMany(
+            pairs -> getSession(WS_URL, WS_OPTIONS).subscribe(WS_TICKER, subscription("subscribe", pairs, WS_TICKER),
+                subscription("unsubscribe", pairs, WS_TICKER)).mapNotNull(this::toStreamTicker));
+    }
+
+    private static String subscription(String type, List<String> pairs, String channel) {
+
+        Map<String, Object> message = Maps.newLinkedHashMap();
+        message.put("type", type);
+        message.put("product_ids", pairs);
+        message.put("channels", Collections.singletonList(channel));
+        return JacksonUtils.serialize(message);
+    }
+
+    private static String channelOf(String message) {
+
+        String type = WS_TYPE.apply(message);
+        if ("snapshot".equals(type) || "l2update".equals(type)) {
+            return WS_LEVEL2 + ":" + WS_PRODUCT.apply(message);
+        }
+        return type;
+    }
+
+    /**
+     * the snapshot replaces the book, the changes are applied without sequence check
+     *
+     * @param task
+     * @param book
+     * @return
+     */
+    @Override
+    protected Mono<Void> syncOrderBook(ExchangeScheduleTaskEntity task, LiveOrderBook book) {
+
+        final List<String> product =
+            Collections.singletonList(task.getBaseSymbol().toUpperCase() + "-" + task.getMainSymbol().toUpperCase());
+        return getSession(WS_URL, WS_OPTIONS).subscribe(WS_LEVEL2 + ":" + product.get(0),
+            subscription("subscribe", product, WS_LEVEL2), subscription("unsubscribe", product, WS_LEVEL2),
+            BoundedSink.Overflow.ERROR).concatMap(m -> {
+            JsonNode node = JacksonUtils.readTree(m);
+            if ("snapshot".equals(node.path("type").asText())) {
+                book.snapshot(-1, node.path("bids"), node.path("asks"));
+                return Mono.<Void>empty();
+            }
+            ArrayNode bids = JsonNodeFactory.instance.arrayNode();
+            ArrayNode asks = JsonNodeFactory.instance.arrayNode();
+            for (JsonNode change : node.path("changes")) {
+                ArrayNode level = ("buy".equals(change.path(0).asText()) ? bids : asks).addArray();
+                level.add(change.path(1).asText()).add(change.path(2).asText());
+            }
+            if (book.update(-1, -1, bids, asks) == LiveOrderBook.Update.GAP) {
+                return Mono.<Void>error(
+                    new BusinessException("The level2 book of " + product.get(0) + " is not synced."));
+            }
+            return Mono.<Void>empty();
+        }).then();
+    }
+
+    /**
+     * the ticker of a ticker message
+     *
+     * @param message
+     * @return null if the product is unknown or not traded
+     */
+    private TickerEntity.CMCTicker toStreamTicker(String message) {
+
+        JsonNode node = JacksonUtils.readTree(message);
+        Pair<String, String> pair = SymbolUtils.splitWithDash(node.path("product_id").asText());
+        if (pair == null || !isValidNumericNode(node.get("price")) || !isValidNumericNode(node.get("volume_24h"))) {
+            return null;
+        }
+        BigDecimal price = ExtUtils.parseBigDecimal(node.get("price").asText());
+        return TickerEntity.CMCTicker.builder().baseSymbol(pair.getLeft()).mainSymbol(pair.getRight()).quote(price)
+            .mainVolume(price.multiply(ExtUtils.parseBigDecimal(node.get("volume_24h").asText()))).build();
     }
 
     private List<String> getPairList(JsonNode jsonNode) {
@@ -70,6 +264,19 @@ public class CoinbaseProService extends AExchange {
         return tickerEntity;
     }
 
+    /**
+     * level 2, the best 50 levels aggregated: {"sequence":3,"bids":[["295.96","4.39",2]],"asks":[...]}
+     *
+     * @param task
+     * @return
+     */
+    @Override
+    protected Mono<OrderBookLevels> getOrderBooks(ExchangeScheduleTaskEntity task) {
+
+        return get(template("book", OD_URL + "%s-%s/book?level=2"), task.getBaseSymbol().toUpperCase(),
+            task.getMainSymbol().toUpperCase()).map(OrderBookLevels::of);
+    }
+
     @Data
     public static class CoinbaseTickerData {
         private String trade_id;
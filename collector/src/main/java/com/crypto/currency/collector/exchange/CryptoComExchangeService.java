@@ -2,18 +2,26 @@ package com.crypto.currency.collector.exchange;
 
 import com.crypto.currency.collector.support.annotation.Exchange;
 import com.crypto.currency.collector.util.SymbolUtils;
-import com.crypto.currency.common.utils.DateTimeUtils;
+import com.crypto.currency.common.http.BoundedSink;
+import com.crypto.currency.common.http.WebSocketSessionManager;
+import com.crypto.currency.common.utils.ExtUtils;
 import com.crypto.currency.common.utils.JacksonUtils;
 import com.crypto.currency.data.entity.ExchangeScheduleTaskEntity;
 import com.crypto.currency.data.entity.TickerEntity;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 /**
  * @author Panzi
@@ -35,31 +43,122 @@ public class CryptoComExchangeService extends AExchange {
      */
     private final static String INSTRUMENTS_DETAIL_URL = "https://deriv-api.crypto.com/v1/public/get-tickers";
 
+    /**
+     * routed by the method: the channel messages are {"method":"subscribe","result":{"channel":"ticker","data":[..]}}
+     */
+    private final static String WS_URL = "wss://stream.crypto.com/v2/market";
+    private final static String WS_CHANNEL = "subscribe";
+    private final static String WS_INSTRUMENT = "\"instrument_name\":\"";
+
+    /**
+     * the connection is closed if a heartbeat request is not answered.
+     * a slow consumer only gets the latest ticker of every instrument.
+     */
+    private final static WebSocketSessionManager.SessionOptions WS_OPTIONS =
+        WebSocketSessionManager.SessionOptions.builder().router(WebSocketSessionManager.topLevelFields("method"))
+            .autoReply(CryptoComExchangeService::heartbeatReply).overflow(BoundedSink.Overflow.LATEST)
+            .conflationKey(CryptoComExchangeService::instrumentOf).build();
+
+    /**
+     * {"code":0,"result":{"data":[{"i":"BTC_USDT","a":"9548.1","v":"10.5",...}]}}, a: the last price, v: the volume
+     */
+    private final static TickerAdapter TICKERS = TickerAdapter.builder(URL).rows("result", "data")
+        .symbol("i", TickerAdapter.Split.UNDERSCORE).quote("a").baseVolume("v").build();
+
     /**
      * @return
      */
     @Override
     public Mono<TickerEntity> getTickers(ExchangeScheduleTaskEntity taskEntity) {
+        return getTickers(TICKERS);
+    }
 
-        return get(URL).map(result -> JacksonUtils.deserialize(result, CryptoComExchangeResponse.class))
-            .map(this::toEntity);
+    @Override
+    protected Flux<TickerEntity.CMCTicker> subscribeTickers() {
+
+        return getConditional(URL, m -> JacksonUtils.deserialize(m, CryptoComExchangeResponse.class)).flatMapMany(
+            response -> {
+                List<String> channels = response.getResult().getData().stream().map(d -> "ticker." + d.getI())
+                    .collect(Collectors.toList());
+                return getSession(WS_URL, WS_OPTIONS).subscribe(WS_CHANNEL, subscription(1, "subscribe", channels),
+                    subscription(2, "unsubscribe", channels)).flatMapIterable(this::toStreamTickers);
+            });
+    }
+
+    /**
+     * {"id":1587523073344,"method":"public/heartbeat"} is answered with public/respond-heartbeat and the same id
+     *
+     * @param message
+     * @return null if not a heartbeat
+     */
+    private static String heartbeatReply(String message) {
 
+        if (!message.contains("public/heartbeat")) {
+            return null;
+        }
+        long id = JacksonUtils.readTree(message).path("id").asLong();
+        return "{\"id\":" + id + ",\"method\":\"public/respond-heartbeat\"}";
     }
 
-    private TickerEntity toEntity(CryptoComExchangeResponse response) {
-        TickerEntity tickerEntity = TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName())
-            .cmcTickers(Lists.newArrayListWithCapacity(response.getResult().getData().size()))
-            .updatedTime(DateTimeUtils.nowUTC()).build();
-        for (Market data : response.getResult().getData()) {
-            Pair<String, String> p = SymbolUtils.splitWithUnderscore(data.getI());
-            if (p == null) {
+    /**
+     * the instrument of a channel message, read without parsing it
+     *
+     * @param message
+     * @return null if none
+     */
+    private static String instrumentOf(String message) {
+
+        int start = message.indexOf(WS_INSTRUMENT);
+        if (start < 0) {
+            return null;
+        }
+        start += WS_INSTRUMENT.length();
+        int end = message.indexOf('"', start);
+        return end < 0 ? null : message.substring(start, end);
+    }
+
+    private static String subscription(long id, String method, List<String> channels) {
+
+        Map<String, Object> message = Maps.newLinkedHashMap();
+        message.put("id", id);
+        message.put("method", method);
+        message.put("params", Collections.singletonMap("channels", channels));
+        return JacksonUtils.serialize(message);
+    }
+
+    /**
+     * the tickers of a channel message, the subscription acks have no data
+     *
+     * @param message
+     * @return
+     */
+    private List<TickerEntity.CMCTicker> toStreamTickers(String message) {
+
+        JsonNode data = JacksonUtils.readTree(message).path("result").path("data");
+        List<TickerEntity.CMCTicker> tickers = Lists.newArrayListWithCapacity(data.size());
+        for (JsonNode row : data) {
+            Pair<String, String> p = SymbolUtils.splitWithUnderscore(row.path("i").asText());
+            if (p == null || !isValidNumericNode(row.get("a")) || !isValidNumericNode(row.get("v"))) {
                 continue;
             }
-            tickerEntity.getCmcTickers().add(
-                TickerEntity.CMCTicker.builder().baseSymbol(p.getKey()).mainSymbol(p.getValue()).quote(data.getA())
-                    .mainVolume(data.getV().multiply(data.getA())).build());
+            BigDecimal price = ExtUtils.parseBigDecimal(row.get("a").asText());
+            tickers.add(TickerEntity.CMCTicker.builder().baseSymbol(p.getKey()).mainSymbol(p.getValue()).quote(price)
+                .mainVolume(ExtUtils.parseBigDecimal(row.get("v").asText()).multiply(price)).build());
         }
-        return tickerEntity;
+        return tickers;
+    }
+
+    /**
+     * {"result":{"data":[{"bids":[["9668.44","0.006325",1]],"asks":[...],"t":1591704180270}]}}
+     *
+     * @param task
+     * @return
+     */
+    @Override
+    protected Mono<OrderBookLevels> getOrderBooks(ExchangeScheduleTaskEntity task) {
+
+        return get(template("book", OD_URL), task.getBaseSymbol().toUpperCase(), task.getMainSymbol().toUpperCase())
+            .map(m -> OrderBookLevels.of(m, "result", "data", "0"));
     }
 
     @Data
@@ -74,16 +173,11 @@ public class CryptoComExchangeService extends AExchange {
         private List<Market> data;
     }
 
+    /**
+     * the instrument of a ticker row, the other fields are skipped
+     */
     @Data
     public static class Market {
         private String i;   //Instrument Name, e.g. BTC_USDT, ETH_CRO,
-        private BigDecimal b;
-        private BigDecimal k;
-        private BigDecimal a;   //The price of the latest trade, null if there weren't any trades
-        private Long t;
-        private BigDecimal v;   //The total 24h traded volume,
-        private BigDecimal h;
-        private BigDecimal l;
-        private BigDecimal c;
     }
 }
@@ -0,0 +1,69 @@
+package com.crypto.currency.collector.exchange;
+
+import com.google.common.collect.Maps;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
+import reactor.util.retry.Retry;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author Panzi
+ * @Description Subscribe the ticker streams of the exchanges after the start, the streamed tickers fill the ticker
+ * books the spot tasks are served from. the stream is restarted with backoff if its setup fails.
+ * @date 2022/6/26 21:40
+ */
+@Component
+@Slf4j
+public class ExchangeTickerStreams implements ApplicationListener<ContextRefreshedEvent>, DisposableBean {
+
+    @Value("${service.stream.enabled:false}")
+    private boolean enabled;
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    private final Disposable.Composite streams = Disposables.composite();
+
+    private final Map<String, AExchange> exchanges = Maps.newTreeMap();
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+
+        if (!enabled || event.getApplicationContext().getParent() != null || !started.compareAndSet(false, true)) {
+            return;
+        }
+        exchanges.putAll(event.getApplicationContext().getBeansOfType(AExchange.class));
+        exchanges.forEach((name, exchange) -> streams.add(exchange.streamTickers().retryWhen(
+                Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1L)).maxBackoff(Duration.ofMinutes(1L))
+                    .doBeforeRetry(r -> log.warn("Restart the ticker stream of {}: {}", name,
+                        r.failure().getMessage())))
+            .subscribe(t -> {
+            }, e -> log.error("The ticker stream of {} stopped.", name, e))));
+        log.info("Subscribed the ticker streams of {} exchanges.", exchanges.size());
+    }
+
+    /**
+     * the ticker books by exchange, the exchanges without stream stay empty
+     *
+     * @return
+     */
+    public Map<String, LatestTickerBook.Stats> stats() {
+
+        Map<String, LatestTickerBook.Stats> stats = Maps.newTreeMap();
+        exchanges.forEach((name, exchange) -> stats.put(name, exchange.getTickerBook().stats()));
+        return stats;
+    }
+
+    @Override
+    public void destroy() {
+        streams.dispose();
+    }
+}
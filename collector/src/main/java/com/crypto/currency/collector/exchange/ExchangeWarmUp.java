@@ -0,0 +1,66 @@
+package com.crypto.currency.collector.exchange;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * @author Panzi
+ * @Description Warm up the registered exchanges after the start: resolve the hosts of their endpoints and pre-open
+ * the connections of their pools, the health check reports ready only after it.
+ * @date 2022/6/24 21:30
+ */
+@Component
+@Slf4j
+public class ExchangeWarmUp implements ApplicationListener<ContextRefreshedEvent> {
+
+    /**
+     * the connections per host, 0 : no warm up
+     */
+    @Value("${service.warm-up.connections:2}")
+    private int connections;
+
+    /**
+     * millis, ready after it even if some hosts are not warmed up
+     */
+    @Value("${service.warm-up.timeout:30000}")
+    private long timeout;
+
+    private final AtomicBoolean started = new AtomicBoolean(false);
+
+    private volatile boolean ready;
+
+    @Override
+    public void onApplicationEvent(ContextRefreshedEvent event) {
+
+        if (event.getApplicationContext().getParent() != null || !started.compareAndSet(false, true)) {
+            return;
+        }
+        if (connections <= 0) {
+            ready = true;
+            return;
+        }
+        Map<String, AExchange> exchanges = event.getApplicationContext().getBeansOfType(AExchange.class);
+        final long startTime = System.currentTimeMillis();
+        Flux.fromIterable(exchanges.entrySet()).flatMap(entry -> entry.getValue().warmUp(connections).doOnNext(
+                count -> log.info("Warmed up {}: {} connections.", entry.getKey(), count))
+            .onErrorResume(e -> Mono.just(0L))).reduce(0L, Long::sum).timeout(Duration.ofMillis(timeout))
+            .doFinally(f -> {
+                ready = true;
+                log.info("Warm up finished in {}ms: {}", System.currentTimeMillis() - startTime, f);
+            }).subscribe(count -> log.info("Warmed up {} exchanges, {} connections.", exchanges.size(), count),
+                e -> log.warn("Warm up is not complete: {}", e.getMessage()));
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+}
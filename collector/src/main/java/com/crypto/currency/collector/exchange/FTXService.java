@@ -4,6 +4,7 @@ import com.crypto.currency.collector.support.annotation.Exchange;
 import com.crypto.currency.collector.util.SymbolUtils;
 import com.crypto.currency.common.utils.DateTimeUtils;
 import com.crypto.currency.common.utils.JacksonUtils;
+import com.crypto.currency.common.utils.LazyDecimal;
 import com.crypto.currency.data.entity.ExchangeScheduleTaskEntity;
 import com.crypto.currency.data.entity.TickerEntity;
 import com.google.common.collect.Lists;
@@ -72,16 +73,16 @@ public class FTXService extends AExchange {
 
                 BigDecimal volume;
                 if (StringUtils.equalsIgnoreCase(data.getType(), "spot")) {
-                    volume = data.getQuoteVolume24h();
+                    volume = LazyDecimal.toDecimal(data.getQuoteVolume24h());
                 } else if (StringUtils.equalsIgnoreCase(data.getType(), "future")) {
-                    volume = data.getVolumeUsd24h();
+                    volume = LazyDecimal.toDecimal(data.getVolumeUsd24h());
                 } else {
                     volume = BigDecimal.ZERO;
                 }
 
                 tickerEntity.getCmcTickers().add(
-                    TickerEntity.CMCTicker.builder().baseSymbol(base).mainSymbol(main).quote(data.getPrice())
-                        .mainVolume(volume).build());
+                    TickerEntity.CMCTicker.builder().baseSymbol(base).mainSymbol(main)
+                        .quote(LazyDecimal.toDecimal(data.getPrice())).mainVolume(volume).build());
             }
         }
         return tickerEntity;
@@ -97,39 +98,39 @@ public class FTXService extends AExchange {
     @Data
     public static class FTXData {
 
-        private BigDecimal ask;
-        private BigDecimal bid;
-        private BigDecimal change1h;
-        private BigDecimal change24h;
-        private BigDecimal changeBod;
+        private LazyDecimal ask;
+        private LazyDecimal bid;
+        private LazyDecimal change1h;
+        private LazyDecimal change24h;
+        private LazyDecimal changeBod;
         private String description;
         private Boolean enabled;
         private Boolean expired;
         private Date expiry;
         private String expiryDescription;
         private String group;
-        private BigDecimal imfFactor;
-        private BigDecimal index;
-        private BigDecimal last;
-        private BigDecimal lowerBound;
-        private BigDecimal marginPrice;
-        private BigDecimal mark;
+        private LazyDecimal imfFactor;
+        private LazyDecimal index;
+        private LazyDecimal last;
+        private LazyDecimal lowerBound;
+        private LazyDecimal marginPrice;
+        private LazyDecimal mark;
         private Date moveStart;
-        private BigDecimal minProvideSize;
+        private LazyDecimal minProvideSize;
         private String name;
         private Boolean perpetual;
         private Integer positionLimitWeight;
         private Boolean postOnly;
 
-        private BigDecimal price;
-        private BigDecimal priceIncrement;
-        private BigDecimal quoteVolume24h;
+        private LazyDecimal price;
+        private LazyDecimal priceIncrement;
+        private LazyDecimal quoteVolume24h;
         private Boolean restricted;
-        private BigDecimal sizeIncrement;
+        private LazyDecimal sizeIncrement;
         private String type;
-        private BigDecimal volumeUsd24h;
-        private BigDecimal upperBound;
-        private BigDecimal volume;
+        private LazyDecimal volumeUsd24h;
+        private LazyDecimal upperBound;
+        private LazyDecimal volume;
         private String underlying;
         private String underlyingDescription;
 
@@ -1,20 +1,23 @@
 package com.crypto.currency.collector.exchange;
 
 import com.crypto.currency.collector.support.annotation.Exchange;
-import com.crypto.currency.collector.util.SymbolUtils;
 import com.crypto.currency.common.utils.DateTimeUtils;
+import com.crypto.currency.common.utils.ExtUtils;
 import com.crypto.currency.common.utils.JacksonUtils;
 import com.crypto.currency.data.entity.ExchangeScheduleTaskEntity;
 import com.crypto.currency.data.entity.TickerEntity;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.Lists;
-import lombok.Data;
+import com.google.common.collect.Maps;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.Pair;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -41,44 +44,173 @@ public class GateIoService extends AExchange {
     private static final String FUTURES_TICKER_URL = "https://api.gateio.ws/api/v4/delivery/usdt/tickers";
     private static final String FUTURES_CONTRACT_URL = "https://api.gateio.ws/api/v4/delivery/usdt/contracts";
 
+    /**
+     * the expiry of the perpetual contracts: 2100 year
+     */
+    private static final long PERPETUAL_EXPIRY = 4133376000000L;
+
+    /**
+     * {"btc_usdt":{"result":"true","last":"9548.1","baseVolume":"98765.4","quoteVolume":"10.3",...}},
+     * the baseVolume is of the main symbol
+     */
+    private static final TickerAdapter TICKERS = TickerAdapter.builder(URL)
+        .keyedRows(TickerAdapter.Split.UNDERSCORE).quote("last").mainVolume("baseVolume").build();
+
     @Override
     protected Mono<TickerEntity> getTickers(ExchangeScheduleTaskEntity taskEntity) {
-        return get(URL).map(m -> JacksonUtils.deserialize(m, (new TypeReference<Map<String, GateIoTickerData>>() {
-        }))).map(this::toEntity);
+        return getTickers(TICKERS);
     }
 
-    private TickerEntity toEntity(Map<String, GateIoTickerData> response) {
+    /**
+     * the usdt-settled and btc-settled perpetual contracts
+     *
+     * @param task
+     * @return
+     */
+    @Override
+    protected Mono<TickerEntity> getPerpetualTickers(ExchangeScheduleTaskEntity task) {
 
-        TickerEntity tickerEntity = TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName())
-            .cmcTickers(Lists.newArrayListWithCapacity(response.size())).updatedTime(DateTimeUtils.nowUTC()).build();
+        return Flux.fromArray(SwapMarket.values()).flatMap(this::getSwaps).collectList().map(lists -> {
+            List<TickerEntity.DerivativesTicker> tickers = Lists.newArrayList();
+            lists.forEach(tickers::addAll);
+            return TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName())
+                .derivativesTicker(tickers).updatedTime(DateTimeUtils.nowUTC()).build();
+        });
+    }
 
-        for (Map.Entry<String, GateIoTickerData> item : response.entrySet()) {
-            GateIoTickerData d = item.getValue();
-            String symbol = StringUtils.upperCase(item.getKey());
+    /**
+     * the tickers of every contract of the market in one call, joined with the listed contracts
+     * [{"contract":"BTC_USDT","last":"6432","highest_bid":"6431","lowest_ask":"6433","high_24h":"6500",
+     * "low_24h":"6300","volume_24h_base":"2861","volume_24h_quote":"18404023","total_size":"32323904",
+     * "mark_price":"6434","index_price":"6431","funding_rate":"0.0001"}]
+     *
+     * @param market
+     * @return
+     */
+    private Mono<List<TickerEntity.DerivativesTicker>> getSwaps(SwapMarket market) {
 
-            Pair<String, String> p = SymbolUtils.splitWithUnderscore(symbol);
-            if (p == null) {
-                continue;
+        return Mono.zip(getContracts(market), get(market.tickerUrl)).map(t -> {
+            JsonNode rows = JacksonUtils.readTree(t.getT2());
+            List<TickerEntity.DerivativesTicker> result = Lists.newArrayList();
+            if (rows == null || !rows.isArray()) {
+                return result;
             }
+            for (JsonNode row : rows) {
+                GateIoContract contract = t.getT1().get(row.path("contract").asText());
+                if (contract != null) {
+                    result.add(toDerivatives(contract, row));
+                }
+            }
+            return result;
+        });
+    }
 
-            tickerEntity.getCmcTickers().add(
-                TickerEntity.CMCTicker.builder().baseSymbol(p.getLeft()).mainSymbol(p.getRight()).quote(d.getLast())
-                    .mainVolume(d.getBaseVolume()).build());
+    /**
+     * the listed contracts by name, kept by the metadata cache and revalidated with the conditional get
+     * [{"name":"BTC_USDT","type":"direct","quanto_multiplier":"0.0001","in_delisting":false}]
+     *
+     * @param market
+     * @return
+     */
+    private Mono<Map<String, GateIoContract>> getContracts(SwapMarket market) {
+
+        return metadata(market.metadataName, () -> getConditional(market.contractUrl, m -> {
+            Map<String, GateIoContract> contracts = Maps.newHashMap();
+            JsonNode rows = JacksonUtils.readTree(m);
+            if (rows == null || !rows.isArray()) {
+                return contracts;
+            }
+            for (JsonNode row : rows) {
+                if (row.path("in_delisting").asBoolean()) {
+                    continue;
+                }
+                String name = row.path("name").asText();
+                contracts.put(name, new GateIoContract(name, "inverse".equals(row.path("type").asText()),
+                    ExtUtils.parseBigDecimal(row.path("quanto_multiplier").asText())));
+            }
+            return contracts;
+        }));
+    }
+
+    private TickerEntity.DerivativesTicker toDerivatives(GateIoContract contract, JsonNode row) {
+
+        BigDecimal last = ExtUtils.parseBigDecimal(row.path("last").asText());
+        BigDecimal markPrice = ExtUtils.parseBigDecimal(row.path("mark_price").asText());
+        BigDecimal totalSize = ExtUtils.parseBigDecimal(row.path("total_size").asText());
+        TickerEntity.DerivativesTicker derivatives =
+            TickerEntity.DerivativesTicker.builder().productType("PERPETUAL").tickerId(contract.name)
+                .deliveryTime("PERPETUAL").baseSymbol(StringUtils.substringBefore(contract.name, "_"))
+                .mainSymbol(StringUtils.substringAfter(contract.name, "_")).quote(last)
+                .high(ExtUtils.parseBigDecimal(row.path("high_24h").asText()))
+                .low(ExtUtils.parseBigDecimal(row.path("low_24h").asText()))
+                .bid(ExtUtils.parseBigDecimal(row.path("highest_bid").asText()))
+                .ask(ExtUtils.parseBigDecimal(row.path("lowest_ask").asText()))
+                .baseVolume(ExtUtils.parseBigDecimal(row.path("volume_24h_base").asText()))
+                .mainVolume(ExtUtils.parseBigDecimal(row.path("volume_24h_quote").asText()))
+                .indexPrice(ExtUtils.parseBigDecimal(row.path("index_price").asText()))
+                .fundingRate(ExtUtils.parseBigDecimal(row.path("funding_rate").asText()))
+                .expiryTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(PERPETUAL_EXPIRY), DateTimeUtils.UTC))
+                .build();
+        if (contract.inverse) {
+            // total_size in contracts of 1 usd
+            derivatives.setOpenInterest(totalSize);
+            derivatives.setOpen_InterestUsd(totalSize);
+        } else {
+            // total_size in contracts of quanto_multiplier base asset
+            BigDecimal openInterest = totalSize.multiply(contract.multiplier);
+            derivatives.setOpenInterest(openInterest);
+            derivatives.setOpen_InterestUsd(openInterest.multiply(markPrice));
+            derivatives.setOpenInterestSymbol(derivatives.getMainSymbol());
         }
-        return tickerEntity;
+        return derivatives;
     }
 
-    @Data
-    public static class GateIoTickerData {
-        private String symbol;
-        private String result;
-        private BigDecimal last;
-        private BigDecimal lowestAsk;
-        private BigDecimal highestBid;
-        private BigDecimal percentChange;
-        private BigDecimal baseVolume;
-        private BigDecimal quoteVolume;
-        private BigDecimal high24hr;
-        private BigDecimal low24hr;
+    /**
+     * {"result":"true","asks":[[29500,4.07]],"bids":[[28001,0.5]]}, the asks by price descending
+     *
+     * @param task
+     * @return
+     */
+    @Override
+    protected Mono<OrderBookLevels> getOrderBooks(ExchangeScheduleTaskEntity task) {
+
+        return get(template("orderBook", ORDER_BOOK_URL), StringUtils.lowerCase(task.getBaseSymbol()),
+            StringUtils.lowerCase(task.getMainSymbol())).map(OrderBookLevels::of);
+    }
+
+    private enum SwapMarket {
+
+        USDT("usdtContracts", USDT_CONTRACT_URL, USDT_TICKER_URL),
+        BTC("btcContracts", BTC_CONTRACT_URL, BTC_TICKER_URL);
+
+        private final String metadataName;
+        private final String contractUrl;
+        private final String tickerUrl;
+
+        SwapMarket(String metadataName, String contractUrl, String tickerUrl) {
+
+            this.metadataName = metadataName;
+            this.contractUrl = contractUrl;
+            this.tickerUrl = tickerUrl;
+        }
+    }
+
+    private static class GateIoContract {
+
+        private final String name;
+
+        /**
+         * true : btc-settled, the contract is 1 usd
+         */
+        private final boolean inverse;
+
+        private final BigDecimal multiplier;
+
+        GateIoContract(String name, boolean inverse, BigDecimal multiplier) {
+
+            this.name = name;
+            this.inverse = inverse;
+            this.multiplier = multiplier;
+        }
     }
 }
@@ -1,22 +1,31 @@
 package com.crypto.currency.collector.exchange;
 
 import com.crypto.currency.collector.support.annotation.Exchange;
+import com.crypto.currency.common.http.FanOut;
 import com.crypto.currency.common.utils.DateTimeUtils;
 import com.crypto.currency.common.utils.JacksonUtils;
+import com.crypto.currency.common.utils.LazyDecimal;
 import com.crypto.currency.data.entity.ExchangeScheduleTaskEntity;
 import com.crypto.currency.data.entity.TickerEntity;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Value;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 /**
  * @author Panzi
@@ -29,26 +38,146 @@ import java.util.Map;
  * https://docs.gemini.com/rest-api/#symbols
  */
 @Slf4j
-@Exchange(id = "151", name = "Gemini")
+@Exchange(id = "151", name = "Gemini", permits = 120, interval = 60000L, hedge = true)
 public class GeminiService extends AExchange {
     private static final String URL = "https://api.gemini.com/v1/pubticker/%s%s";
     private static final String OD_URL = "https://api.gemini.com/v1/book/";
 
     private static final String SYMBOL_URL = "https://api.gemini.com/v1/symbols";
 
+    /**
+     * the price of every pair in one call: [{"pair":"BTCUSD","price":"9500.00","percentChange24h":"-0.0132"}],
+     * no volume.
+     */
+    private static final String PRICE_FEED_URL = "https://api.gemini.com/v1/pricefeed";
+
+    /**
+     * the stale volumes refreshed per cycle, the others wait for the next cycles
+     */
+    private static final int VOLUME_REFRESH = 40;
+
+    private static final FanOut VOLUME_FAN_OUT = new FanOut(4, Duration.ofSeconds(5L), Duration.ofSeconds(30L));
+
+    /**
+     * one full query task reading the price feed instead of one pubticker task per pair
+     */
+    @Value("${service.gemini.bulk:true}")
+    private boolean bulk;
+
+    /**
+     * millis, the volume of a pair is fetched from its pubticker at most once per ttl
+     */
+    @Value("${service.gemini.volume-ttl:1800000}")
+    private long volumeTtl;
+
+    /**
+     * the main volume by pair
+     */
+    private final ConcurrentMap<String, Volume> volumes = Maps.newConcurrentMap();
+
+    /**
+     * a volume refresh is running, the cycles meanwhile do not start another one
+     */
+    private final AtomicBoolean refreshingVolumes = new AtomicBoolean();
+
     @Override
     protected Mono<TickerEntity> getTickers(ExchangeScheduleTaskEntity taskEntity) {
 
-        String url = String.format(URL, StringUtils.lowerCase(taskEntity.getBaseSymbol()),
-            StringUtils.lowerCase(taskEntity.getMainSymbol()));
-        return get(buildProxyUrl(url, null)).map(m -> JacksonUtils.deserialize(m, GeminiTickerData.class))
+        if (bulk && isFullQuery(taskEntity)) {
+            return getBulkTickers();
+        }
+        return get(template("pubticker", buildProxyUrl(URL, null)), StringUtils.lowerCase(taskEntity.getBaseSymbol()),
+            StringUtils.lowerCase(taskEntity.getMainSymbol())).map(
+                m -> JacksonUtils.deserialize(m, GeminiTickerData.class))
             .map(m -> this.toEntity(m, taskEntity));
     }
 
-    //todo maybe can not work
+    /**
+     * the prices of the price feed and the cached volumes, the volume of a pair not fetched yet is null.
+     * the stale volumes are refreshed in the background, the prices are published without waiting for them.
+     *
+     * @return
+     */
+    private Mono<TickerEntity> getBulkTickers() {
+
+        return get(buildProxyUrl(PRICE_FEED_URL, null)).map(
+            m -> JacksonUtils.deserialize(m, new TypeReference<List<GeminiPriceData>>() {
+            })).map(prices -> {
+            List<TickerEntity.CMCTicker> tickers = Lists.newArrayListWithCapacity(prices.size());
+            for (GeminiPriceData price : prices) {
+                Pair<String, String> pair = symbolUtils.splitWithFullString(getExchangeId(), price.getPair());
+                if (pair != null && price.getPrice() != null) {
+                    tickers.add(TickerEntity.CMCTicker.builder().baseSymbol(pair.getLeft().toUpperCase())
+                        .mainSymbol(pair.getRight().toUpperCase()).quote(price.getPrice()).build());
+                }
+            }
+            refreshVolumesInBackground(tickers);
+            tickers.forEach(t -> {
+                // null until the pubticker of the pair is fetched, a zero would publish a false volume
+                Volume volume = volumes.get(t.getBaseSymbol() + t.getMainSymbol());
+                t.setMainVolume(volume == null ? null : volume.value);
+            });
+            return TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName())
+                .cmcTickers(tickers).updatedTime(DateTimeUtils.nowUTC()).build();
+        });
+    }
+
+    private void refreshVolumesInBackground(List<TickerEntity.CMCTicker> tickers) {
+
+        if (!refreshingVolumes.compareAndSet(false, true)) {
+            return;
+        }
+        refreshVolumes(tickers).doFinally(s -> refreshingVolumes.set(false)).subscribe(n -> {
+        }, e -> log.warn("Refresh the Gemini volumes failed: {}", e.getMessage()));
+    }
+
+    /**
+     * fetch the pubticker of the pairs without volume or with the oldest expired one, at most VOLUME_REFRESH.
+     *
+     * @param tickers
+     * @return the refreshed count
+     */
+    private Mono<Integer> refreshVolumes(List<TickerEntity.CMCTicker> tickers) {
+
+        final long now = System.currentTimeMillis();
+        List<TickerEntity.CMCTicker> stale = tickers.stream().filter(t -> {
+            Volume volume = volumes.get(t.getBaseSymbol() + t.getMainSymbol());
+            return volume == null || now - volume.time > volumeTtl;
+        }).sorted(Comparator.comparingLong(t -> {
+            Volume volume = volumes.get(t.getBaseSymbol() + t.getMainSymbol());
+            return volume == null ? 0L : volume.time;
+        })).limit(VOLUME_REFRESH).collect(Collectors.toList());
+        if (stale.isEmpty()) {
+            return Mono.just(0);
+        }
+        return VOLUME_FAN_OUT.execute(stale,
+            t -> get(template("pubticker", buildProxyUrl(URL, null)), StringUtils.lowerCase(t.getBaseSymbol()),
+                StringUtils.lowerCase(t.getMainSymbol())).map(m -> {
+                GeminiTickerData data = JacksonUtils.deserialize(m, GeminiTickerData.class);
+                volumes.put(t.getBaseSymbol() + t.getMainSymbol(),
+                    new Volume(mainVolume(data, t.getMainSymbol()), System.currentTimeMillis()));
+                return t;
+            })).map(result -> {
+            log.info("Gemini volumes: {}", result);
+            return result.getValues().size();
+        });
+    }
+
+    /**
+     * the bulk mode reads all the pairs with one full query task, else one task per pair
+     *
+     * @param taskEntity
+     * @return
+     */
     @Override
     protected Mono<List<ExchangeScheduleTaskEntity>> getTradingPairs(ExchangeScheduleTaskEntity taskEntity) {
 
+        if (bulk) {
+            return Mono.just(Lists.newArrayList(
+                ExchangeScheduleTaskEntity.builder().mainId(taskEntity.getMainId()).baseId(taskEntity.getBaseId())
+                    .exchangeName(taskEntity.getExchangeName()).exchangeId(taskEntity.getExchangeId())
+                    .type(taskEntity.getType()).takeTradingPair(taskEntity.isTakeTradingPair()).build()));
+        }
         return get(buildProxyUrl(SYMBOL_URL, null)).map(
             r -> JacksonUtils.deserialize(r, new TypeReference<List<String>>() {
             })).flatMapMany(e -> Flux.fromIterable(e)).map(r -> {
@@ -75,25 +204,63 @@ public class GeminiService extends AExchange {
         TickerEntity tickerEntity = TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName())
             .cmcTickers(Lists.newArrayListWithCapacity(1)).updatedTime(DateTimeUtils.nowUTC()).build();
 
-        BigDecimal mainVol;
-        if (response.getVolume() == null || (mainVol = response.getVolume().get(taskEntity.getMainSymbol())) == null) {
-            mainVol = BigDecimal.ZERO;
-        }
-
         tickerEntity.getCmcTickers().add(
             TickerEntity.CMCTicker.builder().baseSymbol(taskEntity.getBaseSymbol().toUpperCase())
-                .mainSymbol(taskEntity.getMainSymbol().toUpperCase()).quote(response.getLast()).mainVolume(mainVol)
-                .build());
+                .mainSymbol(taskEntity.getMainSymbol().toUpperCase()).quote(response.getLast())
+                .mainVolume(mainVolume(response, taskEntity.getMainSymbol())).build());
 
         return tickerEntity;
     }
 
+    private static BigDecimal mainVolume(GeminiTickerData response, String mainSymbol) {
+
+        if (response == null || response.getVolume() == null) {
+            return BigDecimal.ZERO;
+        }
+        BigDecimal mainVol = response.getVolume().get(mainSymbol);
+        return mainVol == null ? BigDecimal.ZERO : mainVol;
+    }
+
+    /**
+     * the full book: {"bids":[{"price":"3607.85","amount":"6.64","timestamp":"1547147541"}],"asks":[...]}
+     *
+     * @param task
+     * @return
+     */
+    @Override
+    protected Mono<OrderBookLevels> getOrderBooks(ExchangeScheduleTaskEntity task) {
+
+        return get(template("book", OD_URL + "%s%s?limit_bids=0&limit_asks=0"),
+            StringUtils.lowerCase(task.getBaseSymbol()), StringUtils.lowerCase(task.getMainSymbol())).map(
+            OrderBookLevels::of);
+    }
+
+    private static class Volume {
+
+        private final BigDecimal value;
+        private final long time;
+
+        Volume(BigDecimal value, long time) {
+
+            this.value = value;
+            this.time = time;
+        }
+    }
+
+    @Data
+    public static class GeminiPriceData {
+
+        private String pair;
+        private BigDecimal price;
+        private LazyDecimal percentChange24h;
+    }
+
     @Data
     public static class GeminiTickerData {
 
         private BigDecimal last;
-        private BigDecimal bid;
-        private BigDecimal ask;
+        private LazyDecimal bid;
+        private LazyDecimal ask;
         private Map<String, BigDecimal> volume;
     }
 }
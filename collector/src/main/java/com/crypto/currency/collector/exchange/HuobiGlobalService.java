@@ -1,19 +1,31 @@
 package com.crypto.currency.collector.exchange;
 
 import com.crypto.currency.collector.support.annotation.Exchange;
+import com.crypto.currency.common.http.FanOut;
 import com.crypto.currency.common.utils.DateTimeUtils;
+import com.crypto.currency.common.utils.ExtUtils;
 import com.crypto.currency.common.utils.JacksonUtils;
 import com.crypto.currency.data.entity.ExchangeScheduleTaskEntity;
 import com.crypto.currency.data.entity.TickerEntity;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.Lists;
-import lombok.Data;
+import com.google.common.collect.Maps;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.lang3.tuple.Pair;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Collectors;
 
 /**
  * @author Panzi
@@ -28,7 +40,6 @@ public class HuobiGlobalService extends AExchange {
 
     private static final String OD_URL = "https://api.huobi.pro/market/depth?symbol=";
 
-    private static final String SWAP_URL = "http://api.hbdm.com/swap-ex/market/detail/merged?contract_code=%s";
     private static final String SWAP_INFO_URL = "http://api.hbdm.com/swap-api/v1/swap_contract_info";
     private static final String SWAP_INDEX_URL = "https://api.hbdm.com/swap-api/v1/swap_index";
     private static final String SWAP_BATCH_URL = "https://api.hbdm.com/swap-ex/market/detail/batch_merged";
@@ -48,61 +59,296 @@ public class HuobiGlobalService extends AExchange {
     private static final String TRADE_URL = "https://api.hbdm.com/market/trade?symbol=%s";
     private static final String CONTRACT_INDEX = "https://api.hbdm.com/api/v1/contract_index";
 
+    private static final FanOut FUNDING_FAN_OUT = new FanOut(4, Duration.ofSeconds(5L), Duration.ofSeconds(30L));
+
+    /**
+     * millis, the funding rate is kept that long when the next funding time is unknown
+     */
+    private static final long FUNDING_RETRY = 600000L;
+
+    /**
+     * the expiry of the perpetual contracts: 2100 year
+     */
+    private static final long PERPETUAL_EXPIRY = 4133376000000L;
+
+    private static final DateTimeFormatter CREATE_DATE = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    /**
+     * the funding rate by contract code, it changes at the funding time only
+     */
+    private final ConcurrentMap<String, FundingRate> fundingRates = Maps.newConcurrentMap();
+
     /**
-     * result:{"status":"ok","ts":1590720672526,"data":[{"symbol":"tnbbtc","open":1.992E-7,"high":1.997E-7,"low":1.801E-7,"close":1.885E-7,"amount":1.614288379231258E8,"vol":32.498451376,"count":7554,"bid":1.883E-7,"bidSize":8896.0,"ask":1.899E-7,"askSize":1679.0},{"symbol":"paybtc","open":5.07E-6,"high":5.09E-6,"low":4.91E-6,"close":5.02E-6,"amount":234080.76,"vol":1.1878023029,"count":1573,"bid":5.0E-6,"bidSize":3187.79,"ask":5.04E-6,"askSize":1695.77}]}
+     * {"status":"ok","ts":1590720672526,"data":[{"symbol":"tnbbtc","close":1.885E-7,"amount":1.61E8,"vol":32.49,...}]},
+     * amount: the volume of the base symbol, vol: the volume of the main symbol
+     */
+    private static final TickerAdapter TICKERS = TickerAdapter.builder(URL).rows("data")
+        .symbol("symbol", TickerAdapter.Split.FULL_STRING).quote("close").mainVolume("vol").build();
+
+    @Override
+    protected Mono<TickerEntity> getTickers(ExchangeScheduleTaskEntity taskEntity) {
+        return getTickers(TICKERS);
+    }
+
+    /**
+     * the coin-margined and usdt-margined perpetual swaps, published once per cycle by the perpetual task,
+     * the swap tickers are left empty
      *
+     * @param task
      * @return
      */
     @Override
-    protected Mono<TickerEntity> getTickers(ExchangeScheduleTaskEntity taskEntity) {
+    protected Mono<TickerEntity> getPerpetualTickers(ExchangeScheduleTaskEntity task) {
+        return getSwaps();
+    }
+
+    private Mono<TickerEntity> getSwaps() {
 
-        return get(URL).map(result -> JacksonUtils.deserialize(result, HuobiGlobalResponse.class))
-            .map(r -> toEntity(r));
+        return Flux.fromArray(SwapMarket.values()).flatMap(this::getSwaps).collectList().map(lists -> {
+            List<TickerEntity.DerivativesTicker> tickers = Lists.newArrayList();
+            lists.forEach(tickers::addAll);
+            return TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName())
+                .derivativesTicker(tickers).updatedTime(DateTimeUtils.nowUTC()).build();
+        });
+    }
+
+    /**
+     * batch_merged, swap_index and swap_open_interest return every contract of the market in one call,
+     * they are joined by contract code. the funding rate is the only call per contract and it is cached
+     * until the next funding time.
+     *
+     * @param market
+     * @return
+     */
+    private Mono<List<TickerEntity.DerivativesTicker>> getSwaps(SwapMarket market) {
+
+        return Mono.zip(getContracts(market), get(market.batchUrl).map(m -> indexByContract(m, "ticks")),
+            get(market.indexUrl).map(m -> indexByContract(m, "data")),
+            get(market.interestUrl).map(m -> indexByContract(m, "data"))).flatMap(t -> {
+            Map<String, JsonNode> ticks = t.getT2();
+            List<HuobiContract> contracts = t.getT1().values().stream()
+                .filter(c -> ticks.containsKey(c.contractCode)).collect(Collectors.toList());
+            return refreshFundingRates(market, contracts).map(
+                n -> toDerivatives(market, contracts, ticks, t.getT3(), t.getT4()));
+        });
+    }
+
+    /**
+     * the listed contracts by contract code, kept by the metadata cache
+     * {"status":"ok","data":[{"symbol":"BTC","contract_code":"BTC-USD","contract_size":100,
+     * "create_date":"20200325","contract_status":1}]}
+     *
+     * @param market
+     * @return
+     */
+    private Mono<Map<String, HuobiContract>> getContracts(SwapMarket market) {
+
+        return metadata(market.metadataName, () -> getConditional(market.infoUrl, m -> {
+            Map<String, HuobiContract> contracts = Maps.newHashMap();
+            JsonNode node = JacksonUtils.readTree(m);
+            if (node == null || !node.path("data").isArray()) {
+                return contracts;
+            }
+            for (JsonNode row : node.path("data")) {
+                if (row.path("contract_status").asInt() != 1) {
+                    // 1 : listing, the others are suspended, settling or delisted
+                    continue;
+                }
+                HuobiContract contract = new HuobiContract(row.path("symbol").asText(),
+                    row.path("contract_code").asText(), ExtUtils.parseBigDecimal(row.path("contract_size").asText()),
+                    row.path("create_date").asText());
+                contracts.put(contract.contractCode, contract);
+            }
+            return contracts;
+        }));
+    }
+
+    /**
+     * fetch the funding rate of the contracts without one or past its funding time
+     *
+     * @param market
+     * @param contracts
+     * @return the refreshed count
+     */
+    private Mono<Integer> refreshFundingRates(SwapMarket market, List<HuobiContract> contracts) {
 
+        final long now = System.currentTimeMillis();
+        List<String> stale = contracts.stream().map(c -> c.contractCode).filter(code -> {
+            FundingRate fundingRate = fundingRates.get(code);
+            return fundingRate == null || now >= fundingRate.until;
+        }).collect(Collectors.toList());
+        if (stale.isEmpty()) {
+            return Mono.just(0);
+        }
+        return FUNDING_FAN_OUT.execute(stale,
+            code -> get(template(market.metadataName + ".fundingRate", market.fundingUrl), code).map(m -> {
+                // {"status":"ok","data":{"funding_rate":"0.0001","funding_time":"1603699200000",...}}
+                JsonNode data = JacksonUtils.readTree(m).path("data");
+                long fundingTime = data.path("funding_time").asLong();
+                long current = System.currentTimeMillis();
+                fundingRates.put(code,
+                    new FundingRate(ExtUtils.parseBigDecimal(data.path("funding_rate").asText()),
+                        fundingTime > current ? fundingTime : current + FUNDING_RETRY));
+                return code;
+            })).map(result -> {
+            log.info("Huobi {} funding rates: {}", market, result);
+            return result.getValues().size();
+        });
     }
 
-    private TickerEntity toEntity(HuobiGlobalResponse response) {
-        TickerEntity tickerEntity = TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName())
-            .cmcTickers(Lists.newArrayListWithCapacity(1)).updatedTime(DateTimeUtils.nowUTC()).build();
-        for (HuobiGlobalData data : response.getData()) {
-            String symbolPair = StringUtils.upperCase(data.getSymbol());
-            Pair<String, String> p = symbolUtils.splitWithFullString(getExchangeId(), symbolPair);
-            if (p != null) {
-                tickerEntity.getCmcTickers().add(
-                    TickerEntity.CMCTicker.builder().baseSymbol(p.getKey()).mainSymbol(p.getValue())
-                        .quote(data.getClose()).mainVolume(data.getVol()).build());
+    private List<TickerEntity.DerivativesTicker> toDerivatives(SwapMarket market, List<HuobiContract> contracts,
+        Map<String, JsonNode> ticks, Map<String, JsonNode> indexes, Map<String, JsonNode> interests) {
+
+        List<TickerEntity.DerivativesTicker> result = Lists.newArrayListWithCapacity(contracts.size());
+        for (HuobiContract contract : contracts) {
+            JsonNode tick = ticks.get(contract.contractCode);
+            JsonNode index = indexes.get(contract.contractCode);
+            JsonNode interest = interests.get(contract.contractCode);
+
+            BigDecimal close = ExtUtils.parseBigDecimal(tick.path("close").asText());
+            TickerEntity.DerivativesTicker derivatives =
+                TickerEntity.DerivativesTicker.builder().productType("PERPETUAL").tickerId(contract.contractCode)
+                    .deliveryTime("PERPETUAL").baseSymbol(contract.symbol)
+                    .mainSymbol(StringUtils.substringAfter(contract.contractCode, "-")).quote(close)
+                    .high(ExtUtils.parseBigDecimal(tick.path("high").asText()))
+                    .low(ExtUtils.parseBigDecimal(tick.path("low").asText()))
+                    .bid(ExtUtils.parseBigDecimal(tick.path("bid").path(0).asText()))
+                    .ask(ExtUtils.parseBigDecimal(tick.path("ask").path(0).asText()))
+                    .baseVolume(ExtUtils.parseBigDecimal(tick.path("amount").asText()))
+                    .creationTimestamp(toDateTime(contract.createDate))
+                    .expiryTimestamp(LocalDateTime.ofInstant(Instant.ofEpochMilli(PERPETUAL_EXPIRY), DateTimeUtils.UTC))
+                    .build();
+            if (market.linear) {
+                // amount in the base asset, vol in contracts, trade_turnover in usdt
+                derivatives.setMainVolume(ExtUtils.parseBigDecimal(tick.path("trade_turnover").asText()));
             } else {
-                tickerEntity.getCmcTickers().add(
-                    TickerEntity.CMCTicker.builder().baseSymbol(symbolPair).quote(data.getClose())
-                        .mainVolume(data.getVol()).build());
+                // vol in contracts of contract_size usd
+                derivatives.setMainVolume(
+                    ExtUtils.parseBigDecimal(tick.path("vol").asText()).multiply(contract.contractSize));
+            }
+            if (index != null) {
+                derivatives.setIndexPrice(ExtUtils.parseBigDecimal(index.path("index_price").asText()));
+            }
+            if (interest != null) {
+                if (market.linear) {
+                    // amount in the base asset, value in usdt
+                    derivatives.setOpenInterest(ExtUtils.parseBigDecimal(interest.path("amount").asText()));
+                    derivatives.setOpen_InterestUsd(ExtUtils.parseBigDecimal(interest.path("value").asText()));
+                    derivatives.setOpenInterestSymbol(derivatives.getMainSymbol());
+                } else {
+                    BigDecimal volume = ExtUtils.parseBigDecimal(interest.path("volume").asText());
+                    derivatives.setOpenInterest(volume);
+                    derivatives.setOpen_InterestUsd(volume.multiply(contract.contractSize));
+                }
+            }
+            FundingRate fundingRate = fundingRates.get(contract.contractCode);
+            if (fundingRate != null) {
+                derivatives.setFundingRate(fundingRate.value);
             }
+            result.add(derivatives);
+        }
+        return result;
+    }
+
+    /**
+     * the rows of a bulk endpoint by contract code
+     *
+     * @param message
+     * @param field   the array of the rows
+     * @return
+     */
+    private Map<String, JsonNode> indexByContract(String message, String field) {
+
+        JsonNode node = JacksonUtils.readTree(message);
+        if (node == null || !node.path(field).isArray()) {
+            return Collections.emptyMap();
+        }
+        Map<String, JsonNode> index = Maps.newHashMapWithExpectedSize(node.path(field).size());
+        node.path(field).forEach(row -> index.put(row.path("contract_code").asText(), row));
+        return index;
+    }
+
+    private static LocalDateTime toDateTime(String createDate) {
+
+        if (StringUtils.length(createDate) != 8) {
+            return null;
+        }
+        return LocalDate.parse(createDate, CREATE_DATE).atStartOfDay();
+    }
+
+    /**
+     * step0: the best 150 levels not merged, {"status":"ok","tick":{"bids":[[9999.3,0.06]],"asks":[...]}}
+     *
+     * @param task
+     * @return
+     */
+    @Override
+    protected Mono<OrderBookLevels> getOrderBooks(ExchangeScheduleTaskEntity task) {
+
+        return get(template("depth", OD_URL + "%s&type=step0"),
+            StringUtils.lowerCase(task.getBaseSymbol() + task.getMainSymbol())).map(
+            m -> OrderBookLevels.of(m, "tick"));
+    }
+
+    /**
+     * the coin-margined swaps settle in the base asset, the usdt-margined ones in usdt
+     */
+    private enum SwapMarket {
+
+        COIN("swapContracts", SWAP_INFO_URL, SWAP_BATCH_URL, SWAP_INDEX_URL, SWAP_INTEREST_URL, SWAP_FUND_URL, false),
+        USDT("usdtSwapContracts", USDT_SWAP_INFO_URL, USDT_SWAP_BATCH_URL, USDT_SWAP_INDEX_URL, USDT_SWAP_INTEREST_URL,
+            USDT_SWAP_FUND_URL, true);
+
+        private final String metadataName;
+        private final String infoUrl;
+        private final String batchUrl;
+        private final String indexUrl;
+        private final String interestUrl;
+        private final String fundingUrl;
+        private final boolean linear;
+
+        SwapMarket(String metadataName, String infoUrl, String batchUrl, String indexUrl, String interestUrl,
+            String fundingUrl, boolean linear) {
+
+            this.metadataName = metadataName;
+            this.infoUrl = infoUrl;
+            this.batchUrl = batchUrl;
+            this.indexUrl = indexUrl;
+            this.interestUrl = interestUrl;
+            this.fundingUrl = fundingUrl;
+            this.linear = linear;
         }
-        return tickerEntity;
     }
 
-    @Data
-    public static class HuobiGlobalResponse {
+    private static class HuobiContract {
 
-        private String status;
-        private Long ts;
-        private List<HuobiGlobalData> data;
+        private final String symbol;
+        private final String contractCode;
+        private final BigDecimal contractSize;
+        private final String createDate;
 
+        HuobiContract(String symbol, String contractCode, BigDecimal contractSize, String createDate) {
+
+            this.symbol = symbol;
+            this.contractCode = contractCode;
+            this.contractSize = contractSize;
+            this.createDate = createDate;
+        }
     }
 
-    @Data
-    public static class HuobiGlobalData {
-
-        private String symbol;
-        private BigDecimal open;
-        private BigDecimal high;
-        private BigDecimal low;
-        private BigDecimal close;
-        private BigDecimal amount;
-        private BigDecimal vol;
-        private Integer count;
-        private BigDecimal bid;
-        private Integer bidSize;
-        private BigDecimal ask;
-        private Integer askSize;
+    private static class FundingRate {
+
+        private final BigDecimal value;
+
+        /**
+         * epoch millis, the funding time the rate is settled at
+         */
+        private final long until;
+
+        FundingRate(BigDecimal value, long until) {
+
+            this.value = value;
+            this.until = until;
+        }
     }
 }
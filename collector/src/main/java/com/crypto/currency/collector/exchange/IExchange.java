@@ -1,6 +1,8 @@
 package com.crypto.currency.collector.exchange;
 
+import com.crypto.currency.common.utils.StringUtils;
 import com.crypto.currency.data.entity.ExchangeScheduleTaskEntity;
+import com.crypto.currency.data.entity.OrderBookEntity;
 import com.crypto.currency.data.entity.TickerEntity;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -26,7 +28,7 @@ public interface IExchange {
      * @param taskEntity
      * @return
      */
-    //    Mono<OrderBookEntity> getOrderBooksData(ExchangeScheduleTaskEntity taskEntity);
+    Mono<OrderBookEntity> getOrderBooksData(ExchangeScheduleTaskEntity taskEntity);
 
     /**
      * get spot data
@@ -70,4 +72,27 @@ public interface IExchange {
         return null;
     }
 
+    /**
+     * full query: the task asks for all the symbols of the exchange, not for one pair
+     *
+     * @param task
+     * @return
+     */
+    default boolean isFullQuery(ExchangeScheduleTaskEntity task) {
+
+        if (task == null) {
+            return true;
+        }
+        return StringUtils.isAllBlank(task.getMainSymbol(), task.getBaseSymbol());
+    }
+
+    /**
+     * push the spot tickers over websocket as the exchange updates them, empty if the exchange has no stream.
+     *
+     * @return
+     */
+    default Flux<TickerEntity.CMCTicker> streamTickers() {
+        return Flux.empty();
+    }
+
 }
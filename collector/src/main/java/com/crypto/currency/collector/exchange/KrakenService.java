@@ -2,13 +2,20 @@ package com.crypto.currency.collector.exchange;
 
 import com.crypto.currency.collector.support.annotation.Exchange;
 import com.crypto.currency.collector.util.SymbolUtils;
+import com.crypto.currency.common.exception.BusinessException;
+import com.crypto.currency.common.http.BoundedSink;
+import com.crypto.currency.common.http.WebSocketSessionManager;
 import com.crypto.currency.common.utils.DateTimeUtils;
 import com.crypto.currency.common.utils.ExtUtils;
 import com.crypto.currency.common.utils.JacksonUtils;
 import com.crypto.currency.data.entity.ExchangeScheduleTaskEntity;
 import com.crypto.currency.data.entity.TickerEntity;
 import com.crypto.currency.data.enums.DataType;
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
 import lombok.Data;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.tuple.Pair;
@@ -16,7 +23,11 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 /**
  * @author Panzi
@@ -32,7 +43,7 @@ import java.util.Map;
  * RR = Reference Rate
  */
 @Slf4j
-@Exchange(id = "24", name = "Kraken")
+@Exchange(id = "24", name = "Kraken", permits = 15, interval = 1000L, hedge = true)
 public class KrakenService extends AExchange {
 
     private final static String URL = "https://api.kraken.com/0/public/AssetPairs";
@@ -43,66 +54,339 @@ public class KrakenService extends AExchange {
     private final static String ORDER_BOOK_URL = "https://api.kraken.com/0/public/Depth";
 
     private final static String MARKET_DATA_URL = "https://api.kraken.com/0/public/Ticker?pair=";
+    /**
+     * the Ticker endpoint takes comma separated pairs, batched under the url length
+     */
+    private final static int MAX_URL_LENGTH = 2000;
+    private final static int BATCH_CONCURRENCY = 4;
+
     private final static String SWAP_URL = "https://futures.kraken.com/derivatives/api/v3/tickers";
     private final static String INSTRUMENTS_URL = "https://futures.kraken.com/derivatives/api/v3/instruments";
 
+    /**
+     * ticker messages: [channelID, {"c":["price","lot volume"],"v":["today","24h"],...}, "ticker", "XBT/USD"]
+     */
+    private final static String WS_URL = "wss://ws.kraken.com";
+    private final static String WS_TICKER = "ticker";
+
+    /**
+     * book messages: [channelID, {"as":[["5541.3","2.5","1534614248.1"]],"bs":[...]}, "book-100", "XBT/USD"],
+     * then the updates [channelID, {"a":[...]}, {"b":[...],"c":"974942666"}, "book-100", "XBT/USD"],
+     * c is the crc32 of the top 10 levels.
+     */
+    private final static String WS_BOOK = "book";
+
+    /**
+     * the kraken symbols of the wsnames -> the common symbols of the tasks
+     */
+    private final static Map<String, String> SYMBOL_ALIASES = ImmutableMap.of("XBT", "BTC", "XDG", "DOGE");
+    private final static int WS_BOOK_DEPTH = 100;
+    private final static int WS_BOOK_CHECKSUM_LEVELS = 10;
+
+    /**
+     * the channel messages are arrays routed by the channel name, the book by the name and the pair.
+     * the events are objects ({"event":"heartbeat"}) and are not routed.
+     * a slow ticker consumer only gets the latest ticker of every pair: the last element of the message.
+     */
+    private final static WebSocketSessionManager.SessionOptions WS_OPTIONS = WebSocketSessionManager.SessionOptions
+        .builder().router(KrakenService::channelOf).heartbeatMessage("{\"event\":\"ping\"}")
+        .overflow(BoundedSink.Overflow.LATEST).conflationKey(m -> m.substring(m.lastIndexOf(',') + 1)).build();
+
     @Override
     protected Mono<TickerEntity> getTickers(ExchangeScheduleTaskEntity taskEntity) {
 
-        return get(URL).map(m -> JacksonUtils.deserialize(JacksonUtils.readTree(m).get("result").asText(),
-            (new TypeReference<Map<String, KrakenTickerData>>() {
-            }))).flatMap(resp -> Flux.fromIterable(resp.entrySet()).filter(rg -> {
-            Pair<String, String> namePair = SymbolUtils.splitWithSymbol(rg.getValue().getWsname(), "/");
-            return namePair != null;
-        }).flatMap(t -> getMarketOne(t.getValue().getAltname()).map(market -> {
-            Pair<BigDecimal, BigDecimal> dataPair = transSymbolData(market);
-            Pair<String, String> symbolPair = SymbolUtils.splitWithSymbol(t.getValue().getWsname(), "/");
-            return TickerEntity.CMCTicker.builder().baseSymbol(symbolPair.getLeft()).mainSymbol(symbolPair.getRight())
-                .quote(dataPair.getLeft()).mainVolume(dataPair.getRight()).build();
-        })).collectList().map(m -> TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName())
-            .dataType(DataType.SPOT).cmcTickers(m).updatedTime(DateTimeUtils.nowUTC()).build()));
+        return getAssetPairs().flatMap(pairs -> Flux.fromIterable(pairs.batches())
+            .flatMap(batch -> getBatch(pairs, batch), BATCH_CONCURRENCY).flatMapIterable(m -> m).collectList()).map(
+            m -> TickerEntity.builder().exchangeId(getExchangeId()).exchangeName(getExchangeName())
+                .dataType(DataType.SPOT).cmcTickers(m).updatedTime(DateTimeUtils.nowUTC()).build());
+    }
 
+    /**
+     * the asset pairs indexed for the ticker requests, kept by the metadata cache
+     *
+     * @return
+     */
+    private Mono<AssetPairs> getAssetPairs() {
+
+        return metadata("assetPairs",
+            () -> getConditional(URL, m -> JacksonUtils.deserialize(m, KrakenData.class)).map(AssetPairs::new));
     }
 
     /**
-     * get one market detail
+     * group the pairs into batches, the url of a batch joined with commas stays under the max length
      *
-     * @param marketName
+     * @param pairs
+     * @param maxLength
      * @return
      */
-    private Mono<OneMarket> getMarketOne(String marketName) {
-        return get(MARKET_DATA_URL + marketName).map(m -> JacksonUtils.deserialize(m, OneMarket.class))
-            .defaultIfEmpty(new OneMarket());
+    private static List<List<String>> toBatches(List<String> pairs, int maxLength) {
+
+        List<List<String>> batches = Lists.newArrayList();
+        List<String> batch = Lists.newArrayList();
+        int length = 0;
+        for (String pair : pairs) {
+            if (!batch.isEmpty() && length + 1 + pair.length() > maxLength) {
+                batches.add(batch);
+                batch = Lists.newArrayList();
+                length = 0;
+            }
+            length += batch.isEmpty() ? pair.length() : pair.length() + 1;
+            batch.add(pair);
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+        return batches;
     }
 
-    private Pair<BigDecimal, BigDecimal> transData(Map<String, String[]> data) {
-        BigDecimal mainVolume = BigDecimal.ZERO;
-        BigDecimal quote = BigDecimal.ZERO;
-        for (Map.Entry<String, String[]> entry : data.entrySet()) {
-            if ("c".equals(entry.getKey())) {
-                quote = ExtUtils.parseBigDecimal(entry.getValue()[0]);
+    /**
+     * the tickers of a batch. one unknown pair fails the whole batch without naming the pair
+     * ({"error":["EQuery:Unknown asset pair"],"result":{}}), so the failed batch is split in halves and each half
+     * is sent again, the pair failing on its own is left out of the next batches.
+     *
+     * @param pairs
+     * @param batch
+     * @return
+     */
+    private Mono<List<TickerEntity.CMCTicker>> getBatch(AssetPairs pairs, List<String> batch) {
+
+        return get(template("tickers", MARKET_DATA_URL + "%s"), String.join(",", batch)).flatMap(m -> {
+            JsonNode node = JacksonUtils.readTree(m);
+            if (node.path("error").size() == 0 || node.path("result").size() > 0) {
+                return Mono.just(toTickers(node, pairs.symbols));
             }
-            if ("v".equals(entry.getKey())) {
-                mainVolume = ExtUtils.parseBigDecimal(entry.getValue()[1]);
+            if (batch.size() == 1) {
+                log.warn("Kraken ticker of {} failed, left out: {}", batch.get(0), node.get("error"));
+                pairs.rejected.add(batch.get(0));
+                return Mono.just(Collections.<TickerEntity.CMCTicker>emptyList());
             }
+            int half = batch.size() / 2;
+            return Flux.merge(getBatch(pairs, batch.subList(0, half)),
+                getBatch(pairs, batch.subList(half, batch.size()))).flatMapIterable(t -> t).collectList();
+        });
+    }
+
+    /**
+     * the tickers of a batch: {"error":[],"result":{"XXBTZUSD":{"c":["price","lot volume"],"v":["today","24h"]}}}
+     *
+     * @param node
+     * @param symbols
+     * @return
+     */
+    private List<TickerEntity.CMCTicker> toTickers(JsonNode node, Map<String, Pair<String, String>> symbols) {
+
+        if (node.path("error").size() > 0) {
+            log.warn("Kraken ticker batch warned: {}", node.get("error"));
         }
-        return Pair.of(quote, mainVolume.multiply(quote));
+        JsonNode result = node.path("result");
+        List<TickerEntity.CMCTicker> tickers = Lists.newArrayListWithCapacity(result.size());
+        result.fields().forEachRemaining(entry -> {
+            Pair<String, String> symbolPair = symbols.get(entry.getKey());
+            if (symbolPair == null) {
+                return;
+            }
+            BigDecimal quote = ExtUtils.parseBigDecimal(entry.getValue().path("c").path(0).asText());
+            BigDecimal volume = ExtUtils.parseBigDecimal(entry.getValue().path("v").path(1).asText());
+            tickers.add(TickerEntity.CMCTicker.builder().baseSymbol(symbolPair.getLeft())
+                .mainSymbol(symbolPair.getRight()).quote(quote).mainVolume(volume.multiply(quote)).build());
+        });
+        return tickers;
     }
 
-    private Pair<BigDecimal, BigDecimal> transSymbolData(OneMarket data) {
-        Pair pair = null;
-        if (data == null) {
-            return pair;
+    @Override
+    protected Flux<TickerEntity.CMCTicker> subscribeTickers() {
+
+        return getAssetPairs().flatMapMany(
+            pairs -> getSession(WS_URL, WS_OPTIONS).subscribe(WS_TICKER, subscription("subscribe", pairs.wsnames),
+                subscription("unsubscribe", pairs.wsnames)).mapNotNull(this::toStreamTicker));
+    }
+
+    private static String subscription(String event, List<String> pairs) {
+
+        Map<String, Object> message = Maps.newLinkedHashMap();
+        message.put("event", event);
+        message.put("pair", pairs);
+        message.put("subscription", Collections.singletonMap("name", WS_TICKER));
+        return JacksonUtils.serialize(message);
+    }
+
+    /**
+     * [channelID, ..., "channelName", "pair"] -> channelName, book-100:pair for the books
+     *
+     * @param message
+     * @return null if not a channel message
+     */
+    private static String channelOf(String message) {
+
+        if (!message.startsWith("[") || !message.endsWith("\"]")) {
+            return null;
+        }
+        int pairStart = message.lastIndexOf(",\"");
+        int nameStart = pairStart > 0 ? message.lastIndexOf(",\"", pairStart - 1) : -1;
+        if (nameStart < 0) {
+            return null;
         }
-        for (Map.Entry<String, Map<String, String[]>> entry : data.getResult().entrySet()) {
-            pair = transData(entry.getValue());
+        String name = message.substring(nameStart + 2, pairStart - 1);
+        if (name.startsWith(WS_BOOK)) {
+            return name + ":" + message.substring(pairStart + 2, message.length() - 2);
         }
-        return pair;
+        return name;
     }
 
-    @Data
-    public static class OneMarket {
-        private Map<String, Map<String, String[]>> result;
+    /**
+     * the ticker of a channel message
+     *
+     * @param message
+     * @return null if not a ticker
+     */
+    private TickerEntity.CMCTicker toStreamTicker(String message) {
+
+        JsonNode node = JacksonUtils.readTree(message);
+        if (node == null || node.size() < 4 || !WS_TICKER.equals(node.get(node.size() - 2).asText())) {
+            return null;
+        }
+        Pair<String, String> symbolPair = SymbolUtils.splitWithSymbol(node.get(node.size() - 1).asText(), "/");
+        JsonNode data = node.get(1);
+        if (symbolPair == null || !data.isObject()) {
+            return null;
+        }
+        BigDecimal quote = ExtUtils.parseBigDecimal(data.path("c").path(0).asText());
+        BigDecimal volume = ExtUtils.parseBigDecimal(data.path("v").path(1).asText());
+        return TickerEntity.CMCTicker.builder().baseSymbol(symbolPair.getLeft()).mainSymbol(symbolPair.getRight())
+            .quote(quote).mainVolume(volume.multiply(quote)).build();
+    }
+
+    /**
+     * {"error":[],"result":{"XXBTZUSD":{"asks":[["9300.0","1.0",1591695012]],"bids":[...]}}}
+     *
+     * @param task
+     * @return
+     */
+    @Override
+    protected Mono<OrderBookLevels> getOrderBooks(ExchangeScheduleTaskEntity task) {
+
+        return getAssetPair(task).flatMap(
+            pair -> get(template("depth", ORDER_BOOK_URL + "?pair=%s&count=500"), pair.getAltname())).map(
+            m -> OrderBookLevels.of(m, "result", OrderBookLevels.ANY));
+    }
+
+    /**
+     * the asset pair of the task symbols, BTC/USD is found as XBT/USD
+     *
+     * @param task
+     * @return
+     */
+    private Mono<KrakenTickerData> getAssetPair(ExchangeScheduleTaskEntity task) {
+
+        final String name = task.getBaseSymbol().toUpperCase() + "/" + task.getMainSymbol().toUpperCase();
+        return getAssetPairs().flatMap(pairs -> Mono.justOrEmpty(pairs.byName.get(name)))
+            .switchIfEmpty(Mono.error(() -> new BusinessException("Kraken has no asset pair " + name + ".")));
+    }
+
+    /**
+     * the book comes with the subscription and after every resubscription, the updates carry no sequence:
+     * the checksum of every update is verified, a wrong one restarts the subscription for a new book.
+     * the book is subscribed by the wsname of the pair: XBT/USD, not BTC/USD.
+     *
+     * @param task
+     * @param book
+     * @return
+     */
+    @Override
+    protected Mono<Void> syncOrderBook(ExchangeScheduleTaskEntity task, LiveOrderBook book) {
+
+        book.setMaxDepth(WS_BOOK_DEPTH);
+        return getAssetPair(task).map(KrakenTickerData::getWsname).flatMapMany(
+            pair -> getSession(WS_URL, WS_OPTIONS).subscribe(WS_BOOK + "-" + WS_BOOK_DEPTH + ":" + pair,
+                    bookSubscription("subscribe", pair), bookSubscription("unsubscribe", pair),
+                    BoundedSink.Overflow.ERROR)
+                .concatMap(m -> applyBook(pair, book, JacksonUtils.readTree(m)))).then();
+    }
+
+    private static String bookSubscription(String event, String pair) {
+
+        Map<String, Object> subscription = Maps.newLinkedHashMap();
+        subscription.put("name", WS_BOOK);
+        subscription.put("depth", WS_BOOK_DEPTH);
+        Map<String, Object> message = Maps.newLinkedHashMap();
+        message.put("event", event);
+        message.put("pair", Collections.singletonList(pair));
+        message.put("subscription", subscription);
+        return JacksonUtils.serialize(message);
+    }
+
+    private Mono<Void> applyBook(String pair, LiveOrderBook book, JsonNode message) {
+
+        String checksum = null;
+        // the data objects are between the channel id and the channel name
+        for (int i = 1; i < message.size() - 2; i++) {
+            JsonNode data = message.get(i);
+            if (data.has("as") || data.has("bs")) {
+                book.snapshot(-1, data.path("bs"), data.path("as"));
+                continue;
+            }
+            if (book.update(-1, -1, data.path("b"), data.path("a")) == LiveOrderBook.Update.GAP) {
+                return Mono.error(new BusinessException("The book of " + pair + " is not synced."));
+            }
+            if (data.has("c")) {
+                checksum = data.get("c").asText();
+            }
+        }
+        if (checksum != null && book.checksum(WS_BOOK_CHECKSUM_LEVELS) != Long.parseLong(checksum)) {
+            return Mono.error(new BusinessException("The book checksum of " + pair + " does not match."));
+        }
+        return Mono.empty();
+    }
+
+    /**
+     * the index of the asset pairs
+     */
+    private static class AssetPairs {
+
+        /**
+         * the ticker result is keyed by the pair name, some pairs answer with the altname: both -> base, main
+         */
+        private final Map<String, Pair<String, String>> symbols;
+        /**
+         * the altnames of the Ticker requests
+         */
+        private final List<String> altnames;
+        /**
+         * the altnames failing the Ticker requests, until the asset pairs are reloaded
+         */
+        private final Set<String> rejected = Sets.newConcurrentHashSet();
+        private final List<String> wsnames;
+        /**
+         * the pairs by wsname and by the wsname with the common symbols: XBT/USD and BTC/USD
+         */
+        private final Map<String, KrakenTickerData> byName;
+
+        AssetPairs(KrakenData data) {
+
+            symbols = Maps.newHashMapWithExpectedSize(data.getResult().size() * 2);
+            wsnames = Lists.newArrayListWithCapacity(data.getResult().size());
+            byName = Maps.newHashMapWithExpectedSize(data.getResult().size() * 2);
+            altnames = Lists.newArrayListWithCapacity(data.getResult().size());
+            data.getResult().forEach((name, pair) -> {
+                Pair<String, String> symbolPair = SymbolUtils.splitWithSymbol(pair.getWsname(), "/");
+                if (symbolPair != null && pair.getAltname() != null) {
+                    symbols.put(name, symbolPair);
+                    symbols.put(pair.getAltname(), symbolPair);
+                    altnames.add(pair.getAltname());
+                    wsnames.add(pair.getWsname());
+                    byName.put(pair.getWsname(), pair);
+                    byName.putIfAbsent(SYMBOL_ALIASES.getOrDefault(symbolPair.getLeft(), symbolPair.getLeft()) + "/"
+                        + SYMBOL_ALIASES.getOrDefault(symbolPair.getRight(), symbolPair.getRight()), pair);
+                }
+            });
+        }
+
+        List<List<String>> batches() {
+
+            List<String> accepted = rejected.isEmpty() ? altnames :
+                altnames.stream().filter(pair -> !rejected.contains(pair)).collect(Collectors.toList());
+            return toBatches(accepted, MAX_URL_LENGTH - MARKET_DATA_URL.length());
+        }
     }
 
     @Data
@@ -0,0 +1,95 @@
+package com.crypto.currency.collector.exchange;
+
+import com.crypto.currency.data.entity.TickerEntity;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Panzi
+ * @Description The latest streamed ticker of every symbol of an exchange, replaced on every update.
+ * the spot task reads it instead of calling the rest api while the stream is fresh.
+ * @date 2022/6/26 21:10
+ */
+public class LatestTickerBook {
+
+    private final ConcurrentMap<String, Entry> tickers = Maps.newConcurrentMap();
+
+    private final LongAdder updates = new LongAdder();
+
+    private volatile long lastUpdate;
+
+    /**
+     * keep the latest ticker of the symbol: baseSymbol/mainSymbol
+     *
+     * @param ticker
+     */
+    public void put(TickerEntity.CMCTicker ticker) {
+
+        if (ticker == null || ticker.getBaseSymbol() == null || ticker.getMainSymbol() == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        tickers.put(ticker.getBaseSymbol() + "/" + ticker.getMainSymbol(), new Entry(ticker, now));
+        updates.increment();
+        lastUpdate = now;
+    }
+
+    /**
+     * @param maxAge millis
+     * @return the stream updated the book within maxAge
+     */
+    public boolean isFresh(long maxAge) {
+        return !tickers.isEmpty() && System.currentTimeMillis() - lastUpdate <= maxAge;
+    }
+
+    /**
+     * the latest tickers, the symbols not updated within expire are removed: delisted or halted.
+     *
+     * @param expire millis
+     * @return
+     */
+    public List<TickerEntity.CMCTicker> snapshot(long expire) {
+
+        long deadline = System.currentTimeMillis() - expire;
+        tickers.values().removeIf(entry -> entry.time < deadline);
+        List<TickerEntity.CMCTicker> result = Lists.newArrayListWithCapacity(tickers.size());
+        tickers.values().forEach(entry -> result.add(entry.ticker));
+        return result;
+    }
+
+    public Stats stats() {
+        return new Stats(tickers.size(), updates.sum(), lastUpdate);
+    }
+
+    private static class Entry {
+
+        private final TickerEntity.CMCTicker ticker;
+        private final long time;
+
+        Entry(TickerEntity.CMCTicker ticker, long time) {
+
+            this.ticker = ticker;
+            this.time = time;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private int symbols;
+
+        private long updates;
+
+        /**
+         * epoch millis of the last update
+         */
+        private long lastUpdate;
+    }
+}
@@ -0,0 +1,238 @@
+package com.crypto.currency.collector.exchange;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * @author Panzi
+ * @Description The order book of a symbol kept up to date from the diff-depth stream of the exchange:
+ * a snapshot, then the updates in sequence. a gap in the update ids unsyncs the book until the next snapshot,
+ * so the stream only costs one rest snapshot at the start and after a gap.
+ * the sides are sorted arrays of fixed-point longs, as the levels of OrderBookLevels. the scales are the decimals
+ * of the values as sent, trailing zeros included, they grow when an update brings more decimals.
+ * @date 2022/7/4 21:20
+ */
+public class LiveOrderBook {
+
+    public enum Update {
+
+        APPLIED,
+
+        /**
+         * the update is older than the book, eg: the buffered diffs before the snapshot
+         */
+        STALE,
+
+        /**
+         * the book is not synced or an update is missing, a new snapshot is needed
+         */
+        GAP
+    }
+
+    /**
+     * the levels kept per side, the depth served by default
+     */
+    private volatile int maxDepth = 500;
+
+    private final OrderBookLevels.Side bids = new OrderBookLevels.Side(64);
+    private final OrderBookLevels.Side asks = new OrderBookLevels.Side(64);
+
+    private OrderBookLevels.Scale prices = new OrderBookLevels.Scale();
+    private OrderBookLevels.Scale amounts = new OrderBookLevels.Scale();
+    private int priceScale;
+    private int amountScale;
+
+    private final OrderBookLevels.Fixed price = new OrderBookLevels.Fixed();
+    private final OrderBookLevels.Fixed amount = new OrderBookLevels.Fixed();
+
+    private boolean synced;
+
+    /**
+     * the last update id applied, -1 : the exchange has no update ids
+     */
+    private long sequence = -1;
+
+    private volatile long updatedAt;
+
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder updates = new LongAdder();
+    private final LongAdder gaps = new LongAdder();
+
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * replace the book
+     *
+     * @param sequence the update id of the snapshot, -1 : none
+     * @param bids     [["price","amount",...]]
+     * @param asks
+     */
+    public synchronized void snapshot(long sequence, JsonNode bids, JsonNode asks) {
+
+        clear();
+        apply(this.bids, true, bids);
+        apply(this.asks, false, asks);
+        this.sequence = sequence;
+        this.synced = true;
+        this.updatedAt = System.currentTimeMillis();
+        snapshots.increment();
+    }
+
+    /**
+     * apply the update if it follows the book: first <= sequence + 1 <= last, an amount of 0 removes the level.
+     *
+     * @param first the first update id of the update, -1 : not checked
+     * @param last  the last update id of the update, -1 : not checked
+     * @param bids  [["price","amount",...]]
+     * @param asks
+     * @return
+     */
+    public synchronized Update update(long first, long last, JsonNode bids, JsonNode asks) {
+
+        if (!synced) {
+            return Update.GAP;
+        }
+        if (last >= 0 && sequence >= 0) {
+            if (last <= sequence) {
+                return Update.STALE;
+            }
+            if (first > sequence + 1) {
+                gaps.increment();
+                reset();
+                return Update.GAP;
+            }
+            sequence = last;
+        }
+        apply(this.bids, true, bids);
+        apply(this.asks, false, asks);
+        updatedAt = System.currentTimeMillis();
+        updates.increment();
+        return Update.APPLIED;
+    }
+
+    /**
+     * unsync and clear the book, eg: the stream is lost
+     */
+    public synchronized void reset() {
+
+        clear();
+        synced = false;
+        sequence = -1;
+    }
+
+    /**
+     * @param maxAge millis
+     * @return synced and updated within maxAge
+     */
+    public boolean isFresh(long maxAge) {
+        return synced && System.currentTimeMillis() - updatedAt <= maxAge;
+    }
+
+    /**
+     * the crc32 of the top levels, the asks then the bids, of the price and the amount without the dot and
+     * the leading zeros: the checksum of the kraken book.
+     *
+     * @param levels per side
+     * @return
+     */
+    public synchronized long checksum(int levels) {
+
+        StringBuilder text = new StringBuilder(levels * 40);
+        append(text, asks, levels);
+        append(text, bids, levels);
+        CRC32 crc32 = new CRC32();
+        crc32.update(text.toString().getBytes(StandardCharsets.US_ASCII));
+        return crc32.getValue();
+    }
+
+    /**
+     * a copy of the book
+     *
+     * @return
+     */
+    public synchronized OrderBookLevels toLevels() {
+
+        return new OrderBookLevels(bids.copy(), asks.copy(), priceScale, amountScale);
+    }
+
+    public synchronized Stats stats() {
+
+        return new Stats(synced, sequence, bids.size(), asks.size(), updatedAt, snapshots.sum(), updates.sum(),
+            gaps.sum());
+    }
+
+    private void clear() {
+
+        bids.clear();
+        asks.clear();
+        prices = new OrderBookLevels.Scale();
+        amounts = new OrderBookLevels.Scale();
+        priceScale = 0;
+        amountScale = 0;
+    }
+
+    private void apply(OrderBookLevels.Side side, boolean descending, JsonNode levels) {
+
+        if (levels == null || !levels.isArray()) {
+            return;
+        }
+        final int depth = maxDepth;
+        for (JsonNode level : levels) {
+            price.read(level.path(0).asText());
+            amount.read(level.path(1).asText());
+            prices.accept(price, true);
+            amounts.accept(amount, true);
+            if (prices.scale() != priceScale || amounts.scale() != amountScale) {
+                bids.rescale(priceScale, prices.scale(), amountScale, amounts.scale());
+                asks.rescale(priceScale, prices.scale(), amountScale, amounts.scale());
+                priceScale = prices.scale();
+                amountScale = amounts.scale();
+            }
+            side.put(price.at(priceScale), amount.at(amountScale), descending, depth);
+        }
+    }
+
+    /**
+     * the digits of the fixed-point values are the ones of the exchange without the dot and the leading zeros
+     */
+    private static void append(StringBuilder text, OrderBookLevels.Side side, int levels) {
+
+        for (int i = 0; i < side.size() && i < levels; i++) {
+            text.append(side.priceAt(i)).append(side.amountAt(i));
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private boolean synced;
+
+        private long sequence;
+
+        private int bids;
+
+        private int asks;
+
+        /**
+         * epoch millis of the last snapshot or update
+         */
+        private long updatedAt;
+
+        private long snapshots;
+
+        private long updates;
+
+        /**
+         * the missing updates found, each one cost a snapshot
+         */
+        private long gaps;
+    }
+}
@@ -0,0 +1,726 @@
+package com.crypto.currency.collector.exchange;
+
+import com.crypto.currency.common.utils.StringUtils;
+import com.crypto.currency.data.entity.OrderBookEntity;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Throwables;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * @author Panzi
+ * @Description The levels of an order book read into growable arrays of fixed-point longs, a 5000 level book costs
+ * 160kb instead of the boxed BigDecimal lists and keeps the exact prices of the exchange. the scales of the prices
+ * and the amounts are the decimals of the book, as long as the largest value still fits a long.
+ * build() sorts the sides, derives the spread and the 2% depth from the full book and truncates it to the depth.
+ * a response body is streamed into the arrays, the values are read at their own decimals and rescaled once the
+ * scales of the book are known, no json tree is built.
+ * @date 2022/7/2 21:05
+ */
+public class OrderBookLevels {
+
+    /**
+     * the range of the depth around the mid price
+     */
+    private static final double DEPTH_RANGE = 0.02;
+
+    /**
+     * the digits of a long without overflow
+     */
+    private static final int MAX_DIGITS = 18;
+
+    private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS + 1];
+
+    /**
+     * the path element of the first value of an object, whatever its field name
+     */
+    public static final String ANY = "*";
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i <= MAX_DIGITS; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private final int priceScale;
+    private final int amountScale;
+
+    private final Side bids;
+    private final Side asks;
+
+    /**
+     * @param expectedLevels per side
+     * @param priceScale     the decimals of the prices kept, the others are truncated
+     * @param amountScale    the decimals of the amounts kept
+     */
+    public OrderBookLevels(int expectedLevels, int priceScale, int amountScale) {
+
+        this.priceScale = priceScale;
+        this.amountScale = amountScale;
+        this.bids = new Side(expectedLevels);
+        this.asks = new Side(expectedLevels);
+    }
+
+    /**
+     * the levels of the sides, kept as they are
+     */
+    OrderBookLevels(Side bids, Side asks, int priceScale, int amountScale) {
+
+        this.priceScale = priceScale;
+        this.amountScale = amountScale;
+        this.bids = bids;
+        this.asks = asks;
+    }
+
+    /**
+     * the bids and asks of a book: {"bids":[...],"asks":[...]}
+     *
+     * @param book
+     * @return
+     */
+    public static OrderBookLevels of(JsonNode book) {
+
+        if (book == null) {
+            return new OrderBookLevels(1, 0, 0);
+        }
+        JsonNode bids = book.path("bids");
+        JsonNode asks = book.path("asks");
+        Scale prices = new Scale();
+        Scale amounts = new Scale();
+        scan(bids, prices, amounts);
+        scan(asks, prices, amounts);
+        OrderBookLevels levels =
+            new OrderBookLevels(Math.max(bids.size(), asks.size()), prices.scale(), amounts.scale());
+        levels.bids.addAll(bids, levels.priceScale, levels.amountScale);
+        levels.asks.addAll(asks, levels.priceScale, levels.amountScale);
+        return levels;
+    }
+
+    /**
+     * stream the bids and asks of a response body into the levels
+     *
+     * @param body the response
+     * @param path to the book {"bids":[...],"asks":[...]}: the field names, the indexes in the arrays or ANY
+     * @return empty levels if the body or the book is absent
+     */
+    public static OrderBookLevels of(String body, String... path) {
+
+        if (StringUtils.isBlank(body)) {
+            return new OrderBookLevels(1, 0, 0);
+        }
+        try (JsonParser parser = FACTORY.createParser(body)) {
+            if (!moveTo(parser, path) || parser.currentToken() != JsonToken.START_OBJECT) {
+                return new OrderBookLevels(1, 0, 0);
+            }
+            Reader reader = new Reader();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.getCurrentName();
+                if (parser.nextToken() == JsonToken.START_ARRAY && ("bids".equals(name) || "asks".equals(name))) {
+                    reader.read(parser, "bids".equals(name) ? reader.bids : reader.asks);
+                } else {
+                    parser.skipChildren();
+                }
+            }
+            return reader.build();
+        } catch (IOException e) {
+            throw Throwables.propagate(e);
+        }
+    }
+
+    /**
+     * move the parser to the value at the path
+     *
+     * @param parser
+     * @param path
+     * @return the value is found
+     * @throws IOException
+     */
+    private static boolean moveTo(JsonParser parser, String[] path) throws IOException {
+
+        JsonToken token = parser.nextToken();
+        for (String element : path) {
+            if (token == JsonToken.START_OBJECT) {
+                while ((token = parser.nextToken()) == JsonToken.FIELD_NAME && !ANY.equals(element)
+                    && !element.equals(parser.getCurrentName())) {
+                    parser.nextToken();
+                    parser.skipChildren();
+                }
+                if (token != JsonToken.FIELD_NAME) {
+                    return false;
+                }
+            } else if (token == JsonToken.START_ARRAY && StringUtils.isNumeric(element)) {
+                for (int i = Integer.parseInt(element); i > 0; i--) {
+                    if (parser.nextToken() == JsonToken.END_ARRAY) {
+                        return false;
+                    }
+                    parser.skipChildren();
+                }
+            } else {
+                return false;
+            }
+            token = parser.nextToken();
+            if (token == null || token == JsonToken.END_ARRAY) {
+                return false;
+            }
+        }
+        return token != null;
+    }
+
+    /**
+     * the scales of the levels of an array: [["price","amount",...]] or [{"price":"1","amount":"2"}]
+     *
+     * @param levels
+     * @param prices
+     * @param amounts
+     */
+    private static void scan(JsonNode levels, Scale prices, Scale amounts) {
+
+        if (levels == null || !levels.isArray()) {
+            return;
+        }
+        for (JsonNode level : levels) {
+            prices.accept(price(level).asText());
+            amounts.accept(amount(level).asText());
+        }
+    }
+
+    private static JsonNode price(JsonNode level) {
+        return level.isArray() ? level.path(0) : level.path("price");
+    }
+
+    private static JsonNode amount(JsonNode level) {
+        return level.isArray() ? level.path(1) : level.path("amount");
+    }
+
+    /**
+     * @param depth the levels kept per side, 0 : all
+     * @return the levels and the derived figures, the exchange and the symbols are not set
+     */
+    public OrderBookEntity build(int depth) {
+
+        bids.sort(true);
+        asks.sort(false);
+
+        OrderBookEntity entity = new OrderBookEntity();
+        entity.setPriceScale(priceScale);
+        entity.setAmountScale(amountScale);
+        entity.setBidLevels(bids.size);
+        entity.setAskLevels(asks.size);
+        if (bids.size > 0 && asks.size > 0) {
+            double priceUnit = Math.pow(10, priceScale);
+            double amountUnit = Math.pow(10, amountScale);
+            double mid = ((double)bids.prices[0] + asks.prices[0]) / 2;
+            entity.setMidPrice(mid / priceUnit);
+            entity.setSpreadPercentage((asks.prices[0] - bids.prices[0]) / mid * 100);
+            entity.setNegativeTwoPercentDepth(
+                bids.volumeTo(mid * (1 - DEPTH_RANGE), true) / priceUnit / amountUnit);
+            entity.setPositiveTwoPercentDepth(
+                asks.volumeTo(mid * (1 + DEPTH_RANGE), false) / priceUnit / amountUnit);
+        }
+        int bidDepth = depth > 0 ? Math.min(depth, bids.size) : bids.size;
+        int askDepth = depth > 0 ? Math.min(depth, asks.size) : asks.size;
+        entity.setBidPrices(Arrays.copyOf(bids.prices, bidDepth));
+        entity.setBidAmounts(Arrays.copyOf(bids.amounts, bidDepth));
+        entity.setAskPrices(Arrays.copyOf(asks.prices, askDepth));
+        entity.setAskAmounts(Arrays.copyOf(asks.amounts, askDepth));
+        return entity;
+    }
+
+    /**
+     * the decimals of the values kept: all of them, unless the largest value would not fit a long
+     */
+    static class Scale {
+
+        private int decimals;
+        private int integers;
+
+        void accept(String text) {
+
+            if (text.isEmpty() || "null".equals(text)) {
+                return;
+            }
+            if (text.indexOf('e') >= 0 || text.indexOf('E') >= 0) {
+                accept(new BigDecimal(text));
+                return;
+            }
+            int start = text.charAt(0) == '-' || text.charAt(0) == '+' ? 1 : 0;
+            int dot = text.indexOf('.');
+            int end = text.length();
+            if (dot >= 0) {
+                while (end > dot + 1 && text.charAt(end - 1) == '0') {
+                    end--;
+                }
+                decimals = Math.max(decimals, end - dot - 1);
+            } else {
+                dot = end;
+            }
+            while (start < dot && text.charAt(start) == '0') {
+                start++;
+            }
+            integers = Math.max(integers, dot - start);
+        }
+
+        /**
+         * @param value
+         * @param trailingZeros the decimals of the value as sent, else its significant decimals
+         */
+        void accept(Fixed value, boolean trailingZeros) {
+            accept(value.integers, trailingZeros ? value.decimals : value.significantDecimals);
+        }
+
+        private void accept(int integers, int decimals) {
+
+            this.integers = Math.max(this.integers, integers);
+            this.decimals = Math.max(this.decimals, decimals);
+        }
+
+        void accept(BigDecimal value) {
+
+            BigDecimal stripped = value.stripTrailingZeros();
+            decimals = Math.max(decimals, Math.max(stripped.scale(), 0));
+            integers = Math.max(integers, stripped.precision() - stripped.scale());
+        }
+
+        int scale() {
+            return Math.max(Math.min(decimals, MAX_DIGITS - integers), 0);
+        }
+    }
+
+    /**
+     * a fixed-point value read from the characters of a token, at its own decimals
+     */
+    static class Fixed {
+
+        private long unscaled;
+
+        /**
+         * the decimals of the unscaled value, the ones beyond the digits of a long or beyond the largest scale
+         * are truncated
+         */
+        private int decimals;
+
+        /**
+         * the decimals without the trailing zeros and the integer digits without the leading zeros
+         */
+        private int significantDecimals;
+        private int integers;
+
+        void read(char[] text, int offset, int length) {
+
+            unscaled = 0;
+            decimals = 0;
+            significantDecimals = 0;
+            integers = 0;
+            int digits = 0;
+            boolean fraction = false;
+            boolean negative = false;
+            for (int i = offset; i < offset + length; i++) {
+                char c = text[i];
+                if (c >= '0' && c <= '9') {
+                    if (fraction) {
+                        if (digits == MAX_DIGITS || decimals == MAX_DIGITS) {
+                            if (c != '0') {
+                                significantDecimals = Math.max(significantDecimals, decimals + 1);
+                            }
+                            continue;
+                        }
+                        decimals++;
+                        if (c != '0') {
+                            significantDecimals = decimals;
+                        }
+                    } else if (unscaled > 0 || c != '0') {
+                        integers++;
+                    }
+                    if (unscaled > 0 || c != '0') {
+                        digits++;
+                    }
+                    if (digits > MAX_DIGITS) {
+                        readExact(text, offset, length);
+                        return;
+                    }
+                    unscaled = unscaled * 10 + (c - '0');
+                } else if (c == '.' && !fraction) {
+                    fraction = true;
+                } else if ((c == '-' || c == '+') && i == offset) {
+                    negative = c == '-';
+                } else {
+                    // exponent or not a number
+                    readExact(text, offset, length);
+                    return;
+                }
+            }
+            if (negative) {
+                unscaled = -unscaled;
+            }
+        }
+
+        void read(String text) {
+            read(text.toCharArray(), 0, text.length());
+        }
+
+        private void readExact(char[] text, int offset, int length) {
+
+            BigDecimal value = new BigDecimal(text, offset, length).stripTrailingZeros();
+            significantDecimals = Math.max(value.scale(), 0);
+            integers = value.precision() - value.scale();
+            decimals = Math.min(significantDecimals, Math.max(MAX_DIGITS - integers, 0));
+            unscaled = value.setScale(decimals, RoundingMode.DOWN).unscaledValue().longValueExact();
+        }
+
+        /**
+         * @param scale
+         * @return the value at the scale, the decimals beyond it are truncated
+         */
+        long at(int scale) {
+            return rescale(unscaled, decimals, scale);
+        }
+
+        /**
+         * @param scale
+         * @param decimals of the value
+         * @param value
+         * @return the value at the scale, the decimals beyond it are truncated
+         */
+        static long rescale(long value, int decimals, int scale) {
+            return decimals > scale ? value / POWERS_OF_TEN[decimals - scale] : value * POWERS_OF_TEN[scale - decimals];
+        }
+    }
+
+    /**
+     * reads the levels of the sides at the decimals of every value, then rescales them to the scales of the book
+     */
+    private static class Reader {
+
+        private final Side bids = new Side(64);
+        private final Side asks = new Side(64);
+        private final Scale prices = new Scale();
+        private final Scale amounts = new Scale();
+        private final Fixed price = new Fixed();
+        private final Fixed amount = new Fixed();
+
+        /**
+         * the decimals of the values of a side, by level
+         */
+        private byte[] bidDecimals = new byte[128];
+        private byte[] askDecimals = new byte[128];
+
+        /**
+         * the levels of a side: [["price","amount",...]] or [{"price":"1","amount":"2"}],
+         * the parser is on the start of the side
+         *
+         * @param parser
+         * @param side
+         * @throws IOException
+         */
+        void read(JsonParser parser, Side side) throws IOException {
+
+            JsonToken token;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+                if (token != JsonToken.START_ARRAY && token != JsonToken.START_OBJECT) {
+                    continue;
+                }
+                boolean hasPrice = false;
+                boolean hasAmount = false;
+                int position = 0;
+                while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != JsonToken.END_OBJECT) {
+                    String field = null;
+                    if (token == JsonToken.FIELD_NAME) {
+                        field = parser.getCurrentName();
+                        token = parser.nextToken();
+                    }
+                    boolean isPrice = field == null ? position == 0 : "price".equals(field);
+                    boolean isAmount = field == null ? position == 1 : "amount".equals(field);
+                    position++;
+                    if (token == JsonToken.START_ARRAY || token == JsonToken.START_OBJECT) {
+                        parser.skipChildren();
+                    } else if ((isPrice || isAmount) && token != JsonToken.VALUE_NULL && parser.getTextLength() > 0) {
+                        Fixed value = isPrice ? price : amount;
+                        value.read(parser.getTextCharacters(), parser.getTextOffset(), parser.getTextLength());
+                        hasPrice |= isPrice;
+                        hasAmount |= isAmount;
+                    }
+                }
+                if (hasPrice && hasAmount) {
+                    add(side);
+                }
+            }
+        }
+
+        private void add(Side side) {
+
+            prices.accept(price, false);
+            amounts.accept(amount, false);
+            byte[] decimals = side == bids ? bidDecimals : askDecimals;
+            if (side.size * 2 == decimals.length) {
+                decimals = Arrays.copyOf(decimals, decimals.length * 2);
+                if (side == bids) {
+                    bidDecimals = decimals;
+                } else {
+                    askDecimals = decimals;
+                }
+            }
+            decimals[side.size * 2] = (byte)price.decimals;
+            decimals[side.size * 2 + 1] = (byte)amount.decimals;
+            side.append(price.unscaled, amount.unscaled);
+        }
+
+        OrderBookLevels build() {
+
+            final int priceScale = prices.scale();
+            final int amountScale = amounts.scale();
+            rescale(bids, bidDecimals, priceScale, amountScale);
+            rescale(asks, askDecimals, priceScale, amountScale);
+            return new OrderBookLevels(bids, asks, priceScale, amountScale);
+        }
+
+        /**
+         * rescale the values of the side in place, the levels without a price or an amount at the scales are dropped
+         */
+        private static void rescale(Side side, byte[] decimals, int priceScale, int amountScale) {
+
+            int size = 0;
+            for (int i = 0; i < side.size; i++) {
+                long price = Fixed.rescale(side.prices[i], decimals[i * 2], priceScale);
+                long amount = Fixed.rescale(side.amounts[i], decimals[i * 2 + 1], amountScale);
+                if (price > 0 && amount > 0) {
+                    side.prices[size] = price;
+                    side.amounts[size] = amount;
+                    size++;
+                }
+            }
+            side.size = size;
+        }
+    }
+
+    /**
+     * the levels of a side in parallel arrays, sorted by build() or kept sorted by put()
+     */
+    static class Side {
+
+        private long[] prices;
+        private long[] amounts;
+        private int size;
+
+        Side(int capacity) {
+
+            this.prices = new long[Math.max(capacity, 1)];
+            this.amounts = new long[Math.max(capacity, 1)];
+        }
+
+        void add(long price, long amount) {
+
+            if (price <= 0 || amount <= 0) {
+                return;
+            }
+            append(price, amount);
+        }
+
+        private void append(long price, long amount) {
+
+            if (size == prices.length) {
+                prices = Arrays.copyOf(prices, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+            }
+            prices[size] = price;
+            amounts[size] = amount;
+            size++;
+        }
+
+        /**
+         * set the amount of the price in the sorted side, an amount of 0 removes the level.
+         * a new level beyond the depth is dropped, so is the last one pushed beyond the depth.
+         *
+         * @param price
+         * @param amount
+         * @param descending the order of the side
+         * @param depth      the levels kept
+         */
+        void put(long price, long amount, boolean descending, int depth) {
+
+            int index = indexOf(price, descending);
+            if (index >= 0) {
+                if (amount > 0) {
+                    amounts[index] = amount;
+                } else {
+                    size--;
+                    System.arraycopy(prices, index + 1, prices, index, size - index);
+                    System.arraycopy(amounts, index + 1, amounts, index, size - index);
+                }
+                return;
+            }
+            index = -index - 1;
+            if (price <= 0 || amount <= 0 || index >= depth) {
+                return;
+            }
+            if (size == prices.length) {
+                prices = Arrays.copyOf(prices, size * 2);
+                amounts = Arrays.copyOf(amounts, size * 2);
+            }
+            System.arraycopy(prices, index, prices, index + 1, size - index);
+            System.arraycopy(amounts, index, amounts, index + 1, size - index);
+            prices[index] = price;
+            amounts[index] = amount;
+            size = Math.min(size + 1, depth);
+        }
+
+        /**
+         * the binary search of the price in the sorted side
+         *
+         * @param price
+         * @param descending
+         * @return the index of the price, else -(the insertion point) - 1
+         */
+        private int indexOf(long price, boolean descending) {
+
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                long value = prices[middle];
+                if (value == price) {
+                    return middle;
+                }
+                if (descending ? value > price : value < price) {
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return -(low + 1);
+        }
+
+        /**
+         * move the values of the side to other scales, the decimals beyond a smaller scale are truncated
+         */
+        void rescale(int fromPriceScale, int priceScale, int fromAmountScale, int amountScale) {
+
+            for (int i = 0; i < size; i++) {
+                prices[i] = Fixed.rescale(prices[i], fromPriceScale, priceScale);
+                amounts[i] = Fixed.rescale(amounts[i], fromAmountScale, amountScale);
+            }
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int size() {
+            return size;
+        }
+
+        long priceAt(int index) {
+            return prices[index];
+        }
+
+        long amountAt(int index) {
+            return amounts[index];
+        }
+
+        Side copy() {
+
+            Side copy = new Side(0);
+            copy.prices = Arrays.copyOf(prices, Math.max(size, 1));
+            copy.amounts = Arrays.copyOf(amounts, Math.max(size, 1));
+            copy.size = size;
+            return copy;
+        }
+
+        void addAll(JsonNode levels, int priceScale, int amountScale) {
+
+            if (levels == null || !levels.isArray()) {
+                return;
+            }
+            final Fixed price = new Fixed();
+            final Fixed amount = new Fixed();
+            for (JsonNode level : levels) {
+                if (isNumber(price(level)) && isNumber(amount(level))) {
+                    price.read(price(level).asText());
+                    amount.read(amount(level).asText());
+                    add(price.at(priceScale), amount.at(amountScale));
+                }
+            }
+        }
+
+        private static boolean isNumber(JsonNode value) {
+
+            String text = value.asText();
+            return !text.isEmpty() && !"null".equals(text);
+        }
+
+        /**
+         * the exchanges send a sorted side, some of them in the other order
+         *
+         * @param descending
+         */
+        void sort(boolean descending) {
+
+            if (isSorted(descending)) {
+                return;
+            }
+            if (isSorted(!descending)) {
+                reverse();
+                return;
+            }
+            Comparator<Integer> byPrice = Comparator.comparingLong(i -> prices[i]);
+            int[] order = IntStream.range(0, size).boxed().sorted(descending ? byPrice.reversed() : byPrice)
+                .mapToInt(Integer::intValue).toArray();
+            long[] sortedPrices = new long[prices.length];
+            long[] sortedAmounts = new long[amounts.length];
+            for (int i = 0; i < size; i++) {
+                sortedPrices[i] = prices[order[i]];
+                sortedAmounts[i] = amounts[order[i]];
+            }
+            prices = sortedPrices;
+            amounts = sortedAmounts;
+        }
+
+        private boolean isSorted(boolean descending) {
+
+            for (int i = 1; i < size; i++) {
+                if (descending ? prices[i] > prices[i - 1] : prices[i] < prices[i - 1]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void reverse() {
+
+            for (int i = 0, j = size - 1; i < j; i++, j--) {
+                long price = prices[i];
+                prices[i] = prices[j];
+                prices[j] = price;
+                long amount = amounts[i];
+                amounts[i] = amounts[j];
+                amounts[j] = amount;
+            }
+        }
+
+        /**
+         * the main volume of the levels from the best price up to the limit price, in the units of the scales
+         *
+         * @param limit
+         * @param descending
+         * @return
+         */
+        double volumeTo(double limit, boolean descending) {
+
+            double volume = 0;
+            for (int i = 0; i < size && (descending ? prices[i] >= limit : prices[i] <= limit); i++) {
+                volume += (double)prices[i] * amounts[i];
+            }
+            return volume;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.crypto.currency.collector.exchange;
+
+import com.crypto.currency.data.entity.TickerEntity;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * @author Panzi
+ * @Description Token parser of the responses shaped as an array of rows, at the top level or under a path of fields,
+ * eg: [{"symbol":"BTCUSDT","lastPrice":"1"}], [["tBTCUSD",1,2]] or {"data":{"ticker":[{...}]}}.
+ * the rows can be the values of an object too, the field name is the key of the row: {"btc_usdt":{"last":"1"}}.
+ * Only the text of the selected fields(object rows) or positions(array rows) is kept,
+ * the other values and the nested structures are skipped.
+ * @date 2022/6/16 22:52
+ */
+public abstract class RowTokenParser implements TickerTokenParser {
+
+    private static final int ROW_DEPTH = 2;
+
+    private static final String[] ROOT = new String[0];
+
+    /**
+     * the field names from the root to the container of the rows
+     */
+    private final String[] path;
+    private final int rowDepth;
+
+    private final String[] fields;
+    private final int[] positions;
+    private final String[] values;
+
+    private int depth;
+
+    /**
+     * the depth of the deepest container on the path
+     */
+    private int matched;
+    private int fieldIndex = -1;
+    private int position;
+    private String rowKey;
+
+    /**
+     * rows are objects, select the values by field name
+     *
+     * @param fields
+     */
+    protected RowTokenParser(String... fields) {
+        this(ROOT, fields);
+    }
+
+    /**
+     * rows are arrays, select the values by position
+     *
+     * @param positions
+     */
+    protected RowTokenParser(int... positions) {
+        this(ROOT, positions);
+    }
+
+    /**
+     * @param path   the field names of the rows container, empty : the root
+     * @param fields
+     */
+    protected RowTokenParser(String[] path, String... fields) {
+
+        this.path = path;
+        this.rowDepth = path.length + ROW_DEPTH;
+        this.fields = fields;
+        this.positions = null;
+        this.values = new String[fields.length];
+    }
+
+    /**
+     * @param path      the field names of the rows container, empty : the root
+     * @param positions
+     */
+    protected RowTokenParser(String[] path, int... positions) {
+
+        this.path = path;
+        this.rowDepth = path.length + ROW_DEPTH;
+        this.fields = null;
+        this.positions = positions;
+        this.values = new String[positions.length];
+    }
+
+    /**
+     * @return the field name of the current row if the rows are the values of an object, else null
+     */
+    protected String getRowKey() {
+        return rowKey;
+    }
+
+    /**
+     * a row is finished
+     *
+     * @param values the selected values in the declared order, null if absent
+     * @param sink
+     */
+    protected abstract void onRow(String[] values, Consumer<TickerEntity.CMCTicker> sink);
+
+    @Override
+    public void onToken(JsonParser parser, JsonToken token, Consumer<TickerEntity.CMCTicker> sink)
+        throws IOException {
+
+        switch (token) {
+            case START_OBJECT:
+            case START_ARRAY:
+                depth++;
+                if (depth == 1 || matched == depth - 1 && depth < rowDepth && path[depth - ROW_DEPTH].equals(
+                    parser.getCurrentName())) {
+                    matched = depth;
+                }
+                if (inRow()) {
+                    Arrays.fill(values, null);
+                    position = 0;
+                    rowKey = parser.getCurrentName();
+                }
+                fieldIndex = -1;
+                break;
+            case END_OBJECT:
+            case END_ARRAY:
+                if (inRow()) {
+                    onRow(values, sink);
+                } else if (depth == rowDepth + 1 && matched == rowDepth - 1) {
+                    position++;
+                }
+                if (matched == depth) {
+                    matched--;
+                }
+                depth--;
+                break;
+            case FIELD_NAME:
+                if (fields != null && inRow()) {
+                    fieldIndex = indexOf(fields, parser.getCurrentName());
+                }
+                break;
+            default:
+                if (inRow()) {
+                    int index = fields != null ? fieldIndex : indexOf(positions, position++);
+                    if (index >= 0 && token != JsonToken.VALUE_NULL) {
+                        values[index] = parser.getText();
+                    }
+                    fieldIndex = -1;
+                }
+        }
+    }
+
+    /**
+     * @return the parser is in a row of the rows container
+     */
+    private boolean inRow() {
+        return depth == rowDepth && matched == rowDepth - 1;
+    }
+
+    private static int indexOf(String[] fields, String name) {
+
+        for (int i = 0; i < fields.length; i++) {
+            if (fields[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(int[] positions, int position) {
+
+        for (int i = 0; i < positions.length; i++) {
+            if (positions[i] == position) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
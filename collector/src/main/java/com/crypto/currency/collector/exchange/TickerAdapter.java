@@ -0,0 +1,245 @@
+package com.crypto.currency.collector.exchange;
+
+import com.crypto.currency.collector.util.SymbolUtils;
+import com.crypto.currency.common.utils.ExtUtils;
+import com.crypto.currency.data.entity.TickerEntity;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * @author Panzi
+ * @Description The declaration of a spot ticker endpoint: the url, the path of the rows, the symbol and its split,
+ * the price and the volume fields. it is compiled once into a row parser selecting only the declared fields,
+ * so a venue needs no response class and every venue gets the same streamed parse.
+ * <pre>
+ * TickerAdapter.builder(URL).rows("data", "ticker").symbol("symbol", Split.DASH).quote("last")
+ *     .baseVolume("vol").build();
+ * </pre>
+ * @date 2022/7/8 21:10
+ */
+public class TickerAdapter {
+
+    public enum Split {
+
+        /**
+         * BTC-USDT
+         */
+        DASH(SymbolUtils::splitWithDash),
+
+        /**
+         * BTC_USDT
+         */
+        UNDERSCORE(SymbolUtils::splitWithUnderscore),
+
+        /**
+         * BTC/USDT
+         */
+        SLASH(SymbolUtils::splitWithSlash),
+
+        /**
+         * BTCUSDT, split by the symbols of the exchange. the symbols not found are kept as the base symbol
+         */
+        FULL_STRING(null),
+
+        /**
+         * not split, the symbol is kept as the base symbol: the exchange splits it
+         */
+        NONE(symbol -> null);
+
+        private final Function<String, Pair<String, String>> splitter;
+
+        Split(Function<String, Pair<String, String>> splitter) {
+            this.splitter = splitter;
+        }
+    }
+
+    private final String url;
+    private final String[] path;
+    private final boolean keyed;
+    private final String symbol;
+    private final Split split;
+    private final String quote;
+    private final String volume;
+
+    /**
+     * true : the volume is of the base symbol, the main volume is volume * quote
+     */
+    private final boolean baseVolume;
+
+    /**
+     * the declared fields in the order of the row values
+     */
+    private final String[] fields;
+
+    private TickerAdapter(Builder builder) {
+
+        this.url = builder.url;
+        this.path = builder.path;
+        this.keyed = builder.keyed;
+        this.symbol = builder.symbol;
+        this.split = builder.split;
+        this.quote = builder.quote;
+        this.volume = builder.volume;
+        this.baseVolume = builder.baseVolume;
+
+        List<String> fields = Lists.newArrayListWithCapacity(3);
+        fields.add(quote);
+        if (volume != null) {
+            fields.add(volume);
+        }
+        if (!keyed) {
+            fields.add(symbol);
+        }
+        this.fields = fields.toArray(new String[0]);
+    }
+
+    /**
+     * @param url the endpoint of all the tickers
+     * @return
+     */
+    public static Builder builder(String url) {
+        return new Builder(url);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * a parser for one response
+     *
+     * @param fullString the split of the FULL_STRING symbols
+     * @return
+     */
+    public TickerTokenParser newParser(Function<String, Pair<String, String>> fullString) {
+
+        final Function<String, Pair<String, String>> splitter =
+            split == Split.FULL_STRING ? fullString : split.splitter;
+        final int symbolIndex = fields.length - 1;
+        return new RowTokenParser(path, fields) {
+
+            @Override
+            protected void onRow(String[] values, Consumer<TickerEntity.CMCTicker> sink) {
+
+                String name = StringUtils.upperCase(keyed ? getRowKey() : values[symbolIndex]);
+                if (StringUtils.isEmpty(name)) {
+                    return;
+                }
+                Pair<String, String> pair = splitter.apply(name);
+                if (pair == null && split != Split.FULL_STRING && split != Split.NONE) {
+                    return;
+                }
+                BigDecimal price = values[0] == null ? null : ExtUtils.parseBigDecimal(values[0]);
+                BigDecimal amount = volume == null || values[1] == null ? null : ExtUtils.parseBigDecimal(values[1]);
+                if (amount != null && baseVolume) {
+                    amount = amount.multiply(ExtUtils.getNotNull(price));
+                }
+                sink.accept(TickerEntity.CMCTicker.builder().baseSymbol(pair == null ? name : pair.getLeft())
+                    .mainSymbol(pair == null ? null : pair.getRight()).quote(price).mainVolume(amount).build());
+            }
+        };
+    }
+
+    public static class Builder {
+
+        private final String url;
+        private String[] path = new String[0];
+        private boolean keyed;
+        private String symbol;
+        private Split split;
+        private String quote;
+        private String volume;
+        private boolean baseVolume;
+
+        Builder(String url) {
+            this.url = url;
+        }
+
+        /**
+         * the rows are the elements of the array at the path: {"data":[{...}]} is rows("data")
+         *
+         * @param path the field names from the root, none : the root array
+         * @return
+         */
+        public Builder rows(String... path) {
+
+            this.path = path;
+            this.keyed = false;
+            return this;
+        }
+
+        /**
+         * the rows are the values of the object at the path, the symbol is the field name: {"btc_usdt":{...}}
+         *
+         * @param path  the field names from the root, none : the root object
+         * @param split
+         * @return
+         */
+        public Builder keyedRows(Split split, String... path) {
+
+            this.path = path;
+            this.keyed = true;
+            this.split = split;
+            return this;
+        }
+
+        public Builder symbol(String field, Split split) {
+
+            this.symbol = field;
+            this.split = split;
+            return this;
+        }
+
+        /**
+         * the last price
+         *
+         * @param field
+         * @return
+         */
+        public Builder quote(String field) {
+
+            this.quote = field;
+            return this;
+        }
+
+        /**
+         * the volume in the main symbol
+         *
+         * @param field
+         * @return
+         */
+        public Builder mainVolume(String field) {
+
+            this.volume = field;
+            this.baseVolume = false;
+            return this;
+        }
+
+        /**
+         * the volume in the base symbol, multiplied by the quote
+         *
+         * @param field
+         * @return
+         */
+        public Builder baseVolume(String field) {
+
+            this.volume = field;
+            this.baseVolume = true;
+            return this;
+        }
+
+        public TickerAdapter build() {
+
+            Preconditions.checkArgument(url != null && quote != null && split != null, "url, quote and split");
+            Preconditions.checkArgument(keyed || symbol != null, "the symbol field of the rows");
+            return new TickerAdapter(this);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+package com.crypto.currency.collector.exchange;
+
+import com.crypto.currency.data.entity.TickerEntity;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.beans.BeanUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author Panzi
+ * @Description The last published spot ticker of every symbol by exchange. in the delta mode only the tickers whose
+ * quote or main volume moved beyond the epsilon since they were last published are sent, with a full snapshot every
+ * n full queries of the exchange or on demand, so the consumers can rebuild the state after a restart.
+ * only a full query sends a full snapshot: the tickers of a single pair are always a delta.
+ * a full snapshot replaces the tickers of the exchange, so the delisted pairs are dropped. the state is kept as
+ * published, a failed send requests a full snapshot to bring the consumers back in line.
+ * @date 2022/7/6 21:15
+ */
+@Component
+public class TickerSnapshotStore {
+
+    @Value("${service.ticker.delta.enabled:false}")
+    private boolean enabled;
+
+    /**
+     * the relative change of the quote or the main volume published, eg: 0.0001 = 0.01%
+     */
+    @Value("${service.ticker.delta.epsilon:0.0001}")
+    private double epsilon;
+
+    /**
+     * a full snapshot every n full queries of the exchange
+     */
+    @Value("${service.ticker.delta.full-every:10}")
+    private int fullEvery;
+
+    private final ConcurrentMap<Integer, Snapshot> snapshots = Maps.newConcurrentMap();
+
+    /**
+     * the message to publish: the full tickers or only the changed ones. the entity is not modified,
+     * the derivatives and the disabled delta mode are passed through.
+     *
+     * @param entity
+     * @param fullQuery the tickers of all the symbols of the exchange
+     * @return
+     */
+    public TickerEntity toPublished(TickerEntity entity, boolean fullQuery) {
+
+        if (!enabled || entity == null || entity.getExchangeId() == null || entity.getCmcTickers() == null) {
+            return entity;
+        }
+        Snapshot snapshot = snapshots.computeIfAbsent(entity.getExchangeId(), id -> new Snapshot());
+        synchronized (snapshot) {
+            snapshot.exchangeName = entity.getExchangeName();
+            boolean full = fullQuery && (snapshot.fullRequested || fullEvery <= 1
+                || snapshot.fullQueries % fullEvery == 0);
+            if (fullQuery) {
+                snapshot.fullRequested = false;
+                snapshot.fullQueries++;
+            }
+            snapshot.messages++;
+
+            if (full) {
+                snapshot.tickers.clear();
+            }
+            List<TickerEntity.CMCTicker> published = Lists.newArrayListWithCapacity(entity.getCmcTickers().size());
+            for (TickerEntity.CMCTicker ticker : entity.getCmcTickers()) {
+                String key = ticker.getBaseSymbol() + "/" + ticker.getMainSymbol();
+                if (full || isChanged(snapshot.tickers.get(key), ticker)) {
+                    snapshot.tickers.put(key, ticker);
+                    published.add(ticker);
+                }
+            }
+            if (full) {
+                snapshot.fulls++;
+                snapshot.snapshotId = Math.max(snapshot.snapshotId + 1, System.currentTimeMillis());
+            } else {
+                snapshot.suppressed += entity.getCmcTickers().size() - published.size();
+            }
+            snapshot.published += published.size();
+
+            TickerEntity message = new TickerEntity();
+            BeanUtils.copyProperties(entity, message);
+            message.setCmcTickers(published);
+            message.setDelta(!full);
+            message.setSnapshotId(full ? snapshot.snapshotId : null);
+            return message;
+        }
+    }
+
+    /**
+     * the next full query of the exchange is a full snapshot, eg: a message of the exchange failed to be sent
+     *
+     * @param exchangeId null : all the exchanges
+     */
+    public void requestSnapshot(Integer exchangeId) {
+
+        if (exchangeId == null) {
+            snapshots.values().forEach(snapshot -> snapshot.fullRequested = true);
+        } else {
+            snapshots.computeIfAbsent(exchangeId, id -> new Snapshot()).fullRequested = true;
+        }
+    }
+
+    public Map<Integer, Stats> stats() {
+
+        Map<Integer, Stats> stats = Maps.newTreeMap();
+        snapshots.forEach((id, snapshot) -> {
+            synchronized (snapshot) {
+                stats.put(id, new Stats(snapshot.exchangeName, snapshot.tickers.size(), snapshot.messages,
+                    snapshot.fulls, snapshot.published, snapshot.suppressed));
+            }
+        });
+        return stats;
+    }
+
+    private boolean isChanged(TickerEntity.CMCTicker last, TickerEntity.CMCTicker ticker) {
+
+        return last == null || isChanged(last.getQuote(), ticker.getQuote()) || isChanged(last.getMainVolume(),
+            ticker.getMainVolume());
+    }
+
+    private boolean isChanged(BigDecimal last, BigDecimal value) {
+
+        if (last == null || value == null) {
+            return !Objects.equals(last, value);
+        }
+        if (last.signum() == 0) {
+            return value.signum() != 0;
+        }
+        return value.subtract(last).abs().doubleValue() > last.abs().doubleValue() * epsilon;
+    }
+
+    private static class Snapshot {
+
+        /**
+         * the last published ticker by baseSymbol/mainSymbol, the unpublished small moves add up against it
+         */
+        private final Map<String, TickerEntity.CMCTicker> tickers = Maps.newHashMap();
+
+        private String exchangeName;
+
+        private volatile boolean fullRequested;
+
+        /**
+         * the last snapshot id, from the clock so the ids still grow after a restart
+         */
+        private long snapshotId;
+
+        private long messages;
+        private long fullQueries;
+        private long fulls;
+        private long published;
+        private long suppressed;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private String exchangeName;
+
+        private int symbols;
+
+        private long messages;
+
+        private long fullSnapshots;
+
+        /**
+         * the tickers sent
+         */
+        private long published;
+
+        /**
+         * the unchanged tickers left out of the delta messages
+         */
+        private long suppressed;
+    }
+}
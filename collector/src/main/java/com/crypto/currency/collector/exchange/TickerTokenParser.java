@@ -0,0 +1,28 @@
+package com.crypto.currency.collector.exchange;
+
+import com.crypto.currency.data.entity.TickerEntity;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * @author Panzi
+ * @Description Build the tickers straight from the json tokens of a streamed response,
+ * a parser instance holds the state of one response.
+ * @date 2022/6/16 22:40
+ */
+@FunctionalInterface
+public interface TickerTokenParser {
+
+    /**
+     * called for every token of the response
+     *
+     * @param parser the parser positioned on the token
+     * @param token
+     * @param sink   receives the built tickers
+     * @throws IOException
+     */
+    void onToken(JsonParser parser, JsonToken token, Consumer<TickerEntity.CMCTicker> sink) throws IOException;
+}
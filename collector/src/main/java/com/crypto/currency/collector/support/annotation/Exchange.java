@@ -25,4 +25,84 @@ public @interface Exchange {
     String name() default "";
 
     String url() default "";
+
+    /**
+     * the max connections of the exchange's own connection pool
+     *
+     * @return
+     */
+    int maxConnections() default 64;
+
+    /**
+     * the max pending acquires of the exchange's connection pool, -1 : no limit
+     *
+     * @return
+     */
+    int pendingAcquireMaxCount() default 512;
+
+    /**
+     * millis, the idle connections longer than it are evicted
+     *
+     * @return
+     */
+    long maxIdleTime() default 30000L;
+
+    /**
+     * the requests(or weight) allowed per interval, 0 : no limit
+     *
+     * @return
+     */
+    int permits() default 0;
+
+    /**
+     * millis, the interval of the permits
+     *
+     * @return
+     */
+    long interval() default 1000L;
+
+    /**
+     * the response header reporting the quota usage, eg: X-MBX-USED-WEIGHT-1M,
+     * the concurrency and the pacing follow it. blank : no feedback
+     *
+     * @return
+     */
+    String usageHeader() default "";
+
+    /**
+     * the quota of the usage header, 0 : the permits
+     *
+     * @return
+     */
+    int usageLimit() default 0;
+
+    /**
+     * the usage header reports the remaining quota instead of the used one
+     *
+     * @return
+     */
+    boolean usageRemaining() default false;
+
+    /**
+     * the hosts with a quota of their own, the permits and the usage header above are the quota of the others.
+     * a pool only reads the usage of one quota.
+     *
+     * @return
+     */
+    Quota[] quotas() default {};
+
+    /**
+     * hedged gets: a second identical get is sent when the first is slower than the exchange's p95 latency
+     * and the rate budget allows it, the first response wins.
+     *
+     * @return
+     */
+    boolean hedge() default false;
+
+    /**
+     * the collection tasks of the exchange running at once, the others fail fast. 0 : no limit
+     *
+     * @return
+     */
+    int maxTasks() default 32;
 }
@@ -0,0 +1,68 @@
+package com.crypto.currency.collector.support.annotation;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * @author Panzi
+ * @Description The rate quota of some hosts of an exchange, counted apart from the quota of the exchange,
+ * eg: the futures apis of binance. the requests to the hosts go through their own pool, token bucket and
+ * usage feedback, so their usage header never syncs the limiter of another quota.
+ * @date 2022/6/21 21:40
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target({})
+@Documented
+public @interface Quota {
+
+    /**
+     * the name of the quota, the suffix of its pool name
+     *
+     * @return
+     */
+    String name();
+
+    /**
+     * the hosts counted on the quota, also matched in the proxy and fixed-ip urls
+     *
+     * @return
+     */
+    String[] hosts();
+
+    /**
+     * the requests(or weight) allowed per interval, 0 : no limit
+     *
+     * @return
+     */
+    int permits() default 0;
+
+    /**
+     * millis, the interval of the permits
+     *
+     * @return
+     */
+    long interval() default 1000L;
+
+    /**
+     * the response header reporting the usage of the quota, blank : no feedback
+     *
+     * @return
+     */
+    String usageHeader() default "";
+
+    /**
+     * the quota of the usage header, 0 : the permits
+     *
+     * @return
+     */
+    int usageLimit() default 0;
+
+    /**
+     * the usage header reports the remaining quota instead of the used one
+     *
+     * @return
+     */
+    boolean usageRemaining() default false;
+}
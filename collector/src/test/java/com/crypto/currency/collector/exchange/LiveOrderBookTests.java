@@ -0,0 +1,128 @@
+package com.crypto.currency.collector.exchange;
+
+import com.crypto.currency.common.utils.JacksonUtils;
+import com.crypto.currency.data.entity.OrderBookEntity;
+import com.fasterxml.jackson.databind.JsonNode;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LiveOrderBookTests {
+
+    private static final JsonNode NONE = levels("[]");
+
+    @Test
+    void appliesTheUpdatesInSequence() {
+
+        LiveOrderBook book = new LiveOrderBook();
+        book.snapshot(10, levels("[[\"100\",\"1\"],[\"99\",\"2\"]]"), levels("[[\"101\",\"1\"]]"));
+
+        assertEquals(LiveOrderBook.Update.STALE, book.update(8, 10, levels("[[\"98\",\"1\"]]"), NONE));
+        assertEquals(LiveOrderBook.Update.APPLIED, book.update(9, 12, levels("[[\"99\",\"0\"]]"), NONE));
+        assertEquals(LiveOrderBook.Update.APPLIED, book.update(13, 13, NONE, levels("[[\"102\",\"3\"]]")));
+
+        LiveOrderBook.Stats stats = book.stats();
+        assertEquals(13, stats.getSequence());
+        assertEquals(1, stats.getBids());
+        assertEquals(2, stats.getAsks());
+        assertEquals(2, stats.getUpdates());
+        assertTrue(book.isFresh(60000L));
+    }
+
+    @Test
+    void unsyncsTheBookOnAGap() {
+
+        LiveOrderBook book = new LiveOrderBook();
+        book.snapshot(10, levels("[[\"100\",\"1\"]]"), levels("[[\"101\",\"1\"]]"));
+
+        assertEquals(LiveOrderBook.Update.GAP, book.update(12, 13, levels("[[\"99\",\"1\"]]"), NONE));
+        assertFalse(book.isFresh(60000L));
+        assertEquals(1, book.stats().getGaps());
+        assertEquals(0, book.stats().getBids());
+        assertEquals(LiveOrderBook.Update.GAP, book.update(14, 14, NONE, NONE));
+
+        book.snapshot(20, levels("[[\"100\",\"1\"]]"), NONE);
+        assertEquals(LiveOrderBook.Update.APPLIED, book.update(21, 21, NONE, NONE));
+    }
+
+    @Test
+    void skipsTheSequenceCheckWithoutUpdateIds() {
+
+        LiveOrderBook book = new LiveOrderBook();
+        assertEquals(LiveOrderBook.Update.GAP, book.update(-1, -1, NONE, NONE));
+
+        book.snapshot(-1, levels("[[\"100\",\"1\"]]"), NONE);
+        assertEquals(LiveOrderBook.Update.APPLIED, book.update(-1, -1, levels("[[\"100\",\"0\"]]"), NONE));
+        assertEquals(0, book.stats().getBids());
+    }
+
+    @Test
+    void keepsTheBestLevelsUpToTheMaxDepth() {
+
+        LiveOrderBook book = new LiveOrderBook();
+        book.setMaxDepth(2);
+        book.snapshot(1, levels("[[\"99\",\"1\"],[\"100\",\"1\"],[\"98\",\"1\"]]"),
+            levels("[[\"103\",\"1\"],[\"101\",\"1\"],[\"102\",\"1\"]]"));
+
+        OrderBookEntity entity = book.toLevels().build(0);
+        assertArrayEquals(new long[] {100, 99}, entity.getBidPrices());
+        assertArrayEquals(new long[] {101, 102}, entity.getAskPrices());
+    }
+
+    @Test
+    void keepsTheServedDepthByDefault() {
+
+        StringBuilder bids = new StringBuilder("[");
+        for (int i = 1000; i > 0; i--) {
+            bids.append("[\"").append(i).append("\",\"1\"]").append(i > 1 ? "," : "]");
+        }
+        LiveOrderBook book = new LiveOrderBook();
+        book.snapshot(1, levels(bids.toString()), NONE);
+
+        assertEquals(500, book.stats().getBids());
+        assertEquals(1000, book.toLevels().build(0).getBidPrices()[0]);
+    }
+
+    @Test
+    void growsTheScalesWithTheDecimalsOfAnUpdate() {
+
+        LiveOrderBook book = new LiveOrderBook();
+        book.snapshot(1, levels("[[\"100\",\"1\"]]"), levels("[[\"101\",\"1\"]]"));
+        book.update(2, 2, levels("[[\"100.5\",\"0.25\"]]"), NONE);
+
+        OrderBookEntity entity = book.toLevels().build(0);
+        assertEquals(1, entity.getPriceScale());
+        assertEquals(2, entity.getAmountScale());
+        assertArrayEquals(new long[] {1005, 1000}, entity.getBidPrices());
+        assertArrayEquals(new long[] {25, 100}, entity.getBidAmounts());
+        assertArrayEquals(new long[] {1010}, entity.getAskPrices());
+    }
+
+    @Test
+    void checksumsTheTopLevelsWithoutTheDotAndTheLeadingZeros() {
+
+        LiveOrderBook book = new LiveOrderBook();
+        book.snapshot(1, levels("[[\"0.05000\",\"0.00000500\"],[\"0.04990\",\"1.50000000\"],"
+            + "[\"0.04980\",\"2.00000000\"]]"), levels("[[\"0.05005\",\"0.00000500\"],[\"0.05010\",\"10.00000000\"]]"));
+
+        assertEquals(crc32("5005500" + "50101000000000" + "5000500" + "4990150000000"), book.checksum(2));
+        assertEquals(crc32("5005500" + "5000500"), book.checksum(1));
+    }
+
+    private static JsonNode levels(String json) {
+        return JacksonUtils.readTree(json);
+    }
+
+    private static long crc32(String text) {
+
+        CRC32 crc32 = new CRC32();
+        crc32.update(text.getBytes(StandardCharsets.US_ASCII));
+        return crc32.getValue();
+    }
+}
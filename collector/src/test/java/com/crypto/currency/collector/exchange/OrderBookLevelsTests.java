@@ -0,0 +1,72 @@
+package com.crypto.currency.collector.exchange;
+
+import com.crypto.currency.common.utils.JacksonUtils;
+import com.crypto.currency.data.entity.OrderBookEntity;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OrderBookLevelsTests {
+
+    @Test
+    void keepsTheDecimalsOfTheBook() {
+
+        OrderBookEntity entity = OrderBookLevels.of(
+            "{\"bids\":[[\"100.50\",\"1.000\"],[\"99.1\",\"0.00000001\"]],\"asks\":[[\"101\",\"2.5\"]]}").build(0);
+
+        assertEquals(1, entity.getPriceScale());
+        assertEquals(8, entity.getAmountScale());
+        assertArrayEquals(new long[] {1005, 991}, entity.getBidPrices());
+        assertArrayEquals(new long[] {100000000, 1}, entity.getBidAmounts());
+        assertArrayEquals(new long[] {250000000}, entity.getAskAmounts());
+    }
+
+    @Test
+    void capsTheScaleSoTheLargestValueFitsALong() {
+
+        OrderBookEntity entity = OrderBookLevels.of(
+            "{\"bids\":[[\"123456789012.5\",\"0.000000000001\"],[\"0.123456789\",\"1\"]],\"asks\":[]}").build(0);
+
+        assertEquals(6, entity.getPriceScale());
+        assertArrayEquals(new long[] {123456789012500000L, 123456}, entity.getBidPrices());
+        assertEquals(12, entity.getAmountScale());
+    }
+
+    @Test
+    void dropsTheLevelsWithoutAnAmountAtTheScale() {
+
+        OrderBookEntity entity =
+            OrderBookLevels.of("{\"bids\":[[\"1\",\"0\"],[\"3\",\"0.0001\"],[\"2\",\"1000000000000000\"]]}").build(0);
+
+        assertEquals(2, entity.getAmountScale());
+        assertArrayEquals(new long[] {2}, entity.getBidPrices());
+    }
+
+    @Test
+    void streamsTheBookAtThePath() {
+
+        String body = "{\"error\":[],\"result\":{\"XXBTZUSD\":{\"asks\":[[\"9300.0\",\"1.0\",1591695012]],"
+            + "\"bids\":[[\"9299.9\",\"2\",1],[\"9299.95\",\"3\",1]]}}}";
+        OrderBookEntity streamed = OrderBookLevels.of(body, "result", OrderBookLevels.ANY).build(0);
+        OrderBookEntity tree =
+            OrderBookLevels.of(JacksonUtils.readTree(body).path("result").path("XXBTZUSD")).build(0);
+
+        assertEquals(tree.getPriceScale(), streamed.getPriceScale());
+        assertArrayEquals(tree.getBidPrices(), streamed.getBidPrices());
+        assertArrayEquals(new long[] {929995, 929990}, streamed.getBidPrices());
+        assertArrayEquals(tree.getAskAmounts(), streamed.getAskAmounts());
+        assertEquals(0, OrderBookLevels.of(body, "result", "other").build(0).getBidLevels());
+    }
+
+    @Test
+    void readsTheObjectLevelsAndTheIndexesOfThePath() {
+
+        OrderBookEntity entity = OrderBookLevels.of("{\"result\":{\"data\":[{\"bids\":[{\"amount\":\"7\","
+            + "\"price\":\"3.25\"}],\"asks\":[{\"price\":1.5e1,\"amount\":2}]}]}}", "result", "data", "0").build(0);
+
+        assertArrayEquals(new long[] {325}, entity.getBidPrices());
+        assertArrayEquals(new long[] {7}, entity.getBidAmounts());
+        assertArrayEquals(new long[] {1500}, entity.getAskPrices());
+    }
+}
@@ -0,0 +1,117 @@
+package com.crypto.currency.collector.exchange;
+
+import com.crypto.currency.data.entity.TickerEntity;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class RowTokenParserTests {
+
+    private static final JsonFactory FACTORY = new JsonFactory();
+
+    @Test
+    void selectsTheFieldsOfObjectRows() throws IOException {
+
+        Rows rows = new Rows("symbol", "lastPrice");
+        parse(rows, "[{\"symbol\":\"BTCUSDT\",\"volume\":\"9\",\"lastPrice\":\"1.5\"},{\"symbol\":\"ETHUSDT\"}]");
+
+        assertEquals(Arrays.asList(Arrays.asList("BTCUSDT", "1.5"), Arrays.asList("ETHUSDT", null)), rows.values);
+    }
+
+    @Test
+    void skipsTheNestedContainersOfObjectRows() throws IOException {
+
+        Rows rows = new Rows("symbol", "lastPrice");
+        parse(rows, "[{\"symbol\":\"BTCUSDT\",\"inner\":{\"symbol\":\"NO\",\"lastPrice\":\"9\"},"
+            + "\"list\":[{\"lastPrice\":\"8\"},[\"7\"]],\"lastPrice\":\"1\"}]");
+
+        assertEquals(Arrays.asList(Arrays.asList("BTCUSDT", "1")), rows.values);
+    }
+
+    @Test
+    void countsANestedContainerAsOnePositionOfArrayRows() throws IOException {
+
+        Rows rows = new Rows(0, 2);
+        parse(rows, "[[\"tBTCUSD\",[1,[2,3]],{\"a\":4},5],[\"tETHUSD\",null,6]]");
+
+        assertEquals(Arrays.asList(Arrays.asList("tBTCUSD", null), Arrays.asList("tETHUSD", "6")), rows.values);
+        rows.values.clear();
+        parse(rows, "[[\"tBTCUSD\",[1,[2,3]],5]]");
+        assertEquals(Arrays.asList(Arrays.asList("tBTCUSD", "5")), rows.values);
+    }
+
+    @Test
+    void readsTheRowsUnderThePathOnly() throws IOException {
+
+        Rows rows = new Rows(new String[] {"data", "ticker"}, "symbol");
+        parse(rows, "{\"ticker\":[{\"symbol\":\"ROOT\"}],\"other\":{\"ticker\":[{\"symbol\":\"OTHER\"}]},"
+            + "\"data\":{\"inner\":{\"ticker\":[{\"symbol\":\"DEEP\"}]},\"ticker\":[{\"symbol\":\"BTC_USDT\"}]}}");
+
+        assertEquals(Arrays.asList(Arrays.asList("BTC_USDT")), rows.values);
+    }
+
+    @Test
+    void keysTheRowsOfAnObject() throws IOException {
+
+        Rows rows = new Rows(new String[] {"data"}, "last");
+        parse(rows,
+            "{\"data\":{\"btc_usdt\":{\"last\":\"1\"},\"eth_usdt\":{\"last\":\"2\",\"ext\":{\"last\":\"3\"}}}}");
+
+        assertEquals(Arrays.asList("btc_usdt", "eth_usdt"), rows.keys);
+        assertEquals(Arrays.asList(Arrays.asList("1"), Arrays.asList("2")), rows.values);
+    }
+
+    @Test
+    void leavesTheKeyOfArrayRowsNull() throws IOException {
+
+        Rows rows = new Rows("symbol");
+        parse(rows, "[{\"symbol\":\"BTCUSDT\"}]");
+
+        assertEquals(Arrays.asList((String)null), rows.keys);
+    }
+
+    private static void parse(RowTokenParser rows, String json) throws IOException {
+
+        try (JsonParser parser = FACTORY.createParser(json)) {
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                rows.onToken(parser, token, t -> {
+                });
+            }
+        }
+    }
+
+    private static class Rows extends RowTokenParser {
+
+        private final List<List<String>> values = Lists.newArrayList();
+        private final List<String> keys = Lists.newArrayList();
+
+        Rows(String... fields) {
+            super(fields);
+        }
+
+        Rows(int... positions) {
+            super(positions);
+        }
+
+        Rows(String[] path, String... fields) {
+            super(path, fields);
+        }
+
+        @Override
+        protected void onRow(String[] values, Consumer<TickerEntity.CMCTicker> sink) {
+
+            this.values.add(Arrays.asList(values.clone()));
+            this.keys.add(getRowKey());
+        }
+    }
+}
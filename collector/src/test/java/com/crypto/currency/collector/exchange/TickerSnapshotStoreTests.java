@@ -0,0 +1,107 @@
+package com.crypto.currency.collector.exchange;
+
+import com.crypto.currency.data.entity.TickerEntity;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TickerSnapshotStoreTests {
+
+    @Test
+    void publishesTheChangedTickersBetweenTheFullSnapshots() {
+
+        TickerSnapshotStore store = store(3);
+
+        TickerEntity first = store.toPublished(entity(ticker("BTC", "100"), ticker("ETH", "10")), true);
+        assertFalse(first.isDelta());
+        assertEquals(2, first.getCmcTickers().size());
+
+        TickerEntity second = store.toPublished(entity(ticker("BTC", "100.001"), ticker("ETH", "11")), true);
+        assertTrue(second.isDelta());
+        assertEquals(Arrays.asList("ETH"), bases(second));
+        assertNull(second.getSnapshotId());
+
+        store.toPublished(entity(ticker("BTC", "100"), ticker("ETH", "11")), true);
+        TickerEntity fourth = store.toPublished(entity(ticker("BTC", "100"), ticker("ETH", "11")), true);
+        assertFalse(fourth.isDelta());
+        assertEquals(Arrays.asList("BTC", "ETH"), bases(fourth));
+    }
+
+    @Test
+    void sendsTheTickersOfASinglePairAsADelta() {
+
+        TickerSnapshotStore store = store(1);
+
+        TickerEntity single = store.toPublished(entity(ticker("BTC", "100")), false);
+        assertTrue(single.isDelta());
+        assertEquals(1, single.getCmcTickers().size());
+        assertTrue(store.toPublished(entity(ticker("BTC", "100")), false).getCmcTickers().isEmpty());
+    }
+
+    @Test
+    void sendsAFullSnapshotOnRequest() {
+
+        TickerSnapshotStore store = store(10);
+        store.toPublished(entity(ticker("BTC", "100")), true);
+        assertTrue(store.toPublished(entity(ticker("BTC", "100")), true).isDelta());
+
+        store.requestSnapshot(1);
+        TickerEntity requested = store.toPublished(entity(ticker("BTC", "100")), true);
+        assertFalse(requested.isDelta());
+        assertEquals(1, requested.getCmcTickers().size());
+    }
+
+    @Test
+    void dropsTheDelistedPairsOnAFullSnapshot() {
+
+        TickerSnapshotStore store = store(1);
+        store.toPublished(entity(ticker("BTC", "100"), ticker("LUNA", "1")), true);
+        assertEquals(2, store.stats().get(1).getSymbols());
+
+        store.toPublished(entity(ticker("BTC", "100")), true);
+        assertEquals(1, store.stats().get(1).getSymbols());
+    }
+
+    @Test
+    void passesTheTickersThroughWhenDisabled() {
+
+        TickerSnapshotStore store = store(1);
+        ReflectionTestUtils.setField(store, "enabled", false);
+
+        TickerEntity entity = entity(ticker("BTC", "100"));
+        assertSame(entity, store.toPublished(entity, true));
+    }
+
+    private static TickerSnapshotStore store(int fullEvery) {
+
+        TickerSnapshotStore store = new TickerSnapshotStore();
+        ReflectionTestUtils.setField(store, "enabled", true);
+        ReflectionTestUtils.setField(store, "epsilon", 0.0001);
+        ReflectionTestUtils.setField(store, "fullEvery", fullEvery);
+        return store;
+    }
+
+    private static TickerEntity entity(TickerEntity.CMCTicker... tickers) {
+        return TickerEntity.builder().exchangeId(1).exchangeName("test").cmcTickers(Arrays.asList(tickers)).build();
+    }
+
+    private static TickerEntity.CMCTicker ticker(String base, String quote) {
+
+        return TickerEntity.CMCTicker.builder().baseSymbol(base).mainSymbol("USDT").quote(new BigDecimal(quote))
+            .mainVolume(BigDecimal.ONE).build();
+    }
+
+    private static List<String> bases(TickerEntity entity) {
+        return entity.getCmcTickers().stream().map(TickerEntity.CMCTicker::getBaseSymbol).collect(Collectors.toList());
+    }
+}
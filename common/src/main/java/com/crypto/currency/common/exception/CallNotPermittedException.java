@@ -0,0 +1,21 @@
+package com.crypto.currency.common.exception;
+
+/**
+ * @author Panzi
+ * @Description the call is rejected without being sent: the circuit breaker is open or the bulkhead is full
+ * @date 2022/7/12 21:20
+ */
+public class CallNotPermittedException extends BusinessException {
+
+    private final String name;
+
+    public CallNotPermittedException(String name, String reason) {
+
+        super("Call not permitted, " + name + ": " + reason);
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,30 @@
+package com.crypto.currency.common.exception;
+
+import java.time.Duration;
+
+/**
+ * @author Panzi
+ * @Description the remote throttles us: 429 Too Many Requests or 418 (banned by binance)
+ * @date 2022/6/20 21:45
+ */
+public class RateLimitedException extends BusinessException {
+
+    private final int status;
+
+    private final Duration retryAfter;
+
+    public RateLimitedException(int status, Duration retryAfter) {
+
+        super("Rate limited, status: " + status + ", retry after: " + retryAfter.toMillis() + "ms");
+        this.status = status;
+        this.retryAfter = retryAfter;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
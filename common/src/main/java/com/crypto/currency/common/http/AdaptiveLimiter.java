@@ -0,0 +1,193 @@
+package com.crypto.currency.common.http;
+
+import com.crypto.currency.common.utils.StringUtils;
+import com.google.common.base.Preconditions;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.http.HttpHeaders;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.MonoSink;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author Panzi
+ * @Description Feedback driven limiter: read the quota usage the exchange reports on every response,
+ * eg: X-MBX-USED-WEIGHT-1M of binance, sync the token bucket with it and adjust the concurrency (AIMD):
+ * halve it above the high watermark, grow it by one below the low watermark.
+ * @date 2022/6/21 21:20
+ */
+public class AdaptiveLimiter {
+
+    private static final double HIGH_WATERMARK = 0.9D;
+    private static final double LOW_WATERMARK = 0.7D;
+    /**
+     * the part of the quota never used, other requests may already be on the way
+     */
+    private static final double RESERVE = 0.05D;
+    /**
+     * at most one decrease per window, the responses of the same burst report the same usage
+     */
+    private static final long DECREASE_WINDOW = 1000L;
+
+    private final String header;
+    private final boolean remaining;
+    private final int limit;
+    private final int maxConcurrency;
+    private final RateLimiter rateLimiter;
+
+    private volatile int concurrency;
+    private volatile long used;
+    private volatile long lastDecrease;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * @param header         the usage header
+     * @param remaining      the header reports the remaining quota instead of the used one
+     * @param limit          the quota of the window
+     * @param maxConcurrency
+     * @param rateLimiter    the bucket synced with the reported usage
+     */
+    public AdaptiveLimiter(String header, boolean remaining, int limit, int maxConcurrency, RateLimiter rateLimiter) {
+
+        Preconditions.checkArgument(StringUtils.isNotBlank(header) && limit > 0 && maxConcurrency > 0);
+        this.header = header;
+        this.remaining = remaining;
+        this.limit = limit;
+        this.maxConcurrency = maxConcurrency;
+        this.concurrency = maxConcurrency;
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * wait for a slot of the concurrency, release it with {@link #release()}
+     *
+     * @return
+     */
+    public Mono<Boolean> acquire() {
+
+        return Mono.create(sink -> {
+            if (tryAcquire()) {
+                sink.success(true);
+                return;
+            }
+            Waiter waiter = new Waiter(sink);
+            sink.onCancel(() -> {
+                if (waiter.done.compareAndSet(false, true)) {
+                    waiters.remove(waiter);
+                }
+            });
+            waiters.offer(waiter);
+            // a slot may be released before the waiter is queued
+            drain();
+        });
+    }
+
+    public void release() {
+
+        inFlight.decrementAndGet();
+        drain();
+    }
+
+    /**
+     * read the usage of the response
+     *
+     * @param headers
+     */
+    public void onResponse(HttpHeaders headers) {
+
+        String value = StringUtils.trim(headers.getFirst(header));
+        if (!StringUtils.isNumeric(value)) {
+            return;
+        }
+        long reported = Long.parseLong(value);
+        long current = remaining ? limit - reported : reported;
+        this.used = current;
+        if (rateLimiter != null) {
+            rateLimiter.limitTo(limit - current - (long)(limit * RESERVE));
+        }
+        double utilization = (double)current / limit;
+        if (utilization >= HIGH_WATERMARK) {
+            long now = System.currentTimeMillis();
+            if (now - lastDecrease >= DECREASE_WINDOW) {
+                lastDecrease = now;
+                concurrency = Math.max(1, concurrency / 2);
+            }
+        } else if (utilization < LOW_WATERMARK && concurrency < maxConcurrency) {
+            concurrency = concurrency + 1;
+            drain();
+        }
+    }
+
+    private boolean tryAcquire() {
+
+        for (; ; ) {
+            int n = inFlight.get();
+            if (n >= concurrency) {
+                return false;
+            }
+            if (inFlight.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void drain() {
+
+        while (!waiters.isEmpty() && tryAcquire()) {
+            Waiter waiter = waiters.poll();
+            if (waiter != null && waiter.done.compareAndSet(false, true)) {
+                waiter.sink.success(true);
+            } else {
+                // cancelled or taken by another drain, give the slot back
+                inFlight.decrementAndGet();
+            }
+        }
+    }
+
+    public Stats stats() {
+
+        long current = used;
+        return new Stats(header, limit, current, (double)current / limit, concurrency, maxConcurrency,
+            inFlight.get(), waiters.size());
+    }
+
+    private static class Waiter {
+
+        private final MonoSink<Boolean> sink;
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        Waiter(MonoSink<Boolean> sink) {
+            this.sink = sink;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private String header;
+
+        private int limit;
+
+        /**
+         * the usage last reported by the exchange
+         */
+        private long used;
+
+        private double utilization;
+
+        private int concurrency;
+
+        private int maxConcurrency;
+
+        private int inFlight;
+
+        private int waiting;
+    }
+}
@@ -1,16 +1,24 @@
 package com.crypto.currency.common.http;
 
 import com.crypto.currency.common.exception.BusinessException;
+import com.crypto.currency.common.exception.RateLimitedException;
 import com.crypto.currency.common.utils.ExtUtils;
 import com.crypto.currency.common.utils.StringUtils;
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
 import io.netty.channel.ChannelOption;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import io.netty.handler.timeout.ReadTimeoutHandler;
 import io.netty.handler.timeout.WriteTimeoutHandler;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.core.io.buffer.DataBuffer;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
@@ -23,15 +31,23 @@ import org.springframework.web.reactive.function.client.ExchangeStrategies;
 import org.springframework.web.reactive.function.client.WebClient;
 import org.springframework.web.util.UriComponents;
 import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+import reactor.core.publisher.Sinks;
 import reactor.netty.resources.ConnectionProvider;
 import reactor.netty.resources.LoopResources;
 import reactor.util.retry.Retry;
 
 import javax.net.ssl.SSLException;
+import java.net.URI;
 import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * @author Panzi
@@ -50,6 +66,8 @@ public class AsynHttpClient {
 
     public static class Builder {
 
+        private static final String DEFAULT_POOL = "Worker-Nio-Client";
+
         private boolean isSecure;
         private Integer connectTimeout;
         private Integer readTimeout;
@@ -57,6 +75,17 @@ public class AsynHttpClient {
         private int workerCounter;
         private int maxConnections;
         private long acquireTimeout;
+        private int pendingAcquireMaxCount = -1;
+        private long maxIdleTime;
+        /**
+         * the event loops are shared by all pools, only the connections are isolated
+         */
+        private volatile LoopResources loopResources;
+        private final ConnectionPoolGauges gauges = new ConnectionPoolGauges();
+        /**
+         * the wire and the decompressed bytes by pool name
+         */
+        private final ConcurrentMap<String, TrafficCounter> traffic = Maps.newConcurrentMap();
 
         public Builder isSecure(boolean isSecure) {
 
@@ -100,14 +129,55 @@ public class AsynHttpClient {
             return this;
         }
 
+        public Builder pendingAcquireMaxCount(int pendingAcquireMaxCount) {
+
+            this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+            return this;
+        }
+
+        public Builder maxIdleTime(long maxIdleTime) {
+
+            this.maxIdleTime = maxIdleTime;
+            return this;
+        }
+
+        /**
+         * web client on the shared "Worker-Nio-Client" pool
+         *
+         * @return
+         */
         public WebClient build() {
 
+            return build(PoolSettings.builder().name(DEFAULT_POOL)
+                .maxConnections(Math.max((cpuCore() * 2) + 1, this.maxConnections))
+                .pendingAcquireMaxCount(this.pendingAcquireMaxCount).maxIdleTime(this.maxIdleTime).build());
+        }
+
+        /**
+         * web client on its own named connection pool
+         *
+         * @param pool
+         * @return
+         */
+        public WebClient build(PoolSettings pool) {
+
             return WebClient.builder()
-                .defaultRequest(c -> c.accept(MediaType.APPLICATION_JSON).attribute("content-encoding", "gzip"))
-                .clientConnector(getConnector(this.isSecure, this.connectTimeout, this.readTimeout, this.writeTimeout))
+                .defaultRequest(c -> c.accept(MediaType.APPLICATION_JSON))
+                .clientConnector(
+                    getConnector(pool, this.isSecure, this.connectTimeout, this.readTimeout, this.writeTimeout))
                 .exchangeStrategies(exchangeStrategies()).build();
         }
 
+        /**
+         * the clients isolated by pool name, eg: one pool per exchange
+         *
+         * @return
+         */
+        public PooledWebClients buildPooled() {
+
+            return new PooledWebClients(this);
+        }
+
         /**
          * decoder and encoder
          *
@@ -130,10 +200,13 @@ public class AsynHttpClient {
          *
          * @return
          */
-        private ReactorClientHttpConnector getConnector(boolean isSecure, Integer connectTimeout, Integer readTimeout,
-            Integer writeTimeout) {
+        private ReactorClientHttpConnector getConnector(PoolSettings pool, boolean isSecure, Integer connectTimeout,
+            Integer readTimeout, Integer writeTimeout) {
 
-            return new ReactorClientHttpConnector(getReactorResourceFactory(), client -> {
+            final TrafficCounter counter = traffic.computeIfAbsent(pool.getName(), name -> new TrafficCounter());
+            return new ReactorClientHttpConnector(getReactorResourceFactory(pool), client -> {
+                // Accept-Encoding: gzip, deflate and the decompressor in the pipeline after the http codec
+                client = client.compress(true).doOnConnected(conn -> counter.install(conn.channel()));
                 client = client.followRedirect(true).tcpConfiguration(
                     c -> c.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, ExtUtils.getDefaultValue(connectTimeout, 30000))
                         .doOnConnected(conn -> conn.addHandlerLast(
@@ -156,32 +229,430 @@ public class AsynHttpClient {
         }
 
         /**
-         * declare reactor workerCount;
+         * declare reactor workerCount and the connection pool;
          *
+         * @param pool
          * @return
          */
-        private ReactorResourceFactory getReactorResourceFactory() {
+        private ReactorResourceFactory getReactorResourceFactory(PoolSettings pool) {
 
             ReactorResourceFactory resourceFactory = new ReactorResourceFactory();
             resourceFactory.setUseGlobalResources(true);
-            int cpuCore = Math.max(Runtime.getRuntime().availableProcessors(), 8);
-            resourceFactory.setConnectionProvider(ConnectionProvider.builder("Worker-Nio-Client")
-                .maxConnections(Math.max((cpuCore * 2) + 1, this.maxConnections))
+            ConnectionProvider.Builder provider = ConnectionProvider.builder(pool.getName())
+                .maxConnections(pool.getMaxConnections())
                 .pendingAcquireTimeout(Duration.ofMillis(Math.max(this.acquireTimeout, 60000)))
-                .pendingAcquireMaxCount(-1).build());
-            resourceFactory.setLoopResources(
-                LoopResources.create("Worker-Nio-Client", Math.max(cpuCore * 2, this.workerCounter), true));
+                .pendingAcquireMaxCount(pool.getPendingAcquireMaxCount()).metrics(true, () -> gauges);
+            if (pool.getMaxIdleTime() > 0) {
+                provider.maxIdleTime(Duration.ofMillis(pool.getMaxIdleTime()))
+                    .evictInBackground(Duration.ofMillis(pool.getMaxIdleTime()));
+            }
+            resourceFactory.setConnectionProvider(provider.build());
+            resourceFactory.setLoopResources(getLoopResources());
             return resourceFactory;
         }
+
+        private LoopResources getLoopResources() {
+
+            if (loopResources == null) {
+                synchronized (this) {
+                    if (loopResources == null) {
+                        loopResources =
+                            LoopResources.create(DEFAULT_POOL, Math.max(cpuCore() * 2, this.workerCounter), true);
+                    }
+                }
+            }
+            return loopResources;
+        }
+
+        private static int cpuCore() {
+
+            return Math.max(Runtime.getRuntime().availableProcessors(), 8);
+        }
+    }
+
+    /**
+     * the settings of a named connection pool
+     */
+    @Data
+    @lombok.Builder
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class PoolSettings {
+
+        private String name;
+
+        private int maxConnections;
+
+        /**
+         * -1 : no limit
+         */
+        private int pendingAcquireMaxCount;
+
+        /**
+         * millis, the idle connections are evicted in background, 0 : never evict
+         */
+        private long maxIdleTime;
+
+        /**
+         * the requests(or weight) per interval, 0 : no limit
+         */
+        private int permits;
+
+        /**
+         * millis, the interval of the permits
+         */
+        private long interval;
+
+        /**
+         * the response header reporting the quota usage, eg: X-MBX-USED-WEIGHT-1M, blank : no feedback
+         */
+        private String usageHeader;
+
+        /**
+         * the quota of the usage header, 0 : the permits
+         */
+        private int usageLimit;
+
+        /**
+         * the usage header reports the remaining quota instead of the used one
+         */
+        private boolean usageRemaining;
+
+        /**
+         * send a second identical get when the first is slower than the p95 latency
+         */
+        private boolean hedge;
+    }
+
+    /**
+     * one DefaultWebClient per named connection pool,
+     * so a slow remote can only exhaust its own connections.
+     */
+    public static class PooledWebClients {
+
+        private final Builder builder;
+
+        private final ConcurrentMap<String, DefaultWebClient> clients = Maps.newConcurrentMap();
+
+        PooledWebClients(Builder builder) {
+
+            this.builder = builder;
+        }
+
+        /**
+         * get or create the client of the pool
+         *
+         * @param pool
+         * @return
+         */
+        public DefaultWebClient get(PoolSettings pool) {
+
+            Preconditions.checkArgument(pool != null && StringUtils.isNotBlank(pool.getName()));
+            return clients.computeIfAbsent(pool.getName(), name -> {
+                RateLimiter rateLimiter =
+                    new RateLimiter(pool.getPermits(), pool.getInterval() > 0 ? pool.getInterval() : 1000L);
+                int usageLimit = pool.getUsageLimit() > 0 ? pool.getUsageLimit() : pool.getPermits();
+                AdaptiveLimiter adaptiveLimiter = null;
+                if (StringUtils.isNotBlank(pool.getUsageHeader()) && usageLimit > 0) {
+                    adaptiveLimiter = new AdaptiveLimiter(pool.getUsageHeader(), pool.isUsageRemaining(), usageLimit,
+                        Math.max(pool.getMaxConnections(), 1), rateLimiter);
+                }
+                return new DefaultWebClient(builder.build(pool), rateLimiter, adaptiveLimiter, pool.isHedge());
+            });
+        }
+
+        /**
+         * active, idle and pending gauges by pool name
+         *
+         * @return
+         */
+        public Map<String, ConnectionPoolGauges.PoolGauge> gauges() {
+
+            return builder.gauges.snapshot();
+        }
+
+        /**
+         * the wire bytes and the decompressed body bytes by pool name
+         *
+         * @return
+         */
+        public Map<String, TrafficCounter.Stats> trafficStats() {
+
+            Map<String, TrafficCounter.Stats> stats = Maps.newTreeMap();
+            builder.traffic.forEach((name, counter) -> stats.put(name, counter.stats()));
+            return stats;
+        }
+
+        /**
+         * the token bucket of the rate limiters by pool name
+         *
+         * @return
+         */
+        public Map<String, RateLimiter.Stats> rateLimiterStats() {
+
+            Map<String, RateLimiter.Stats> stats = Maps.newTreeMap();
+            clients.forEach((name, client) -> stats.put(name, client.getRateLimiter().stats()));
+            return stats;
+        }
+
+        /**
+         * the reported quota usage and the adapted concurrency by pool name
+         *
+         * @return
+         */
+        public Map<String, AdaptiveLimiter.Stats> usageStats() {
+
+            Map<String, AdaptiveLimiter.Stats> stats = Maps.newTreeMap();
+            clients.forEach((name, client) -> {
+                if (client.getAdaptiveLimiter() != null) {
+                    stats.put(name, client.getAdaptiveLimiter().stats());
+                }
+            });
+            return stats;
+        }
+
+        /**
+         * the latency percentiles, the hedge rate and the hedge win rate by pool name
+         *
+         * @return
+         */
+        public Map<String, LatencyTracker.Stats> latencyStats() {
+
+            Map<String, LatencyTracker.Stats> stats = Maps.newTreeMap();
+            clients.forEach((name, client) -> stats.put(name, client.getLatencyTracker().stats()));
+            return stats;
+        }
+
+        /**
+         * conditional get hit/miss/bytes-saved by pool name
+         *
+         * @return
+         */
+        public Map<String, ValidatorCache.Stats> validatorStats() {
+
+            Map<String, ValidatorCache.Stats> stats = Maps.newTreeMap();
+            clients.forEach((name, client) -> stats.put(name, client.getValidatorCache().stats()));
+            return stats;
+        }
     }
 
     public static class DefaultWebClient {
 
+        private static final long MAX_THROTTLED_RETRIES = 2L;
+
+        /**
+         * a longer pause is not waited for in the request, the limiter still keeps it
+         */
+        private static final Duration MAX_RETRY_AFTER = Duration.ofSeconds(30L);
+
+        private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1L);
+
         private final WebClient webClient;
 
+        /**
+         * built once with the content-type interceptor, instead of mutate() per request
+         */
+        private final WebClient fixedWebClient;
+
+        private final ValidatorCache validatorCache = new ValidatorCache();
+
+        private final RateLimiter rateLimiter;
+
+        /**
+         * null : the exchange reports no usage
+         */
+        private final AdaptiveLimiter adaptiveLimiter;
+
+        private final LatencyTracker latencyTracker = new LatencyTracker();
+
+        private final boolean hedge;
+
         public DefaultWebClient(WebClient client) {
 
+            this(client, new RateLimiter(0, 1000L), null, false);
+        }
+
+        public DefaultWebClient(WebClient client, RateLimiter rateLimiter, AdaptiveLimiter adaptiveLimiter,
+            boolean hedge) {
+
             this.webClient = client;
+            this.fixedWebClient = client.mutate().filter(contentTypeInterceptor()).build();
+            this.rateLimiter = rateLimiter;
+            this.adaptiveLimiter = adaptiveLimiter;
+            this.hedge = hedge;
+        }
+
+        public ValidatorCache getValidatorCache() {
+            return validatorCache;
+        }
+
+        public RateLimiter getRateLimiter() {
+            return rateLimiter;
+        }
+
+        public AdaptiveLimiter getAdaptiveLimiter() {
+            return adaptiveLimiter;
+        }
+
+        public LatencyTracker getLatencyTracker() {
+            return latencyTracker;
+        }
+
+        /**
+         * record the latency of the request: the wire time of its last attempt, without the limiter waits and
+         * the retries. a cancelled request records the time it was sent for, so a request lost to its hedge
+         * still counts with at least the hedge delay. the failed requests are not recorded.
+         *
+         * @param request builds a new request per subscription on the attempt clock
+         * @return
+         */
+        private Mono<ResponseEntity<String>> timed(Function<Attempt, Mono<ResponseEntity<String>>> request) {
+
+            return Mono.defer(() -> timed(request, new Attempt()));
+        }
+
+        private Mono<ResponseEntity<String>> timed(Function<Attempt, Mono<ResponseEntity<String>>> request,
+            Attempt attempt) {
+
+            return request.apply(attempt).doFinally(signal -> {
+                long millis = attempt.elapsedMillis();
+                if (millis >= 0 && signal != SignalType.ON_ERROR) {
+                    latencyTracker.record(millis);
+                }
+            });
+        }
+
+        /**
+         * hedged get: when the request is not done within the p95 latency after it was sent and the rate budget
+         * has tokens left, a second identical request is sent, the first response wins and the other one is
+         * cancelled. while the hedge is in flight the error of the first request is held, the request only fails
+         * once both failed, with the error of the first one.
+         * only the first request is recorded, the hedge would lower the p95 it is triggered by.
+         *
+         * @param request builds a new request per subscription on the attempt clock
+         * @param weight  the tokens of the hedge
+         * @return
+         */
+        private Mono<ResponseEntity<String>> hedged(Function<Attempt, Mono<ResponseEntity<String>>> request,
+            int weight) {
+
+            return Mono.defer(() -> {
+                final long p95 = latencyTracker.getP95();
+                if (!hedge || p95 <= 0) {
+                    return timed(request);
+                }
+                final Attempt attempt = new Attempt();
+                final Hedge race = new Hedge();
+                Mono<ResponseEntity<String>> second =
+                    attempt.sent().then(Mono.delay(Duration.ofMillis(p95))).flatMap(t -> {
+                        if (!rateLimiter.hasAvailable(weight) || !race.start()) {
+                            return Mono.never();
+                        }
+                        latencyTracker.onHedge();
+                        return request.apply(null).doOnNext(r -> latencyTracker.onHedgeWin())
+                            .onErrorResume(race::hedgeFailed);
+                    });
+                return Mono.firstWithSignal(timed(request, attempt).onErrorResume(race::firstFailed), second);
+            });
+        }
+
+        /**
+         * send the request through the rate limiter. the transport errors are retried with backoff,
+         * a 429/418 pauses the limiter for Retry-After and is retried a bounded number of times,
+         * so a throttled exchange does not receive more requests.
+         *
+         * @param spec
+         * @return
+         */
+        private Mono<ClientResponse> exchange(WebClient.RequestHeadersSpec<?> spec) {
+            return exchange(spec, null, 1);
+        }
+
+        /**
+         * @param spec
+         * @param attempt the clock restarted when an attempt is sent, null : not timed
+         * @param weight  the tokens of the request
+         * @return
+         */
+        private Mono<ClientResponse> exchange(WebClient.RequestHeadersSpec<?> spec, Attempt attempt, int weight) {
+
+            return send(spec, attempt, weight).retryWhen(Retry.backoff(3L, Duration.ofMillis(1013L))).flatMap(m -> {
+                    int status = m.rawStatusCode();
+                    if (status == HttpStatus.TOO_MANY_REQUESTS.value() || status == HttpStatus.I_AM_A_TEAPOT.value()) {
+                        Duration retryAfter = retryAfter(m.headers().asHttpHeaders());
+                        rateLimiter.pause(retryAfter);
+                        return m.releaseBody()
+                            .then(Mono.<ClientResponse>error(new RateLimitedException(status, retryAfter)));
+                    }
+                    return Mono.just(m);
+                }).retryWhen(Retry.max(MAX_THROTTLED_RETRIES).filter(
+                        e -> e instanceof RateLimitedException
+                            && ((RateLimitedException)e).getRetryAfter().compareTo(MAX_RETRY_AFTER) <= 0)
+                    .onRetryExhaustedThrow((retry, signal) -> signal.failure()));
+        }
+
+        /**
+         * one attempt: wait for the tokens and, when the exchange reports its usage, for a slot of the adapted
+         * concurrency, the slot is held until the response headers arrive.
+         *
+         * @param spec
+         * @param attempt
+         * @param weight
+         * @return
+         */
+        private Mono<ClientResponse> send(WebClient.RequestHeadersSpec<?> spec, Attempt attempt, int weight) {
+
+            Mono<ClientResponse> sent = attempt == null ? spec.exchange() : Mono.defer(() -> {
+                attempt.start();
+                return spec.exchange();
+            });
+            if (adaptiveLimiter == null) {
+                return rateLimiter.acquire(weight).then(sent);
+            }
+            return Mono.usingWhen(adaptiveLimiter.acquire(),
+                slot -> rateLimiter.acquire(weight).then(sent)
+                    .doOnNext(m -> adaptiveLimiter.onResponse(m.headers().asHttpHeaders())),
+                slot -> Mono.fromRunnable(adaptiveLimiter::release));
+        }
+
+        /**
+         * Retry-After: seconds or http-date
+         *
+         * @param headers
+         * @return
+         */
+        static Duration retryAfter(HttpHeaders headers) {
+
+            String value = StringUtils.trim(headers.getFirst(HttpHeaders.RETRY_AFTER));
+            if (StringUtils.isNumeric(value)) {
+                return Duration.ofSeconds(Long.parseLong(value));
+            }
+            if (StringUtils.isNotBlank(value)) {
+                try {
+                    long date = headers.getFirstDate(HttpHeaders.RETRY_AFTER);
+                    return Duration.ofMillis(Math.max(date - System.currentTimeMillis(), 0L));
+                } catch (IllegalArgumentException e) {
+                    // nothing
+                }
+            }
+            return DEFAULT_RETRY_AFTER;
+        }
+
+        /**
+         * open the connections to the host ahead of the first task: dns, tcp and tls are paid here.
+         * the requests are sent at the same time so the pool has to open one connection per request,
+         * they bypass the rate limiter and any response status is fine.
+         *
+         * @param baseUrl     scheme://host[:port]
+         * @param connections
+         * @return the count of the opened connections
+         */
+        public Mono<Long> warmUp(String baseUrl, int connections) {
+
+            Preconditions.checkArgument(StringUtils.isNotBlank(baseUrl) && connections > 0);
+            return Flux.range(0, connections).flatMap(
+                    i -> webClient.head().uri(baseUrl).exchange().flatMap(m -> m.releaseBody().thenReturn(true))
+                        .onErrorResume(e -> Mono.just(false)), connections).filter(Boolean::booleanValue).count();
         }
 
         /**
@@ -194,10 +665,99 @@ public class AsynHttpClient {
         public Mono<ResponseEntity<String>> get(String url, String queryString, Consumer<HttpHeaders> header) {
 
             Preconditions.checkArgument(StringUtils.isNotBlank(url));
-            return webClient.mutate().defaultRequest(requestHeadersSpec -> requestHeadersSpec.headers(header))
-                .baseUrl(url + StringUtils.defaultString(queryString, StringUtils.EMPTY))
-                .filter(contentTypeInterceptor()).build().get().exchange()
-                .retryWhen(Retry.backoff(3L, Duration.ofMillis(1013L))).flatMap(m -> m.toEntity(String.class));
+            final String uri = url + StringUtils.defaultString(queryString, StringUtils.EMPTY);
+            return hedged(attempt -> exchange(fixedWebClient.get().uri(uri).headers(header), attempt, 1)
+                .flatMap(m -> m.toEntity(String.class)), 1);
+        }
+
+        /**
+         * conditional get, sends the validators of the cached response,
+         * a 304 is returned with the cached body and keeps the status NOT_MODIFIED.
+         * a 304 of an entry dropped in the meantime has no body to return, the request is sent again without
+         * the validators.
+         *
+         * @param url
+         * @param header
+         * @return
+         */
+        public Mono<ResponseEntity<String>> getConditional(String url, Consumer<HttpHeaders> header) {
+
+            Preconditions.checkArgument(StringUtils.isNotBlank(url));
+            return exchange(
+                fixedWebClient.get().uri(url).headers(header).headers(h -> validatorCache.applyValidators(url, h)))
+                .flatMap(m -> m.toEntity(String.class)).flatMap(r -> {
+                    if (validatorCache.isAnswerable(url, r)) {
+                        return Mono.just(validatorCache.onResponse(url, r));
+                    }
+                    return exchange(fixedWebClient.get().uri(url).headers(header))
+                        .flatMap(m -> m.toEntity(String.class)).map(o -> validatorCache.onResponse(url, o));
+                });
+        }
+
+        /**
+         * streaming get, the body is emitted as DataBuffers and never aggregated in memory,
+         * the caller must release the buffers.
+         *
+         * @param url
+         * @param header
+         * @return
+         */
+        public Flux<DataBuffer> getDataBuffers(String url, Consumer<HttpHeaders> header) {
+
+            Preconditions.checkArgument(StringUtils.isNotBlank(url));
+            return exchange(fixedWebClient.get().uri(url).headers(header)).flatMapMany(m -> {
+                    if (m.statusCode().isError()) {
+                        return m.createException().flatMapMany(e -> Flux.<DataBuffer>error(e));
+                    }
+                    return m.bodyToFlux(DataBuffer.class);
+                });
+        }
+
+        /**
+         * execute a precompiled request template, only the parameters are filled in per request.
+         *
+         * @param template
+         * @param params
+         * @return
+         */
+        public Mono<ResponseEntity<String>> get(RequestTemplate template, Object... params) {
+
+            return execute(template, null, params);
+        }
+
+        /**
+         * execute a precompiled request template with body
+         *
+         * @param template
+         * @param bodyValue
+         * @param params
+         * @return
+         */
+        public Mono<ResponseEntity<String>> execute(RequestTemplate template, Object bodyValue, Object... params) {
+
+            Preconditions.checkNotNull(template);
+            return executeUri(template, template.expand(params), bodyValue);
+        }
+
+        /**
+         * execute a precompiled request template on the expanded uri
+         *
+         * @param template
+         * @param uri
+         * @param bodyValue
+         * @return
+         */
+        public Mono<ResponseEntity<String>> executeUri(RequestTemplate template, URI uri, Object bodyValue) {
+
+            final WebClient client = template.isFixContentType() ? fixedWebClient : webClient;
+            if (bodyValue == null && template.getMethod() == HttpMethod.GET) {
+                return hedged(attempt -> exchange(client.get().uri(uri).headers(h -> h.addAll(template.getHeaders())),
+                    attempt, template.getWeight()).flatMap(m -> m.toEntity(String.class)), template.getWeight());
+            }
+            WebClient.RequestBodySpec spec =
+                client.method(template.getMethod()).uri(uri).headers(h -> h.addAll(template.getHeaders()));
+            return exchange(bodyValue == null ? spec : spec.bodyValue(bodyValue), null, template.getWeight())
+                .flatMap(m -> m.toEntity(String.class));
         }
 
         /**
@@ -213,9 +773,7 @@ public class AsynHttpClient {
             Preconditions.checkArgument(StringUtils.isNotBlank(url));
             UriComponentsBuilder builder = UriComponentsBuilder.fromUriString(url).queryParams(queryString);
             UriComponents uriComponents = builder.build().encode();
-            return webClient.mutate().filter(contentTypeInterceptor()).build().get().uri(uriComponents.toUri())
-                .exchange().retryWhen(Retry.backoff(3L, Duration.ofMillis(1013L)))
-                .flatMap(m -> m.toEntity(String.class));
+            return exchange(fixedWebClient.get().uri(uriComponents.toUri())).flatMap(m -> m.toEntity(String.class));
         }
 
         /**
@@ -282,9 +840,8 @@ public class AsynHttpClient {
          */
         public Mono<ResponseEntity<String>> post(String url, Object bodyValue, Consumer<HttpHeaders> header) {
 
-            return webClient.mutate().defaultRequest(requestHeadersSpec -> requestHeadersSpec.headers(header))
-                .baseUrl(url).build().post().bodyValue(bodyValue).exchange()
-                .retryWhen(Retry.backoff(3L, Duration.ofMillis(1013L))).flatMap(m -> m.toEntity(String.class));
+            return exchange(webClient.post().uri(url).headers(header).bodyValue(bodyValue))
+                .flatMap(m -> m.toEntity(String.class));
         }
 
         /**
@@ -314,4 +871,70 @@ public class AsynHttpClient {
             });
         }
     }
+
+    /**
+     * the errors of a hedged request: the error of the first request waits for the hedge in flight
+     */
+    private static class Hedge {
+
+        private boolean inFlight;
+
+        private Throwable firstError;
+
+        /**
+         * @return false : the first request already failed, no hedge
+         */
+        synchronized boolean start() {
+
+            if (firstError != null) {
+                return false;
+            }
+            inFlight = true;
+            return true;
+        }
+
+        synchronized <T> Mono<T> firstFailed(Throwable e) {
+
+            firstError = e;
+            return inFlight ? Mono.never() : Mono.error(e);
+        }
+
+        synchronized <T> Mono<T> hedgeFailed(Throwable e) {
+
+            inFlight = false;
+            return firstError != null ? Mono.error(firstError) : Mono.never();
+        }
+    }
+
+    /**
+     * the clock of a request, restarted by every attempt once its tokens are acquired
+     */
+    private static class Attempt {
+
+        private final Sinks.Empty<Void> sent = Sinks.empty();
+
+        private volatile long start;
+
+        void start() {
+
+            start = System.nanoTime();
+            sent.tryEmitEmpty();
+        }
+
+        /**
+         * @return completes when the first attempt is sent
+         */
+        Mono<Void> sent() {
+            return sent.asMono();
+        }
+
+        /**
+         * @return the millis of the last attempt, -1 : not sent
+         */
+        long elapsedMillis() {
+
+            long started = start;
+            return started == 0L ? -1L : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        }
+    }
 }
@@ -0,0 +1,282 @@
+package com.crypto.currency.common.http;
+
+import com.crypto.currency.common.exception.BusinessException;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * @author Panzi
+ * @Description The bounded buffer between a websocket and its slow subscriber: a fixed size queue of its own drained
+ * as the subscriber requests, with an overflow strategy, so a bursty feed drops or conflates messages instead of
+ * growing the heap.
+ * LATEST queues the keys only and keeps the last value of every key, the subscriber gets the latest one.
+ * @date 2022/6/27 21:05
+ */
+public class BoundedSink<T> {
+
+    public enum Overflow {
+
+        /**
+         * drop the oldest buffered message
+         */
+        DROP_OLDEST,
+
+        /**
+         * keep only the latest message of every key
+         */
+        LATEST,
+
+        /**
+         * fail the subscriber
+         */
+        ERROR
+    }
+
+    private final int capacity;
+    private final Overflow overflow;
+    private final Function<T, String> keyMapper;
+
+    /**
+     * the buffered messages, the keys for LATEST. guarded by this
+     */
+    private final ArrayDeque<Object> queue;
+    private final Map<String, T> latest;
+
+    private FluxSink<T> subscriber;
+    private boolean completed;
+    private Throwable error;
+    private boolean cancelled;
+
+    /**
+     * the drain loop runs on one thread at a time, the others leave their work to it
+     */
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private final LongAdder emitted = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder conflated = new LongAdder();
+    private final LongAdder overflows = new LongAdder();
+
+    /**
+     * @param capacity  the buffered messages, the buffered keys for LATEST
+     * @param overflow
+     * @param keyMapper the conflation key of LATEST, null : one key for all
+     */
+    public BoundedSink(int capacity, Overflow overflow, Function<T, String> keyMapper) {
+
+        Preconditions.checkArgument(capacity > 0 && overflow != null);
+        this.capacity = capacity;
+        this.overflow = overflow;
+        this.keyMapper = keyMapper != null ? keyMapper : v -> "";
+        this.queue = new ArrayDeque<>(capacity);
+        this.latest = overflow == Overflow.LATEST ? Maps.newHashMap() : null;
+    }
+
+    /**
+     * the messages as requested, one subscriber only
+     *
+     * @return
+     */
+    public Flux<T> asFlux() {
+
+        return Flux.create(sink -> {
+            synchronized (this) {
+                if (subscriber != null || cancelled) {
+                    sink.error(new IllegalStateException("The buffer allows one subscriber only."));
+                    return;
+                }
+                subscriber = sink;
+            }
+            sink.onRequest(n -> drain());
+            sink.onDispose(this::cancel);
+            drain();
+        }, FluxSink.OverflowStrategy.ERROR);
+    }
+
+    /**
+     * buffer the message, never blocks
+     *
+     * @param value
+     */
+    public void emit(T value) {
+
+        synchronized (this) {
+            if (completed || cancelled) {
+                return;
+            }
+            emitted.increment();
+            if (latest != null) {
+                String key = Objects.toString(keyMapper.apply(value), "");
+                if (latest.put(key, value) != null) {
+                    // the key is still queued, the subscriber gets this value instead
+                    conflated.increment();
+                    return;
+                }
+                offer(key);
+            } else {
+                offer(value);
+            }
+        }
+        drain();
+    }
+
+    private void offer(Object value) {
+
+        if (queue.size() < capacity) {
+            queue.offer(value);
+            return;
+        }
+        overflows.increment();
+        if (overflow == Overflow.ERROR) {
+            error = new BusinessException("The buffer of " + capacity + " messages overflowed.");
+            completed = true;
+            queue.clear();
+            return;
+        }
+        Object oldest = queue.poll();
+        dropped.increment();
+        if (latest != null) {
+            latest.remove((String)oldest);
+        }
+        queue.offer(value);
+    }
+
+    /**
+     * @return the next message, null : none buffered
+     */
+    @SuppressWarnings("unchecked")
+    private synchronized T poll() {
+
+        Object value;
+        while ((value = queue.poll()) != null) {
+            if (latest == null) {
+                return (T)value;
+            }
+            T last = latest.remove((String)value);
+            if (last != null) {
+                return last;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * emit the buffered messages up to the demand, then the terminal signal once the buffer is empty.
+     * an overflow error is signaled at once, the buffer is dropped.
+     */
+    private void drain() {
+
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        for (; ; ) {
+            FluxSink<T> sink;
+            synchronized (this) {
+                sink = subscriber;
+            }
+            if (sink != null) {
+                T value;
+                while (sink.requestedFromDownstream() > 0 && (value = poll()) != null) {
+                    sink.next(value);
+                }
+                Throwable failure;
+                boolean done;
+                synchronized (this) {
+                    failure = error;
+                    done = completed && queue.isEmpty();
+                }
+                if (failure != null || done) {
+                    synchronized (this) {
+                        subscriber = null;
+                    }
+                    if (failure != null) {
+                        sink.error(failure);
+                    } else {
+                        sink.complete();
+                    }
+                }
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private synchronized void cancel() {
+
+        cancelled = true;
+        subscriber = null;
+        queue.clear();
+        if (latest != null) {
+            latest.clear();
+        }
+    }
+
+    public void complete() {
+
+        synchronized (this) {
+            completed = true;
+        }
+        drain();
+    }
+
+    public void error(Throwable throwable) {
+
+        synchronized (this) {
+            if (error == null) {
+                error = throwable;
+            }
+            completed = true;
+            queue.clear();
+        }
+        drain();
+    }
+
+    public Stats stats() {
+
+        int buffered;
+        synchronized (this) {
+            buffered = queue.size();
+        }
+        return new Stats(overflow, capacity, buffered, emitted.sum(), dropped.sum(), conflated.sum(),
+            overflows.sum());
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private Overflow overflow;
+
+        private int capacity;
+
+        private int buffered;
+
+        private long emitted;
+
+        /**
+         * the messages dropped by DROP_OLDEST or LATEST on overflow
+         */
+        private long dropped;
+
+        /**
+         * the messages replaced by a newer one of the same key
+         */
+        private long conflated;
+
+        private long overflows;
+    }
+}
@@ -0,0 +1,93 @@
+package com.crypto.currency.common.http;
+
+import com.crypto.currency.common.exception.CallNotPermittedException;
+import com.google.common.base.Preconditions;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Panzi
+ * @Description Cap the calls of a resource running at once, the calls over the cap fail at once instead of waiting,
+ * so a slow exchange holds at most `maxConcurrent` threads and workers.
+ * @date 2022/7/12 21:50
+ */
+public class Bulkhead {
+
+    private final String name;
+
+    /**
+     * 0 : no limit
+     */
+    private final int maxConcurrent;
+
+    private final AtomicInteger active = new AtomicInteger();
+
+    private volatile int peak;
+
+    private final LongAdder permitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(String name, int maxConcurrent) {
+
+        Preconditions.checkArgument(maxConcurrent >= 0);
+        this.name = name;
+        this.maxConcurrent = maxConcurrent;
+    }
+
+    /**
+     * run the call if there is room, else fail with CallNotPermittedException
+     *
+     * @param call
+     * @return
+     */
+    public <T> Mono<T> protect(Mono<T> call) {
+
+        return Mono.defer(() -> {
+            if (!tryAcquire()) {
+                rejected.increment();
+                return Mono.error(new CallNotPermittedException(name, "bulkhead full, " + maxConcurrent + " running"));
+            }
+            permitted.increment();
+            return call.doFinally(signal -> active.decrementAndGet());
+        });
+    }
+
+    private boolean tryAcquire() {
+
+        for (; ; ) {
+            int current = active.get();
+            if (maxConcurrent > 0 && current >= maxConcurrent) {
+                return false;
+            }
+            if (active.compareAndSet(current, current + 1)) {
+                if (current + 1 > peak) {
+                    peak = current + 1;
+                }
+                return true;
+            }
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(maxConcurrent, active.get(), peak, permitted.sum(), rejected.sum());
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private int maxConcurrent;
+
+        private int active;
+
+        private int peak;
+
+        private long permitted;
+
+        private long rejected;
+    }
+}
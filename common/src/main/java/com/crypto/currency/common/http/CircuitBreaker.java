@@ -0,0 +1,307 @@
+package com.crypto.currency.common.http;
+
+import com.crypto.currency.common.exception.CallNotPermittedException;
+import com.google.common.base.Preconditions;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Panzi
+ * @Description Count based circuit breaker: the outcomes of the last `window` calls are kept, the breaker opens when
+ * the failure rate or the slow call rate reaches its threshold and rejects every call for the open wait. then a few
+ * trial calls are let through(half-open), they close the breaker or open it again.
+ * the outcomes of the calls started before a transition are not counted.
+ * @date 2022/7/12 21:30
+ */
+@Slf4j
+public class CircuitBreaker {
+
+    public enum State {
+
+        CLOSED,
+
+        /**
+         * every call is rejected until the open wait is over
+         */
+        OPEN,
+
+        /**
+         * only the trial calls are let through
+         */
+        HALF_OPEN
+    }
+
+    private static final byte FAILURE = 1;
+    private static final byte SLOW = 2;
+
+    private final String name;
+    private final Settings settings;
+    private final long slowCallNanos;
+
+    private State state = State.CLOSED;
+
+    /**
+     * the calls started in another generation are not counted
+     */
+    private long generation;
+
+    private final byte[] outcomes;
+    private int index;
+    private int recorded;
+    private int failures;
+    private int slowCalls;
+
+    private long openedAt;
+
+    private int trialsStarted;
+    private int trials;
+    private int trialFailures;
+    private int trialSlowCalls;
+
+    private final LongAdder successCount = new LongAdder();
+    private final LongAdder failureCount = new LongAdder();
+    private final LongAdder slowCount = new LongAdder();
+    private final LongAdder rejectedCount = new LongAdder();
+    private final LongAdder openedCount = new LongAdder();
+
+    public CircuitBreaker(String name, Settings settings) {
+
+        Preconditions.checkArgument(settings.window > 0 && settings.minimumCalls > 0 && settings.halfOpenCalls > 0);
+        this.name = name;
+        this.settings = settings;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(settings.slowCall);
+        this.outcomes = new byte[settings.window];
+    }
+
+    /**
+     * run the call if the breaker permits it, else fail with CallNotPermittedException.
+     * an error is a failure, a value or an empty completion is a success, a cancel is not counted.
+     *
+     * @param call
+     * @return
+     */
+    public <T> Mono<T> protect(Mono<T> call) {
+
+        return Mono.defer(() -> {
+            final long permit = acquire();
+            if (permit < 0) {
+                return Mono.error(new CallNotPermittedException(name, "circuit breaker " + getState()));
+            }
+            final long start = System.nanoTime();
+            final AtomicBoolean done = new AtomicBoolean(false);
+            return call.doOnNext(v -> {
+                if (done.compareAndSet(false, true)) {
+                    record(permit, false, System.nanoTime() - start);
+                }
+            }).doOnError(e -> {
+                if (done.compareAndSet(false, true)) {
+                    record(permit, true, System.nanoTime() - start);
+                }
+            }).doFinally(signal -> {
+                if (done.compareAndSet(false, true)) {
+                    if (signal == SignalType.ON_COMPLETE) {
+                        record(permit, false, System.nanoTime() - start);
+                    } else {
+                        release(permit);
+                    }
+                }
+            });
+        });
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return the generation of the permit, -1 : rejected
+     */
+    synchronized long acquire() {
+
+        if (state == State.OPEN) {
+            if (System.currentTimeMillis() - openedAt < settings.openWait) {
+                rejectedCount.increment();
+                return -1;
+            }
+            transition(State.HALF_OPEN);
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted >= settings.halfOpenCalls) {
+                rejectedCount.increment();
+                return -1;
+            }
+            trialsStarted++;
+        }
+        return generation;
+    }
+
+    synchronized void record(long permit, boolean failure, long nanos) {
+
+        boolean slow = nanos >= slowCallNanos;
+        if (failure) {
+            failureCount.increment();
+        } else {
+            successCount.increment();
+        }
+        if (slow) {
+            slowCount.increment();
+        }
+        if (permit != generation) {
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            trials++;
+            trialFailures += failure ? 1 : 0;
+            trialSlowCalls += slow ? 1 : 0;
+            if (trials >= settings.halfOpenCalls) {
+                transition(isTripped(trials, trialFailures, trialSlowCalls) ? State.OPEN : State.CLOSED);
+            }
+            return;
+        }
+
+        byte outcome = (byte)((failure ? FAILURE : 0) | (slow ? SLOW : 0));
+        if (recorded == outcomes.length) {
+            failures -= outcomes[index] & FAILURE;
+            slowCalls -= (outcomes[index] & SLOW) >> 1;
+        } else {
+            recorded++;
+        }
+        outcomes[index] = outcome;
+        index = (index + 1) % outcomes.length;
+        failures += failure ? 1 : 0;
+        slowCalls += slow ? 1 : 0;
+        if (recorded >= settings.minimumCalls && isTripped(recorded, failures, slowCalls)) {
+            transition(State.OPEN);
+        }
+    }
+
+    /**
+     * a cancelled trial call frees its place
+     *
+     * @param permit
+     */
+    synchronized void release(long permit) {
+
+        if (permit == generation && state == State.HALF_OPEN && trialsStarted > trials) {
+            trialsStarted--;
+        }
+    }
+
+    private boolean isTripped(int calls, int failures, int slowCalls) {
+
+        return failures * 100.0 >= settings.failureRateThreshold * calls
+            || slowCalls * 100.0 >= settings.slowCallRateThreshold * calls;
+    }
+
+    private void transition(State to) {
+
+        log.warn("The circuit breaker {} is {}, was {}: {} failures and {} slow calls of {}.", name, to, state,
+            state == State.HALF_OPEN ? trialFailures : failures, state == State.HALF_OPEN ? trialSlowCalls : slowCalls,
+            state == State.HALF_OPEN ? trials : recorded);
+        state = to;
+        generation++;
+        index = 0;
+        recorded = 0;
+        failures = 0;
+        slowCalls = 0;
+        trialsStarted = 0;
+        trials = 0;
+        trialFailures = 0;
+        trialSlowCalls = 0;
+        if (to == State.OPEN) {
+            openedAt = System.currentTimeMillis();
+            openedCount.increment();
+        }
+    }
+
+    public synchronized Stats stats() {
+
+        double failureRate = recorded == 0 ? 0 : failures * 100.0 / recorded;
+        double slowCallRate = recorded == 0 ? 0 : slowCalls * 100.0 / recorded;
+        long openLeft =
+            state == State.OPEN ? Math.max(settings.openWait - (System.currentTimeMillis() - openedAt), 0L) : 0L;
+        return new Stats(state, recorded, failureRate, slowCallRate, openLeft, successCount.sum(), failureCount.sum(),
+            slowCount.sum(), rejectedCount.sum(), openedCount.sum());
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Settings {
+
+        /**
+         * the last calls the rates are computed on
+         */
+        private int window;
+
+        /**
+         * the calls recorded before the rates are checked
+         */
+        private int minimumCalls;
+
+        /**
+         * percentage of the failed calls opening the breaker
+         */
+        private double failureRateThreshold;
+
+        /**
+         * percentage of the slow calls opening the breaker
+         */
+        private double slowCallRateThreshold;
+
+        /**
+         * millis, a call longer than it is slow
+         */
+        private long slowCall;
+
+        /**
+         * millis the breaker stays open
+         */
+        private long openWait;
+
+        /**
+         * the trial calls of the half-open breaker
+         */
+        private int halfOpenCalls;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private State state;
+
+        /**
+         * the calls in the window
+         */
+        private int calls;
+
+        private double failureRate;
+
+        private double slowCallRate;
+
+        /**
+         * millis left before the trial calls
+         */
+        private long openLeft;
+
+        private long successes;
+
+        private long failures;
+
+        private long slowCalls;
+
+        private long rejected;
+
+        /**
+         * the times the breaker opened
+         */
+        private long opened;
+    }
+}
@@ -0,0 +1,66 @@
+package com.crypto.currency.common.http;
+
+import com.google.common.collect.Maps;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import reactor.netty.resources.ConnectionPoolMetrics;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.net.SocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * @author Panzi
+ * @Description gauges(active, idle, pending) of the named connection pools
+ * @date 2022/6/12 21:05
+ */
+public class ConnectionPoolGauges implements ConnectionProvider.MeterRegistrar {
+
+    /**
+     * poolName -> (pool id + remote address) -> metrics, reactor netty creates one pool per remote address.
+     */
+    private final ConcurrentMap<String, ConcurrentMap<String, ConnectionPoolMetrics>> pools =
+        Maps.newConcurrentMap();
+
+    @Override
+    public void registerMetrics(String poolName, String id, SocketAddress remoteAddress,
+        ConnectionPoolMetrics metrics) {
+
+        pools.computeIfAbsent(poolName, k -> Maps.newConcurrentMap()).put(id + remoteAddress, metrics);
+    }
+
+    /**
+     * the current gauges of all pools
+     *
+     * @return
+     */
+    public Map<String, PoolGauge> snapshot() {
+
+        Map<String, PoolGauge> result = Maps.newTreeMap();
+        for (Map.Entry<String, ConcurrentMap<String, ConnectionPoolMetrics>> pool : pools.entrySet()) {
+            PoolGauge gauge = new PoolGauge();
+            for (ConnectionPoolMetrics metrics : pool.getValue().values()) {
+                gauge.active += metrics.acquiredSize();
+                gauge.idle += metrics.idleSize();
+                gauge.pending += metrics.pendingAcquireSize();
+                gauge.allocated += metrics.allocatedSize();
+            }
+            gauge.remotes = pool.getValue().size();
+            result.put(pool.getKey(), gauge);
+        }
+        return result;
+    }
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class PoolGauge {
+        private int active;
+        private int idle;
+        private int pending;
+        private int allocated;
+        private int remotes;
+    }
+}
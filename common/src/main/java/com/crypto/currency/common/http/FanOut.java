@@ -0,0 +1,105 @@
+package com.crypto.currency.common.http;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import lombok.Getter;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * @author Panzi
+ * @Description Run one request per item with a concurrency cap, a timeout per request and a deadline for all of them.
+ * the failed and timed out requests are skipped, the result holds what finished before the deadline.
+ * @date 2022/6/28 21:10
+ */
+public class FanOut {
+
+    private final int concurrency;
+    private final Duration requestTimeout;
+    private final Duration deadline;
+
+    /**
+     * @param concurrency    the requests in flight
+     * @param requestTimeout the timeout of one request
+     * @param deadline       the time of all the requests, the unfinished ones are cancelled
+     */
+    public FanOut(int concurrency, Duration requestTimeout, Duration deadline) {
+
+        Preconditions.checkArgument(concurrency > 0 && requestTimeout != null && deadline != null);
+        this.concurrency = concurrency;
+        this.requestTimeout = requestTimeout;
+        this.deadline = deadline;
+    }
+
+    /**
+     * call every item, never fails
+     *
+     * @param items
+     * @param call
+     * @return the values finished before the deadline and the counters of the others
+     */
+    public <T, R> Mono<Result<R>> execute(Collection<T> items, Function<T, Mono<R>> call) {
+
+        return Mono.defer(() -> {
+            final Result<R> result = new Result<>(items.size());
+            return Flux.fromIterable(items).flatMap(item -> Mono.defer(() -> call.apply(item)).timeout(requestTimeout)
+                .onErrorResume(e -> {
+                    if (e instanceof TimeoutException) {
+                        result.timedOut.incrementAndGet();
+                    } else {
+                        result.failed.incrementAndGet();
+                    }
+                    return Mono.empty();
+                }), concurrency).take(deadline).doOnNext(result.values::add).then(Mono.just(result));
+        });
+    }
+
+    /**
+     * the partial result
+     */
+    public static class Result<R> {
+
+        @Getter
+        private final int total;
+
+        @Getter
+        private final List<R> values;
+
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger timedOut = new AtomicInteger();
+
+        Result(int total) {
+
+            this.total = total;
+            this.values = Lists.newArrayListWithCapacity(total);
+        }
+
+        public int getFailed() {
+            return failed.get();
+        }
+
+        public int getTimedOut() {
+            return timedOut.get();
+        }
+
+        /**
+         * @return the requests not finished before the deadline
+         */
+        public int getSkipped() {
+            return total - values.size() - failed.get() - timedOut.get();
+        }
+
+        @Override
+        public String toString() {
+            return "[fan-out " + values.size() + "/" + total + " ok, " + getFailed() + " failed, " + getTimedOut()
+                + " timed out, " + getSkipped() + " skipped]";
+        }
+    }
+}
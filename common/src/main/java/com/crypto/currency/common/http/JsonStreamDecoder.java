@@ -0,0 +1,117 @@
+package com.crypto.currency.common.http;
+
+import com.crypto.currency.common.exception.BusinessException;
+import com.crypto.currency.common.utils.JacksonUtils;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+
+/**
+ * @author Panzi
+ * @Description Feed the response DataBuffers into a non-blocking jackson parser,
+ * the body never exists as a whole String or tree.
+ * @date 2022/6/16 22:05
+ */
+public class JsonStreamDecoder {
+
+    private JsonStreamDecoder() {
+
+    }
+
+    /**
+     * decode the buffers token by token
+     *
+     * @param buffers
+     * @param handler
+     * @return the count of the decoded bytes
+     */
+    public static Mono<Long> decode(Flux<DataBuffer> buffers, JsonTokenHandler handler) {
+
+        return Mono.using(() -> new State(handler),
+                state -> buffers.doOnNext(state::feed).then(Mono.fromCallable(state::finish)), State::close)
+            .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
+
+    /**
+     * the callback of the json tokens
+     */
+    @FunctionalInterface
+    public interface JsonTokenHandler {
+
+        /**
+         * called for every token, the parser is positioned on the token.
+         *
+         * @param parser
+         * @param token
+         * @throws IOException
+         */
+        void onToken(JsonParser parser, JsonToken token) throws IOException;
+    }
+
+    private static class State {
+
+        private final JsonTokenHandler handler;
+        private final JsonParser parser;
+        private final ByteArrayFeeder feeder;
+        /**
+         * reused between the chunks, the parser consumes a chunk fully before the next one is fed
+         */
+        private byte[] chunk = new byte[8192];
+        private long bytes;
+
+        State(JsonTokenHandler handler) throws IOException {
+
+            this.handler = handler;
+            this.parser = JacksonUtils.getMapper().getFactory().createNonBlockingByteArrayParser();
+            this.feeder = (ByteArrayFeeder)parser.getNonBlockingInputFeeder();
+        }
+
+        void feed(DataBuffer buffer) {
+
+            try {
+                int length = buffer.readableByteCount();
+                if (chunk.length < length) {
+                    chunk = new byte[Math.max(length, chunk.length * 2)];
+                }
+                buffer.read(chunk, 0, length);
+                bytes += length;
+                feeder.feedInput(chunk, 0, length);
+                drain();
+            } catch (IOException e) {
+                BusinessException.throwIfUnchecked(e);
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        }
+
+        long finish() throws IOException {
+
+            feeder.endOfInput();
+            drain();
+            return bytes;
+        }
+
+        private void drain() throws IOException {
+
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                handler.onToken(parser, token);
+            }
+        }
+
+        void close() {
+
+            try {
+                parser.close();
+            } catch (IOException e) {
+                // nothing
+            }
+        }
+    }
+}
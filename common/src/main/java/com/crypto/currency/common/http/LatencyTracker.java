@@ -0,0 +1,117 @@
+package com.crypto.currency.common.http;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Panzi
+ * @Description The latency of the last requests of an exchange in a ring buffer, the p95 drives the hedged requests.
+ * the percentiles are recomputed every REFRESH samples instead of per request.
+ * @date 2022/6/22 21:05
+ */
+public class LatencyTracker {
+
+    private static final int SIZE = 256;
+    private static final int REFRESH = 32;
+    /**
+     * no hedging before enough samples
+     */
+    private static final int MIN_SAMPLES = 20;
+
+    private final AtomicLongArray samples = new AtomicLongArray(SIZE);
+    private final AtomicInteger count = new AtomicInteger();
+
+    private volatile long p50;
+    private volatile long p95;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+
+    /**
+     * record the latency of a completed request
+     *
+     * @param millis
+     */
+    public void record(long millis) {
+
+        requests.increment();
+        int n = count.getAndIncrement();
+        samples.set(n & (SIZE - 1), Math.max(millis, 1L));
+        if (n + 1 == MIN_SAMPLES || (n + 1) % REFRESH == 0) {
+            refresh();
+        }
+    }
+
+    /**
+     * @return the p95 millis, 0 : not enough samples
+     */
+    public long getP95() {
+        return p95;
+    }
+
+    public void onHedge() {
+        hedges.increment();
+    }
+
+    public void onHedgeWin() {
+        hedgeWins.increment();
+    }
+
+    private void refresh() {
+
+        long[] values = new long[SIZE];
+        int size = 0;
+        for (int i = 0; i < SIZE; i++) {
+            long value = samples.get(i);
+            if (value > 0) {
+                values[size++] = value;
+            }
+        }
+        if (size < MIN_SAMPLES) {
+            return;
+        }
+        Arrays.sort(values, 0, size);
+        p50 = values[(int)Math.ceil(size * 0.5D) - 1];
+        p95 = values[(int)Math.ceil(size * 0.95D) - 1];
+    }
+
+    public Stats stats() {
+
+        long total = requests.sum();
+        long hedged = hedges.sum();
+        long won = hedgeWins.sum();
+        return new Stats(p50, p95, total, hedged, won, total == 0 ? 0D : (double)hedged / total,
+            hedged == 0 ? 0D : (double)won / hedged);
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private long p50;
+
+        private long p95;
+
+        private long requests;
+
+        private long hedges;
+
+        private long hedgeWins;
+
+        /**
+         * hedges / requests
+         */
+        private double hedgeRate;
+
+        /**
+         * hedgeWins / hedges
+         */
+        private double winRate;
+    }
+}
@@ -0,0 +1,193 @@
+package com.crypto.currency.common.http;
+
+import com.google.common.base.Preconditions;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * @author Panzi
+ * @Description The indexed snapshot of the slow changing metadata of an exchange, eg: symbol -> instrument info.
+ * fresh until the ttl, reloaded in the background once it is older than the refresh-ahead age,
+ * the stale snapshot is still served up to the max stale age while it revalidates. only one load at a time.
+ * the refresh-ahead is scheduled after every load, so a cache in use is reloaded before it expires.
+ * it is skipped when the snapshot was not read since the last load: an unused cache is not polled,
+ * its next read refreshes it as before.
+ * @date 2022/6/29 21:15
+ */
+@Slf4j
+public class MetadataCache<T> {
+
+    /**
+     * millis between two background loads after a failure
+     */
+    private static final long RETRY_INTERVAL = 10000L;
+
+    private final String name;
+    private final Supplier<Mono<T>> loader;
+    private final long ttl;
+    private final long refreshAhead;
+    private final long maxStale;
+
+    private volatile T value;
+    private volatile long loadedAt;
+    private volatile long lastFailure;
+    private volatile boolean readSinceLoad;
+
+    private volatile Disposable scheduledRefresh;
+
+    private final AtomicReference<Mono<T>> loading = new AtomicReference<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    /**
+     * @param name
+     * @param loader       loads and indexes the metadata
+     * @param ttl          millis
+     * @param refreshAhead millis, the age starting a background load
+     * @param maxStale     millis, the age the snapshot is not served any more
+     */
+    public MetadataCache(String name, Supplier<Mono<T>> loader, long ttl, long refreshAhead, long maxStale) {
+
+        Preconditions.checkArgument(loader != null && refreshAhead <= ttl && ttl <= maxStale);
+        this.name = name;
+        this.loader = loader;
+        this.ttl = ttl;
+        this.refreshAhead = refreshAhead;
+        this.maxStale = maxStale;
+    }
+
+    /**
+     * the current snapshot, loaded first if there is none or it is older than max stale
+     *
+     * @return
+     */
+    public Mono<T> get() {
+
+        return Mono.defer(() -> {
+            T current = value;
+            long age = System.currentTimeMillis() - loadedAt;
+            if (current == null || age >= maxStale) {
+                return load();
+            }
+            readSinceLoad = true;
+            if (age >= refreshAhead) {
+                refreshInBackground();
+            }
+            if (age < ttl) {
+                hits.increment();
+            } else {
+                staleHits.increment();
+            }
+            return Mono.just(current);
+        });
+    }
+
+    private void refreshInBackground() {
+
+        if (loading.get() != null || System.currentTimeMillis() - lastFailure < RETRY_INTERVAL) {
+            return;
+        }
+        refresh();
+    }
+
+    /**
+     * the scheduled refresh-ahead of a snapshot read since its load
+     */
+    private void refreshIfRead() {
+
+        if (readSinceLoad) {
+            refresh();
+        }
+    }
+
+    private void scheduleRefresh(long delay) {
+
+        Disposable previous = scheduledRefresh;
+        if (previous != null) {
+            previous.dispose();
+        }
+        scheduledRefresh = Schedulers.parallel().schedule(this::refreshIfRead, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void refresh() {
+
+        load().subscribeOn(Schedulers.boundedElastic())
+            .subscribe(v -> log.debug("Refreshed the metadata {}.", name),
+                e -> log.warn("Refresh the metadata {} failed: {}", name, e.getMessage()));
+    }
+
+    /**
+     * join the load in flight or start one
+     *
+     * @return
+     */
+    private Mono<T> load() {
+
+        for (; ; ) {
+            Mono<T> current = loading.get();
+            if (current != null) {
+                return current;
+            }
+            final AtomicReference<Mono<T>> self = new AtomicReference<>();
+            Mono<T> mono = Mono.defer(loader).doOnNext(v -> {
+                value = v;
+                loadedAt = System.currentTimeMillis();
+                readSinceLoad = false;
+                loads.increment();
+                scheduleRefresh(refreshAhead);
+            }).doOnError(e -> {
+                lastFailure = System.currentTimeMillis();
+                failures.increment();
+                if (value != null) {
+                    scheduleRefresh(RETRY_INTERVAL);
+                }
+            }).doFinally(s -> loading.compareAndSet(self.get(), null)).cache();
+            self.set(mono);
+            if (loading.compareAndSet(null, mono)) {
+                return mono;
+            }
+        }
+    }
+
+    public Stats stats() {
+
+        long at = loadedAt;
+        return new Stats(value != null, at == 0 ? -1L : System.currentTimeMillis() - at, hits.sum(), staleHits.sum(),
+            loads.sum(), failures.sum());
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private boolean loaded;
+
+        /**
+         * millis, -1 : never loaded
+         */
+        private long age;
+
+        private long hits;
+
+        /**
+         * served after the ttl while revalidating
+         */
+        private long staleHits;
+
+        private long loads;
+
+        private long failures;
+    }
+}
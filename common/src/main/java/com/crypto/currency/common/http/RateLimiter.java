@@ -0,0 +1,196 @@
+package com.crypto.currency.common.http;
+
+import com.google.common.base.Preconditions;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Panzi
+ * @Description Non-blocking token bucket: the bucket holds at most `permits` tokens and refills `permits` per
+ * `interval`. A request takes its tokens at once and, when the bucket is in debt, waits on a timer instead of a
+ * thread, so the requests queue on the reactive pipeline in the order they arrived.
+ * @date 2022/6/20 21:10
+ */
+public class RateLimiter {
+
+    private final int permits;
+
+    private final long intervalNanos;
+
+    /**
+     * tokens per nano
+     */
+    private final double rate;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    /**
+     * the remote asked us to stop until then, eg: Retry-After
+     */
+    private long pausedUntil;
+
+    private final LongAdder acquired = new LongAdder();
+    private final LongAdder delayed = new LongAdder();
+    private final LongAdder throttled = new LongAdder();
+
+    /**
+     * @param permits  the requests(or weight) per interval, 0 : unlimited, only the pauses apply
+     * @param interval millis
+     */
+    public RateLimiter(int permits, long interval) {
+
+        Preconditions.checkArgument(permits >= 0 && interval > 0);
+        this.permits = permits;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(interval);
+        this.rate = (double)permits / intervalNanos;
+        this.tokens = permits;
+        this.lastRefill = System.nanoTime();
+        this.pausedUntil = lastRefill;
+    }
+
+    /**
+     * wait until the tokens are available
+     *
+     * @param weight the tokens of the request
+     * @return the waited nanos
+     */
+    public Mono<Long> acquire(int weight) {
+
+        return Mono.defer(() -> {
+            long wait = reserve(weight);
+            if (wait <= 0) {
+                return Mono.just(0L);
+            }
+            delayed.increment();
+            return Mono.delay(Duration.ofNanos(wait)).thenReturn(wait);
+        });
+    }
+
+    /**
+     * whether a request of the weight would be sent without waiting, the tokens are not taken
+     *
+     * @param weight
+     * @return
+     */
+    public synchronized boolean hasAvailable(int weight) {
+
+        long now = System.nanoTime();
+        if (pausedUntil - now > 0) {
+            return false;
+        }
+        if (permits == 0) {
+            return true;
+        }
+        refill(now);
+        return tokens >= weight;
+    }
+
+    /**
+     * take the tokens now, the bucket can go into debt
+     *
+     * @param weight
+     * @return the nanos to wait before the request can be sent
+     */
+    synchronized long reserve(int weight) {
+
+        acquired.increment();
+        long now = System.nanoTime();
+        long wait = Math.max(pausedUntil - now, 0);
+        if (permits == 0) {
+            return wait;
+        }
+        refill(now);
+        tokens -= Math.min(weight, permits);
+        if (tokens < 0) {
+            // the debt is paid from the last refill, which is in the future while paused
+            wait = Math.max(wait, Math.max(lastRefill - now, 0) + (long)Math.ceil(-tokens / rate));
+        }
+        return wait;
+    }
+
+    /**
+     * stop all the requests for a while and empty the bucket, eg: 429 with Retry-After
+     *
+     * @param duration
+     */
+    public synchronized void pause(Duration duration) {
+
+        throttled.increment();
+        long now = System.nanoTime();
+        long until = now + duration.toNanos();
+        if (until - pausedUntil > 0) {
+            pausedUntil = until;
+        }
+        if (permits > 0) {
+            // the tokens refill from the end of the pause
+            refill(now);
+            tokens = Math.min(tokens, 0);
+            if (pausedUntil - lastRefill > 0) {
+                lastRefill = pausedUntil;
+            }
+        }
+    }
+
+    /**
+     * the exchange reports less quota left than the bucket holds, eg: other clients on the same ip,
+     * or the requests weigh more than one token.
+     *
+     * @param available the tokens the exchange still allows, can be negative
+     */
+    public synchronized void limitTo(long available) {
+
+        if (permits == 0) {
+            return;
+        }
+        refill(System.nanoTime());
+        if (tokens > available) {
+            tokens = Math.max(available, -permits);
+        }
+    }
+
+    private void refill(long now) {
+
+        if (now - lastRefill > 0) {
+            tokens = Math.min(permits, tokens + (now - lastRefill) * rate);
+            lastRefill = now;
+        }
+    }
+
+    public synchronized Stats stats() {
+
+        long now = System.nanoTime();
+        double available = permits == 0 ? 0 : Math.min(permits, tokens + Math.max(now - lastRefill, 0L) * rate);
+        return new Stats(permits, TimeUnit.NANOSECONDS.toMillis(intervalNanos), available,
+            TimeUnit.NANOSECONDS.toMillis(Math.max(pausedUntil - now, 0)), acquired.sum(), delayed.sum(),
+            throttled.sum());
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private int permits;
+
+        private long interval;
+
+        private double available;
+
+        /**
+         * millis left of the pause
+         */
+        private long paused;
+
+        private long acquired;
+
+        private long delayed;
+
+        private long throttled;
+    }
+}
@@ -0,0 +1,166 @@
+package com.crypto.currency.common.http;
+
+import com.crypto.currency.common.utils.StringUtils;
+import com.google.common.base.Preconditions;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+
+import java.net.URI;
+import java.util.function.Consumer;
+
+/**
+ * @author Panzi
+ * @Description A precompiled request: the url pattern is split once, the headers are built once,
+ * a request only fills in the parameters.
+ * @date 2022/6/14 21:10
+ */
+public class RequestTemplate {
+
+    private static final String PLACEHOLDER = "%s";
+
+    private final String name;
+    private final HttpMethod method;
+    private final String[] segments;
+    private final HttpHeaders headers;
+    private final boolean fixContentType;
+    private final int weight;
+
+    private RequestTemplate(Builder builder) {
+
+        this.name = builder.name;
+        this.method = builder.method;
+        this.segments = StringUtils.splitByWholeSeparatorPreserveAllTokens(builder.urlPattern, PLACEHOLDER);
+        this.headers = HttpHeaders.readOnlyHttpHeaders(builder.headers);
+        this.fixContentType = builder.fixContentType;
+        this.weight = builder.weight;
+    }
+
+    public static Builder builder(String name, String urlPattern) {
+
+        return new Builder(name, urlPattern);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public HttpMethod getMethod() {
+        return method;
+    }
+
+    public HttpHeaders getHeaders() {
+        return headers;
+    }
+
+    public boolean isFixContentType() {
+        return fixContentType;
+    }
+
+    /**
+     * the tokens a request takes from the rate budget, eg: the endpoint weight of binance
+     *
+     * @return
+     */
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * the count of %s in the url pattern
+     *
+     * @return
+     */
+    public int getParameterCount() {
+        return segments.length - 1;
+    }
+
+    /**
+     * fill in the parameters, the parameters must already be url-safe.
+     *
+     * @param params
+     * @return
+     */
+    public String expandToString(Object... params) {
+
+        int count = getParameterCount();
+        Preconditions.checkArgument((params == null ? 0 : params.length) == count,
+            "The template %s needs %s parameters.", name, count);
+        if (count == 0) {
+            return segments[0];
+        }
+        StringBuilder url = new StringBuilder(128).append(segments[0]);
+        for (int i = 0; i < count; i++) {
+            url.append(params[i]).append(segments[i + 1]);
+        }
+        return url.toString();
+    }
+
+    /**
+     * fill in the parameters
+     *
+     * @param params
+     * @return
+     */
+    public URI expand(Object... params) {
+
+        return URI.create(expandToString(params));
+    }
+
+    public static class Builder {
+
+        private final String name;
+        private final String urlPattern;
+        private HttpMethod method = HttpMethod.GET;
+        private final HttpHeaders headers = new HttpHeaders();
+        private boolean fixContentType = true;
+        private int weight = 1;
+
+        private Builder(String name, String urlPattern) {
+
+            Preconditions.checkArgument(StringUtils.isNoneBlank(name, urlPattern));
+            this.name = name;
+            this.urlPattern = urlPattern;
+        }
+
+        public Builder method(HttpMethod method) {
+
+            this.method = method;
+            return this;
+        }
+
+        public Builder header(String name, String value) {
+
+            this.headers.add(name, value);
+            return this;
+        }
+
+        public Builder headers(Consumer<HttpHeaders> headers) {
+
+            headers.accept(this.headers);
+            return this;
+        }
+
+        /**
+         * rewrite the irregular content-type of the response, eg: text-plain
+         *
+         * @param fixContentType
+         * @return
+         */
+        public Builder fixContentType(boolean fixContentType) {
+
+            this.fixContentType = fixContentType;
+            return this;
+        }
+
+        public Builder weight(int weight) {
+
+            Preconditions.checkArgument(weight > 0);
+            this.weight = weight;
+            return this;
+        }
+
+        public RequestTemplate build() {
+            return new RequestTemplate(this);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.crypto.currency.common.http;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * @author Panzi
+ * @Description the registry of the request templates, the adapters register their endpoints once.
+ * @date 2022/6/14 21:40
+ */
+public class RequestTemplates {
+
+    private static final ConcurrentMap<String, RequestTemplate> TEMPLATES = Maps.newConcurrentMap();
+
+    private RequestTemplates() {
+
+    }
+
+    /**
+     * register template,the first registration of the name wins
+     *
+     * @param template
+     * @return the registered template
+     */
+    public static RequestTemplate register(RequestTemplate template) {
+
+        Preconditions.checkNotNull(template);
+        RequestTemplate exist = TEMPLATES.putIfAbsent(template.getName(), template);
+        return exist == null ? template : exist;
+    }
+
+    /**
+     * get the template, or build and register it when absent
+     *
+     * @param name
+     * @param supplier
+     * @return
+     */
+    public static RequestTemplate getOrRegister(String name, Supplier<RequestTemplate> supplier) {
+
+        RequestTemplate template = TEMPLATES.get(name);
+        if (template != null) {
+            return template;
+        }
+        return TEMPLATES.computeIfAbsent(name, k -> supplier.get());
+    }
+
+    /**
+     * get template by name
+     *
+     * @param name
+     * @return null if not registered
+     */
+    public static RequestTemplate get(String name) {
+        return TEMPLATES.get(name);
+    }
+}
@@ -2,14 +2,15 @@ package com.crypto.currency.common.http;
 
 import com.crypto.currency.common.utils.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.web.reactive.socket.WebSocketMessage;
 import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
 import org.springframework.web.reactive.socket.client.WebSocketClient;
-import reactor.core.publisher.EmitterProcessor;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 import reactor.netty.http.client.HttpClient;
 
 import java.net.URI;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -39,21 +40,8 @@ public class RxWebSocketClient {
      */
     public Flux<String> send(String endpoint, List<String> bodys) {
 
-        final EmitterProcessor<String> output = EmitterProcessor.create();
-        Mono<Void> wsc = null;
-        if (CollectionUtils.isEmpty(bodys)) {
-            wsc = webSocketClient.execute(URI.create(endpoint),
-                session -> session.receive().limitRequest(1).map(r -> r.getPayloadAsText()).subscribeWith(output)
-                    .then());
-        } else {
-            final int limit = bodys.size();
-            wsc = webSocketClient.execute(URI.create(endpoint),
-                session -> session.send(Flux.fromStream(bodys.stream()).map(session::textMessage))
-                    .thenMany(session.receive().limitRequest(limit)).map(r -> r.getPayloadAsText())
-                    .subscribeWith(output).then());
-        }
-        final Mono<Void> webSocket = wsc;
-        return output.doOnSubscribe(s -> webSocket.subscribe());
+        final List<String> messages = CollectionUtils.isEmpty(bodys) ? Collections.emptyList() : bodys;
+        return exchange(endpoint, messages, Math.max(messages.size(), 1));
     }
 
     /**
@@ -65,19 +53,29 @@ public class RxWebSocketClient {
      */
     public Mono<String> send(String endpoint, String body) {
 
-        final EmitterProcessor<String> output = EmitterProcessor.create();
-        Mono<Void> wsc = null;
-        if (StringUtils.isBlank(body)) {
-            wsc = webSocketClient.execute(URI.create(endpoint),
-                session -> session.receive().limitRequest(1).map(r -> r.getPayloadAsText()).subscribeWith(output)
-                    .then());
-        } else {
-            wsc = webSocketClient.execute(URI.create(endpoint),
-                session -> session.send(Mono.just(body).map(session::textMessage))
-                    .thenMany(session.receive().limitRequest(1)).map(r -> r.getPayloadAsText()).subscribeWith(output)
-                    .then());
-        }
-        final Mono<Void> webSocket = wsc;
-        return output.doOnSubscribe(s -> webSocket.subscribe()).single();
+        final List<String> messages = StringUtils.isBlank(body) ? Collections.emptyList() : List.of(body);
+        return exchange(endpoint, messages, 1).single();
+    }
+
+    /**
+     * send the messages and receive limit messages, the buffer holds exactly the expected messages.
+     * the connection lives as long as the subscription, a cancel closes the socket.
+     *
+     * @param endpoint
+     * @param messages
+     * @param limit
+     * @return
+     */
+    private Flux<String> exchange(String endpoint, List<String> messages, int limit) {
+
+        return Flux.defer(() -> {
+            final BoundedSink<String> output = new BoundedSink<>(limit, BoundedSink.Overflow.ERROR, null);
+            final Mono<Void> webSocket = webSocketClient.execute(URI.create(endpoint),
+                session -> session.send(Flux.fromIterable(messages).map(session::textMessage))
+                    .thenMany(session.receive().limitRequest(limit)).map(WebSocketMessage::getPayloadAsText)
+                    .doOnNext(output::emit).then());
+            return Flux.usingWhen(Mono.fromSupplier(() -> webSocket.subscribe(null, output::error, output::complete)),
+                connection -> output.asFlux(), connection -> Mono.fromRunnable(connection::dispose));
+        });
     }
 }
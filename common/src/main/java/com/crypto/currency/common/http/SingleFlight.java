@@ -0,0 +1,72 @@
+package com.crypto.currency.common.http;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * @author Panzi
+ * @Description Coalesce the concurrent identical requests: the callers of the same key share one in-flight Mono,
+ * the result is kept for a short ttl after completion, an error is never kept.
+ * @date 2022/6/19 21:10
+ */
+public class SingleFlight<T> {
+
+    private final ConcurrentMap<String, Mono<T>> flights = Maps.newConcurrentMap();
+
+    private final Duration ttl;
+
+    /**
+     * @param ttlMillis how long a completed result is shared, 0 : only share the in-flight request
+     */
+    public SingleFlight(long ttlMillis) {
+
+        Preconditions.checkArgument(ttlMillis >= 0);
+        this.ttl = Duration.ofMillis(ttlMillis);
+    }
+
+    /**
+     * join the in-flight request of the key, or start it
+     *
+     * @param key
+     * @param source subscribed once per flight
+     * @return
+     */
+    public Mono<T> execute(String key, Supplier<Mono<T>> source) {
+
+        return Mono.defer(() -> flights.computeIfAbsent(key, k -> newFlight(k, source)));
+    }
+
+    /**
+     * the count of the in-flight or still shared keys
+     *
+     * @return
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    private Mono<T> newFlight(String key, Supplier<Mono<T>> source) {
+
+        final AtomicReference<Mono<T>> self = new AtomicReference<>();
+        Mono<T> flight = Mono.defer(source).doOnSuccess(r -> expire(key, self.get()))
+            .doOnError(e -> flights.remove(key, self.get())).doOnCancel(() -> flights.remove(key, self.get()))
+            .cache();
+        self.set(flight);
+        return flight;
+    }
+
+    private void expire(String key, Mono<T> flight) {
+
+        if (ttl.isZero()) {
+            flights.remove(key, flight);
+        } else {
+            Mono.delay(ttl).subscribe(t -> flights.remove(key, flight));
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.crypto.currency.common.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.http.HttpContent;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import reactor.netty.NettyPipeline;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * @author Panzi
+ * @Description Count the inbound bytes of a connection pool on both sides of the http codec:
+ * the wire bytes before the codec (compressed body and headers) and the body bytes after the decompressor.
+ * the handlers are added to the channel pipeline directly so they stay for the life of the pooled connection.
+ * @date 2022/6/23 21:15
+ */
+public class TrafficCounter {
+
+    private static final String WIRE_COUNTER = "trafficWireCounter";
+    private static final String BODY_COUNTER = "trafficBodyCounter";
+
+    private final LongAdder wireBytes = new LongAdder();
+    private final LongAdder bodyBytes = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+
+    private final ChannelHandler wireCounter = new Counter(wireBytes, false);
+    private final ChannelHandler bodyCounter = new Counter(bodyBytes, true);
+
+    /**
+     * add the counters to a new connection
+     *
+     * @param channel
+     */
+    public void install(Channel channel) {
+
+        ChannelPipeline pipeline = channel.pipeline();
+        if (pipeline.get(NettyPipeline.HttpCodec) == null || pipeline.get(WIRE_COUNTER) != null) {
+            return;
+        }
+        connections.increment();
+        pipeline.addBefore(NettyPipeline.HttpCodec, WIRE_COUNTER, wireCounter);
+        pipeline.addAfter(pipeline.get(NettyPipeline.HttpDecompressor) != null ? NettyPipeline.HttpDecompressor :
+            NettyPipeline.HttpCodec, BODY_COUNTER, bodyCounter);
+    }
+
+    public Stats stats() {
+
+        long wire = wireBytes.sum();
+        long body = bodyBytes.sum();
+        return new Stats(wire, body, body == 0 ? 0D : 1D - (double)wire / body, connections.sum());
+    }
+
+    @ChannelHandler.Sharable
+    private static class Counter extends ChannelInboundHandlerAdapter {
+
+        private final LongAdder bytes;
+        private final boolean decoded;
+
+        Counter(LongAdder bytes, boolean decoded) {
+
+            this.bytes = bytes;
+            this.decoded = decoded;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+
+            if (decoded) {
+                if (msg instanceof HttpContent) {
+                    bytes.add(((HttpContent)msg).content().readableBytes());
+                }
+            } else if (msg instanceof ByteBuf) {
+                bytes.add(((ByteBuf)msg).readableBytes());
+            }
+            super.channelRead(ctx, msg);
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        /**
+         * the received bytes on the wire, headers included
+         */
+        private long wireBytes;
+
+        /**
+         * the received body bytes after decompression
+         */
+        private long bodyBytes;
+
+        /**
+         * 1 - wire / body
+         */
+        private double savedRatio;
+
+        private long connections;
+    }
+}
@@ -0,0 +1,156 @@
+package com.crypto.currency.common.http;
+
+import com.crypto.currency.common.utils.StringUtils;
+import com.google.common.collect.Maps;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * @author Panzi
+ * @Description HTTP validator cache: keep the ETag/Last-Modified and the body of the response by url,
+ * the next request sends If-None-Match/If-Modified-Since and a 304 reuses the cached body and its parsed object.
+ * @date 2022/6/18 20:30
+ */
+public class ValidatorCache {
+
+    /**
+     * the urls without validators are never stored, the metadata urls of an exchange are few
+     */
+    private static final int MAX_ENTRIES = 256;
+
+    private final ConcurrentMap<String, Entry> entries = Maps.newConcurrentMap();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder bytesSaved = new LongAdder();
+
+    /**
+     * add the conditional headers of the cached response
+     *
+     * @param url
+     * @param headers
+     */
+    public void applyValidators(String url, HttpHeaders headers) {
+
+        Entry entry = entries.get(url);
+        if (entry == null) {
+            return;
+        }
+        if (entry.etag != null) {
+            headers.set(HttpHeaders.IF_NONE_MATCH, entry.etag);
+        }
+        if (entry.lastModified != null) {
+            headers.set(HttpHeaders.IF_MODIFIED_SINCE, entry.lastModified);
+        }
+    }
+
+    /**
+     * a 304 can only be answered with the cached body: false when the entry was dropped after the validators
+     * were sent, the request has to be sent again without them.
+     *
+     * @param url
+     * @param response
+     * @return
+     */
+    public boolean isAnswerable(String url, ResponseEntity<String> response) {
+        return response.getStatusCode() != HttpStatus.NOT_MODIFIED || entries.containsKey(url);
+    }
+
+    /**
+     * store the validators of a 200, or replace the empty body of a 304 with the cached body
+     *
+     * @param url
+     * @param response
+     * @return the response, the status stays 304 when the cached body is returned
+     */
+    public ResponseEntity<String> onResponse(String url, ResponseEntity<String> response) {
+
+        Entry entry = entries.get(url);
+        if (response.getStatusCode() == HttpStatus.NOT_MODIFIED && entry != null) {
+            hits.increment();
+            bytesSaved.add(entry.length);
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(response.getHeaders()).body(entry.body);
+        }
+        misses.increment();
+        if (!response.getStatusCode().is2xxSuccessful() || response.getBody() == null) {
+            return response;
+        }
+        HttpHeaders headers = response.getHeaders();
+        String etag = headers.getETag();
+        String lastModified = headers.getFirst(HttpHeaders.LAST_MODIFIED);
+        if (StringUtils.isAllBlank(etag, lastModified)) {
+            entries.remove(url);
+        } else if (entry != null || entries.size() < MAX_ENTRIES) {
+            long length = headers.getContentLength();
+            entries.put(url, new Entry(StringUtils.trimToNull(etag), StringUtils.trimToNull(lastModified),
+                response.getBody(), length >= 0 ? length : response.getBody().length()));
+        }
+        return response;
+    }
+
+    /**
+     * parse the body once per version, a body returned by this cache maps to the same parsed object
+     *
+     * @param url
+     * @param body
+     * @param parser
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T parse(String url, String body, Function<String, T> parser) {
+
+        Entry entry = entries.get(url);
+        if (entry == null || entry.body != body) {
+            return parser.apply(body);
+        }
+        Object parsed = entry.parsed;
+        if (parsed == null) {
+            parsed = parser.apply(body);
+            entry.parsed = parsed;
+        }
+        return (T)parsed;
+    }
+
+    public Stats stats() {
+
+        return new Stats(hits.sum(), misses.sum(), bytesSaved.sum(), entries.size());
+    }
+
+    private static class Entry {
+
+        private final String etag;
+        private final String lastModified;
+        private final String body;
+        private final long length;
+        private volatile Object parsed;
+
+        Entry(String etag, String lastModified, String body, long length) {
+
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.body = body;
+            this.length = length;
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Stats {
+
+        private long hits;
+
+        private long misses;
+
+        private long bytesSaved;
+
+        private int entries;
+    }
+}
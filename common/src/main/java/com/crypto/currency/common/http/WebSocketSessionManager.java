@@ -0,0 +1,541 @@
+package com.crypto.currency.common.http;
+
+import com.crypto.currency.common.exception.BusinessException;
+import com.crypto.currency.common.utils.JacksonUtils;
+import com.crypto.currency.common.utils.StringUtils;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Maps;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.web.reactive.socket.WebSocketMessage;
+import org.springframework.web.reactive.socket.WebSocketSession;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import org.springframework.web.reactive.socket.client.WebSocketClient;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.http.client.HttpClient;
+import reactor.util.concurrent.Queues;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * @author Panzi
+ * @Description Keep one long-lived WebSocket connection per endpoint and multiplex the requests and the
+ * subscriptions over it. the inbound messages are routed by a key (request id or channel), the connection is
+ * kept alive with heartbeats and reconnected with backoff, the subscriptions are sent again after a reconnect.
+ * @date 2022/6/25 20:40
+ */
+@Slf4j
+public class WebSocketSessionManager {
+
+    private final WebSocketClient webSocketClient;
+
+    private final ConcurrentMap<String, ManagedSession> sessions = Maps.newConcurrentMap();
+
+    private WebSocketSessionManager(WebSocketClient webSocketClient) {
+
+        this.webSocketClient = webSocketClient;
+    }
+
+    public static WebSocketSessionManager create(HttpClient httpClient) {
+
+        return new WebSocketSessionManager(new ReactorNettyWebSocketClient(httpClient));
+    }
+
+    /**
+     * the session of the endpoint with the default options: routed by the top level "id", "channel" or "stream"
+     *
+     * @param endpoint
+     * @return
+     */
+    public ManagedSession session(String endpoint) {
+
+        return session(endpoint, SessionOptions.builder().build());
+    }
+
+    /**
+     * the session of the endpoint, the options of the first call win
+     *
+     * @param endpoint
+     * @param options
+     * @return
+     */
+    public ManagedSession session(String endpoint, SessionOptions options) {
+
+        Preconditions.checkArgument(StringUtils.isNotBlank(endpoint));
+        return sessions.computeIfAbsent(endpoint, e -> new ManagedSession(URI.create(e), options));
+    }
+
+    public Map<String, SessionStats> stats() {
+
+        Map<String, SessionStats> stats = Maps.newTreeMap();
+        sessions.forEach((endpoint, session) -> stats.put(endpoint, session.stats()));
+        return stats;
+    }
+
+    public void close() {
+
+        sessions.values().forEach(ManagedSession::close);
+        sessions.clear();
+    }
+
+    /**
+     * route by the first of the top level fields present, only the top level of an object is read.
+     *
+     * @param names
+     * @return the text of the field, null if none
+     */
+    public static Function<String, String> topLevelFields(String... names) {
+
+        return message -> {
+            if (StringUtils.isBlank(message) || message.charAt(0) != '{') {
+                return null;
+            }
+            String[] values = new String[names.length];
+            try (JsonParser parser = JacksonUtils.getMapper().getFactory().createParser(message)) {
+                int depth = 0;
+                JsonToken token;
+                while ((token = parser.nextToken()) != null) {
+                    if (token.isStructStart()) {
+                        depth++;
+                    } else if (token.isStructEnd()) {
+                        depth--;
+                    } else if (depth == 1 && token == JsonToken.FIELD_NAME) {
+                        int index = indexOf(names, parser.getCurrentName());
+                        JsonToken value = parser.nextToken();
+                        if (value.isStructStart()) {
+                            parser.skipChildren();
+                        } else if (index >= 0 && value != JsonToken.VALUE_NULL) {
+                            values[index] = parser.getText();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                return null;
+            }
+            for (String value : values) {
+                if (value != null) {
+                    return value;
+                }
+            }
+            return null;
+        };
+    }
+
+    private static int indexOf(String[] names, String name) {
+
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Data
+    @lombok.Builder
+    public static class SessionOptions {
+
+        /**
+         * the routing key of a message: the request id or the channel, null : not routed
+         */
+        @lombok.Builder.Default
+        private Function<String, String> router = topLevelFields("id", "channel", "stream");
+
+        /**
+         * the interval of the heartbeats
+         */
+        @lombok.Builder.Default
+        private Duration heartbeat = Duration.ofSeconds(10L);
+
+        /**
+         * the text heartbeat, eg: {"event":"ping"}, null : a ping frame
+         */
+        private String heartbeatMessage;
+
+        /**
+         * the reply of the messages the exchange expects an answer to, eg: heartbeat requests. null : no reply
+         */
+        private Function<String, String> autoReply;
+
+        @lombok.Builder.Default
+        private Duration requestTimeout = Duration.ofSeconds(30L);
+
+        /**
+         * the buffered messages per subscription
+         */
+        @lombok.Builder.Default
+        private int bufferSize = 256;
+
+        /**
+         * what a subscription does when its subscribers fall behind
+         */
+        @lombok.Builder.Default
+        private BoundedSink.Overflow overflow = BoundedSink.Overflow.DROP_OLDEST;
+
+        /**
+         * the conflation key of LATEST, eg: the symbol of a ticker. null : only the last message of the channel
+         */
+        private Function<String, String> conflationKey;
+    }
+
+    /**
+     * one endpoint, one connection
+     */
+    public class ManagedSession {
+
+        private final URI uri;
+        private final SessionOptions options;
+
+        private final ConcurrentMap<String, Sinks.One<String>> requests = Maps.newConcurrentMap();
+        /**
+         * the requests without id, answered by the next message without a routing key
+         */
+        private final Queue<Sinks.One<String>> anonymous = new ConcurrentLinkedQueue<>();
+        private final ConcurrentMap<String, Subscription> subscriptions = Maps.newConcurrentMap();
+        /**
+         * the messages sent while disconnected
+         */
+        private final Queue<String> backlog = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private volatile boolean closed;
+        private volatile Sinks.Many<String> outbound;
+        private volatile Disposable connection;
+
+        private final LongAdder connects = new LongAdder();
+        private final LongAdder received = new LongAdder();
+        private final LongAdder unrouted = new LongAdder();
+        /**
+         * the buffer counters of the closed subscriptions
+         */
+        private final LongAdder dropped = new LongAdder();
+        private final LongAdder conflated = new LongAdder();
+
+        ManagedSession(URI uri, SessionOptions options) {
+
+            this.uri = uri;
+            this.options = options;
+        }
+
+        /**
+         * send the message and wait for the answer: routed by the id of the message,
+         * or the next message without a routing key when the message has no id.
+         *
+         * @param body
+         * @return
+         */
+        public Mono<String> request(String body) {
+
+            return Mono.defer(() -> {
+                final String id = options.getRouter().apply(body);
+                final Sinks.One<String> answer = Sinks.one();
+                if (id != null) {
+                    requests.put(id, answer);
+                } else {
+                    anonymous.offer(answer);
+                }
+                start();
+                if (StringUtils.isNotBlank(body)) {
+                    emit(body);
+                }
+                return answer.asMono().timeout(options.getRequestTimeout()).doFinally(s -> {
+                    if (id != null) {
+                        requests.remove(id, answer);
+                    } else {
+                        anonymous.remove(answer);
+                    }
+                });
+            });
+        }
+
+        /**
+         * subscribe the channel, the subscribers of a channel share it and the last one cancelling unsubscribes.
+         *
+         * @param channel            the routing key of the channel messages
+         * @param subscribeMessage   sent now and after every reconnect
+         * @param unsubscribeMessage null : nothing is sent
+         * @return
+         */
+        public Flux<String> subscribe(String channel, String subscribeMessage, String unsubscribeMessage) {
+            return subscribe(channel, subscribeMessage, unsubscribeMessage, options.getOverflow());
+        }
+
+        /**
+         * subscribe the channel with its own overflow strategy, eg: ERROR for the diffs none of which can be lost.
+         *
+         * @param channel
+         * @param subscribeMessage
+         * @param unsubscribeMessage
+         * @param overflow           the strategy of the channel's buffer
+         * @return
+         */
+        public Flux<String> subscribe(String channel, String subscribeMessage, String unsubscribeMessage,
+            BoundedSink.Overflow overflow) {
+
+            return Flux.defer(() -> {
+                final AtomicBoolean created = new AtomicBoolean(false);
+                // the count and the removal change under the lock of the channel, so a new subscriber never
+                // joins a subscription being removed
+                final Subscription subscription = subscriptions.compute(channel, (k, current) -> {
+                    Subscription result = current;
+                    if (result == null) {
+                        created.set(true);
+                        result = new Subscription(subscribeMessage, unsubscribeMessage, new BoundedSink<>(
+                            options.getBufferSize(), overflow, options.getConflationKey()));
+                    }
+                    result.refs++;
+                    return result;
+                });
+                start();
+                if (created.get() && outbound != null) {
+                    emit(subscribeMessage);
+                }
+                return subscription.flux.doFinally(s -> {
+                    final AtomicBoolean removed = new AtomicBoolean(false);
+                    subscriptions.computeIfPresent(channel, (k, current) -> {
+                        if (current != subscription || --current.refs > 0) {
+                            return current;
+                        }
+                        removed.set(true);
+                        return null;
+                    });
+                    if (removed.get()) {
+                        if (unsubscribeMessage != null) {
+                            emit(unsubscribeMessage);
+                        }
+                        subscription.sink.complete();
+                        BoundedSink.Stats stats = subscription.sink.stats();
+                        dropped.add(stats.getDropped());
+                        conflated.add(stats.getConflated());
+                    }
+                });
+            });
+        }
+
+        /**
+         * send without waiting for an answer
+         *
+         * @param message
+         */
+        public void send(String message) {
+
+            start();
+            emit(message);
+        }
+
+        private void start() {
+
+            if (started.compareAndSet(false, true)) {
+                // the backoff starts again from 1s once a connection is established
+                connection = Flux.defer(this::connect)
+                    .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1L)).maxBackoff(Duration.ofSeconds(30L))
+                        .transientErrors(true).filter(e -> !closed).doBeforeRetry(
+                            r -> log.warn("WebSocket {} reconnecting: {}", uri, r.failure().getMessage())))
+                    .repeatWhen(completed -> completed.takeWhile(n -> !closed)
+                        .flatMap(n -> Mono.delay(Duration.ofSeconds(1L))))
+                    .subscribe(v -> {
+                    }, e -> log.error("WebSocket {} stopped.", uri, e));
+            }
+        }
+
+        /**
+         * @return emits once the session is established, completes when it is closed
+         */
+        private Flux<Boolean> connect() {
+
+            final Sinks.Many<String> sink = Sinks.many().unicast().onBackpressureBuffer();
+            final Sinks.One<Boolean> established = Sinks.one();
+            Mono<Void> execution = webSocketClient.execute(uri, session -> {
+                established.tryEmitValue(true);
+                connects.increment();
+                log.info("WebSocket {} connected.", uri);
+                synchronized (this) {
+                    outbound = sink;
+                    subscriptions.values().forEach(s -> sink.tryEmitNext(s.subscribeMessage));
+                }
+                drain();
+                Mono<Void> send =
+                    session.send(Flux.merge(sink.asFlux().map(session::textMessage), heartbeats(session)));
+                Mono<Void> receive = session.receive().map(WebSocketMessage::getPayloadAsText).doOnNext(this::route)
+                    .then();
+                return Mono.firstWithSignal(send, receive);
+            }).doFinally(s -> {
+                established.tryEmitEmpty();
+                disconnected(sink);
+            });
+            return Flux.merge(execution.cast(Boolean.class), established.asMono());
+        }
+
+        private Flux<WebSocketMessage> heartbeats(WebSocketSession session) {
+
+            return Flux.interval(options.getHeartbeat(), options.getHeartbeat()).map(
+                i -> options.getHeartbeatMessage() != null ? session.textMessage(options.getHeartbeatMessage()) :
+                    session.pingMessage(factory -> factory.wrap(new byte[0])));
+        }
+
+        private void route(String message) {
+
+            received.increment();
+            if (options.getAutoReply() != null) {
+                String reply = options.getAutoReply().apply(message);
+                if (reply != null) {
+                    emit(reply);
+                    return;
+                }
+            }
+            String key = options.getRouter().apply(message);
+            if (key != null) {
+                Sinks.One<String> answer = requests.remove(key);
+                if (answer != null) {
+                    answer.tryEmitValue(message);
+                    return;
+                }
+                Subscription subscription = subscriptions.get(key);
+                if (subscription != null) {
+                    subscription.sink.emit(message);
+                    return;
+                }
+                // eg: a late frame after the unsubscribe or the ack of an unknown id, not an answer
+                unrouted.increment();
+                return;
+            }
+            Sinks.One<String> answer = anonymous.poll();
+            if (answer != null) {
+                answer.tryEmitValue(message);
+            } else {
+                unrouted.increment();
+            }
+        }
+
+        private void emit(String message) {
+
+            backlog.offer(message);
+            drain();
+        }
+
+        private synchronized void drain() {
+
+            Sinks.Many<String> sink = outbound;
+            if (sink == null) {
+                return;
+            }
+            String message;
+            while ((message = backlog.poll()) != null) {
+                sink.tryEmitNext(message);
+            }
+        }
+
+        private void disconnected(Sinks.Many<String> sink) {
+
+            synchronized (this) {
+                if (outbound == sink) {
+                    outbound = null;
+                }
+            }
+            sink.tryEmitComplete();
+            log.warn("WebSocket {} disconnected.", uri);
+            BusinessException error = new BusinessException("WebSocket disconnected: " + uri);
+            requests.values().forEach(answer -> answer.tryEmitError(error));
+            requests.clear();
+            Sinks.One<String> answer;
+            while ((answer = anonymous.poll()) != null) {
+                answer.tryEmitError(error);
+            }
+        }
+
+        void close() {
+
+            closed = true;
+            Disposable current = connection;
+            if (current != null) {
+                current.dispose();
+            }
+            subscriptions.values().forEach(s -> s.sink.complete());
+            subscriptions.clear();
+        }
+
+        SessionStats stats() {
+
+            long droppedSum = dropped.sum();
+            long conflatedSum = conflated.sum();
+            Map<String, BoundedSink.Stats> channels = Maps.newTreeMap();
+            for (Map.Entry<String, Subscription> entry : subscriptions.entrySet()) {
+                BoundedSink.Stats stats = entry.getValue().sink.stats();
+                channels.put(entry.getKey(), stats);
+                droppedSum += stats.getDropped();
+                conflatedSum += stats.getConflated();
+            }
+            return new SessionStats(outbound != null, connects.sum(), received.sum(), unrouted.sum(), droppedSum,
+                conflatedSum, requests.size() + anonymous.size(), channels);
+        }
+    }
+
+    private static class Subscription {
+
+        private final String subscribeMessage;
+        private final String unsubscribeMessage;
+        private final BoundedSink<String> sink;
+        /**
+         * the subscribers of the channel share the bounded sink
+         */
+        private final Flux<String> flux;
+        /**
+         * changed in the compute of the channel only
+         */
+        private int refs;
+
+        Subscription(String subscribeMessage, String unsubscribeMessage, BoundedSink<String> sink) {
+
+            this.subscribeMessage = subscribeMessage;
+            this.unsubscribeMessage = unsubscribeMessage;
+            this.sink = sink;
+            this.flux = sink.asFlux().publish(Queues.XS_BUFFER_SIZE).autoConnect();
+        }
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class SessionStats {
+
+        private boolean connected;
+
+        private long connects;
+
+        private long received;
+
+        /**
+         * the messages nobody waited for
+         */
+        private long unrouted;
+
+        /**
+         * the messages the subscription buffers dropped on overflow
+         */
+        private long dropped;
+
+        /**
+         * the messages replaced by a newer one of the same key
+         */
+        private long conflated;
+
+        private int pending;
+
+        private Map<String, BoundedSink.Stats> subscriptions;
+    }
+}
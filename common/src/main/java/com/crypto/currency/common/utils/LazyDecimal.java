@@ -0,0 +1,186 @@
+package com.crypto.currency.common.utils;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * @author Panzi
+ * @Description A json number kept as its text, the BigDecimal is only built when the value is read.
+ * the response classes declare it for the numbers they may not read, so the unread fields of every symbol
+ * cost a string instead of a BigDecimal. deserialized from a number or a string, "" and "null" are null.
+ * @date 2022/7/10 21:05
+ */
+@JsonDeserialize(using = LazyDecimal.Deserializer.class)
+public final class LazyDecimal extends Number implements Comparable<LazyDecimal> {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * the digits of a long without overflow
+     */
+    private static final int MAX_LONG_DIGITS = 18;
+
+    private final String text;
+
+    /**
+     * built on the first read, the race of two readers builds it twice
+     */
+    private transient BigDecimal decimal;
+
+    private LazyDecimal(String text) {
+        this.text = text;
+    }
+
+    /**
+     * @param text a json number
+     * @return null if blank or "null"
+     */
+    public static LazyDecimal of(String text) {
+        return StringUtils.isBlank(text) || "null".equals(text) ? null : new LazyDecimal(text.trim());
+    }
+
+    /**
+     * @param value
+     * @return the BigDecimal, null if null
+     */
+    public static BigDecimal toDecimal(LazyDecimal value) {
+        return value == null ? null : value.decimalValue();
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    @JsonValue
+    public BigDecimal decimalValue() {
+
+        BigDecimal value = decimal;
+        if (value == null) {
+            value = new BigDecimal(text);
+            decimal = value;
+        }
+        return value;
+    }
+
+    /**
+     * the fixed-point value, read from the text without a BigDecimal when it fits a long
+     *
+     * @param scale the decimal places kept, the others are truncated
+     * @return value * 10^scale
+     */
+    public long toFixed(int scale) {
+
+        long unscaled = 0;
+        int digits = 0;
+        int decimals = -1;
+        boolean negative = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (decimals == scale) {
+                    continue;
+                }
+                if (unscaled > 0 || c != '0') {
+                    digits++;
+                }
+                unscaled = unscaled * 10 + (c - '0');
+                if (decimals >= 0) {
+                    decimals++;
+                }
+            } else if (c == '.' && decimals < 0) {
+                decimals = 0;
+            } else if ((c == '-' || c == '+') && i == 0) {
+                negative = c == '-';
+            } else {
+                // exponent or not a number
+                return toFixedExact(scale);
+            }
+            if (digits > MAX_LONG_DIGITS) {
+                return toFixedExact(scale);
+            }
+        }
+        for (int i = Math.max(decimals, 0); i < scale; i++) {
+            if (++digits > MAX_LONG_DIGITS) {
+                return toFixedExact(scale);
+            }
+            unscaled *= 10;
+        }
+        return negative ? -unscaled : unscaled;
+    }
+
+    private long toFixedExact(int scale) {
+        return decimalValue().setScale(scale, RoundingMode.DOWN).unscaledValue().longValueExact();
+    }
+
+    @Override
+    public int intValue() {
+        return decimalValue().intValue();
+    }
+
+    @Override
+    public long longValue() {
+        return decimalValue().longValue();
+    }
+
+    @Override
+    public float floatValue() {
+        return Float.parseFloat(text);
+    }
+
+    @Override
+    public double doubleValue() {
+        return Double.parseDouble(text);
+    }
+
+    @Override
+    public int compareTo(LazyDecimal other) {
+        return decimalValue().compareTo(other.decimalValue());
+    }
+
+    /**
+     * equal numbers, whatever the scale: 1.0 equals 1
+     *
+     * @param o
+     * @return
+     */
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) {
+            return true;
+        }
+        return o instanceof LazyDecimal && compareTo((LazyDecimal)o) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+        return decimalValue().stripTrailingZeros().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+    public static class Deserializer extends JsonDeserializer<LazyDecimal> {
+
+        @Override
+        public LazyDecimal deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+
+            JsonToken token = parser.currentToken();
+            if (token == JsonToken.VALUE_NUMBER_INT || token == JsonToken.VALUE_NUMBER_FLOAT
+                || token == JsonToken.VALUE_STRING) {
+                return of(parser.getText());
+            }
+            return (LazyDecimal)context.handleUnexpectedToken(LazyDecimal.class, parser);
+        }
+    }
+}
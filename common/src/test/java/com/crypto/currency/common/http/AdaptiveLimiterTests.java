@@ -0,0 +1,88 @@
+package com.crypto.currency.common.http;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTests {
+
+    private static final String HEADER = "X-MBX-USED-WEIGHT-1M";
+
+    @Test
+    void halvesTheConcurrencyOncePerWindowAboveTheHighWatermark() {
+
+        AdaptiveLimiter limiter = new AdaptiveLimiter(HEADER, false, 1000, 8, null);
+
+        limiter.onResponse(usage("950"));
+        assertEquals(4, limiter.stats().getConcurrency());
+        limiter.onResponse(usage("990"));
+        assertEquals(4, limiter.stats().getConcurrency());
+        assertEquals(990, limiter.stats().getUsed());
+    }
+
+    @Test
+    void growsTheConcurrencyByOneBelowTheLowWatermark() {
+
+        AdaptiveLimiter limiter = new AdaptiveLimiter(HEADER, false, 1000, 8, null);
+        limiter.onResponse(usage("950"));
+
+        limiter.onResponse(usage("800"));
+        assertEquals(4, limiter.stats().getConcurrency());
+        limiter.onResponse(usage("100"));
+        limiter.onResponse(usage("100"));
+        assertEquals(6, limiter.stats().getConcurrency());
+        for (int i = 0; i < 10; i++) {
+            limiter.onResponse(usage("100"));
+        }
+        assertEquals(8, limiter.stats().getConcurrency());
+    }
+
+    @Test
+    void readsTheRemainingQuota() {
+
+        AdaptiveLimiter limiter = new AdaptiveLimiter(HEADER, true, 1000, 8, null);
+
+        limiter.onResponse(usage("50"));
+        assertEquals(950, limiter.stats().getUsed());
+        assertEquals(4, limiter.stats().getConcurrency());
+    }
+
+    @Test
+    void syncsTheBucketWithTheReportedUsage() {
+
+        RateLimiter bucket = new RateLimiter(1000, 60000L);
+        AdaptiveLimiter limiter = new AdaptiveLimiter(HEADER, false, 1000, 8, bucket);
+
+        limiter.onResponse(usage("900"));
+        assertEquals(0L, bucket.reserve(50));
+        assertTrue(bucket.reserve(1) > 0);
+    }
+
+    @Test
+    void queuesTheAcquiresBeyondTheConcurrency() {
+
+        AdaptiveLimiter limiter = new AdaptiveLimiter(HEADER, false, 1000, 1, null);
+        limiter.acquire().block();
+
+        AtomicBoolean acquired = new AtomicBoolean();
+        limiter.acquire().subscribe(slot -> acquired.set(true));
+        assertFalse(acquired.get());
+        assertEquals(1, limiter.stats().getWaiting());
+
+        limiter.release();
+        assertTrue(acquired.get());
+        assertEquals(1, limiter.stats().getInFlight());
+    }
+
+    private static HttpHeaders usage(String used) {
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HEADER, used);
+        return headers;
+    }
+}
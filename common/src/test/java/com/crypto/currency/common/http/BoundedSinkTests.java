@@ -0,0 +1,78 @@
+package com.crypto.currency.common.http;
+
+import com.crypto.currency.common.exception.BusinessException;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BoundedSinkTests {
+
+    @Test
+    void dropsTheOldestMessageOnOverflow() {
+
+        BoundedSink<String> sink = new BoundedSink<>(2, BoundedSink.Overflow.DROP_OLDEST, null);
+        sink.emit("a");
+        sink.emit("b");
+        sink.emit("c");
+        sink.complete();
+
+        assertEquals(Arrays.asList("b", "c"), sink.asFlux().collectList().block());
+        assertEquals(1, sink.stats().getDropped());
+        assertEquals(1, sink.stats().getOverflows());
+    }
+
+    @Test
+    void keepsTheLatestMessageOfEveryKey() {
+
+        BoundedSink<String> sink = new BoundedSink<>(2, BoundedSink.Overflow.LATEST, v -> v.substring(0, 1));
+        sink.emit("a1");
+        sink.emit("b1");
+        sink.emit("a2");
+        sink.emit("c1");
+        sink.complete();
+
+        assertEquals(Arrays.asList("b1", "c1"), sink.asFlux().collectList().block());
+        assertEquals(1, sink.stats().getConflated());
+        assertEquals(1, sink.stats().getDropped());
+    }
+
+    @Test
+    void sendsTheLatestValueInTheOrderOfTheFirstOne() {
+
+        BoundedSink<String> sink = new BoundedSink<>(4, BoundedSink.Overflow.LATEST, v -> v.substring(0, 1));
+        sink.emit("a1");
+        sink.emit("b1");
+        sink.emit("a2");
+        sink.complete();
+
+        List<String> messages = sink.asFlux().collectList().block();
+        assertEquals(Arrays.asList("a2", "b1"), messages);
+    }
+
+    @Test
+    void failsTheSubscriberOnOverflow() {
+
+        BoundedSink<String> sink = new BoundedSink<>(1, BoundedSink.Overflow.ERROR, null);
+        sink.emit("a");
+        sink.emit("b");
+
+        assertThrows(BusinessException.class, () -> sink.asFlux().collectList().block());
+        assertEquals(1, sink.stats().getOverflows());
+        assertEquals(0, sink.stats().getBuffered());
+    }
+
+    @Test
+    void buffersUpToTheDemand() {
+
+        BoundedSink<String> sink = new BoundedSink<>(4, BoundedSink.Overflow.DROP_OLDEST, null);
+        sink.emit("a");
+        sink.emit("b");
+        sink.emit("c");
+
+        assertEquals(Arrays.asList("a", "b"), sink.asFlux().take(2).collectList().block());
+    }
+}
@@ -0,0 +1,136 @@
+package com.crypto.currency.common.http;
+
+import com.crypto.currency.common.exception.CallNotPermittedException;
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CircuitBreakerTests {
+
+    private static final long NEVER_SLOW = 60000L;
+
+    @Test
+    void opensAtTheFailureRate() {
+
+        CircuitBreaker breaker = breaker(60000L, 2);
+        succeed(breaker);
+        succeed(breaker);
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(1, breaker.stats().getOpened());
+    }
+
+    @Test
+    void rejectsWhileOpen() {
+
+        CircuitBreaker breaker = breaker(60000L, 2);
+        tripOpen(breaker);
+        assertThrows(CallNotPermittedException.class, () -> breaker.protect(Mono.just(1)).block());
+        assertEquals(1, breaker.stats().getRejected());
+    }
+
+    @Test
+    void closesAfterTheTrialCallsSucceed() {
+
+        CircuitBreaker breaker = breaker(0L, 2);
+        tripOpen(breaker);
+        succeed(breaker);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        succeed(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void opensAgainWhenATrialCallFails() {
+
+        CircuitBreaker breaker = breaker(0L, 2);
+        tripOpen(breaker);
+        succeed(breaker);
+        fail(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertEquals(2, breaker.stats().getOpened());
+    }
+
+    @Test
+    void rejectsTheCallsOverTheTrials() {
+
+        CircuitBreaker breaker = breaker(0L, 1);
+        tripOpen(breaker);
+        Sinks.One<Integer> trial = Sinks.one();
+        breaker.protect(trial.asMono()).subscribe();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertThrows(CallNotPermittedException.class, () -> breaker.protect(Mono.just(1)).block());
+
+        trial.tryEmitValue(1);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void aCancelledTrialFreesItsPlace() {
+
+        CircuitBreaker breaker = breaker(0L, 1);
+        tripOpen(breaker);
+        Disposable trial = breaker.protect(Sinks.<Integer>one().asMono()).subscribe();
+        trial.dispose();
+        succeed(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void ignoresTheCallsStartedBeforeATransition() {
+
+        CircuitBreaker breaker = breaker(0L, 1);
+        Sinks.One<Integer> late = Sinks.one();
+        breaker.protect(late.asMono()).subscribe(v -> {
+        }, e -> {
+        });
+        tripOpen(breaker);
+        succeed(breaker);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+
+        late.tryEmitError(new IllegalStateException("late"));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(0, breaker.stats().getCalls());
+    }
+
+    @Test
+    void opensAtTheSlowCallRate() {
+
+        CircuitBreaker breaker =
+            new CircuitBreaker("test", new CircuitBreaker.Settings(4, 2, 100, 50, 0L, 60000L, 1));
+        succeed(breaker);
+        succeed(breaker);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+
+    /**
+     * window 4, opened at 50% failures after 4 calls
+     */
+    private static CircuitBreaker breaker(long openWait, int halfOpenCalls) {
+        return new CircuitBreaker("test", new CircuitBreaker.Settings(4, 4, 50, 100, NEVER_SLOW, openWait,
+            halfOpenCalls));
+    }
+
+    private static void tripOpen(CircuitBreaker breaker) {
+
+        for (int i = 0; i < 4; i++) {
+            fail(breaker);
+        }
+        assertEquals(CircuitBreaker.State.OPEN, breaker.stats().getState());
+    }
+
+    private static void succeed(CircuitBreaker breaker) {
+        breaker.protect(Mono.just(1)).block();
+    }
+
+    private static void fail(CircuitBreaker breaker) {
+        assertThrows(IllegalStateException.class,
+            () -> breaker.protect(Mono.error(new IllegalStateException("down"))).block());
+    }
+}
@@ -0,0 +1,119 @@
+package com.crypto.currency.common.http;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MetadataCacheTests {
+
+    private static final long MINUTE = 60000L;
+
+    @Test
+    void servesTheSnapshotWithinTheTtl() {
+
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache<Integer> cache =
+            new MetadataCache<>("test", () -> Mono.fromSupplier(loads::incrementAndGet), MINUTE, MINUTE, MINUTE);
+
+        assertEquals(1, cache.get().block());
+        assertEquals(1, cache.get().block());
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.stats().getHits());
+    }
+
+    @Test
+    void joinsTheLoadInFlight() {
+
+        AtomicInteger loads = new AtomicInteger();
+        Sinks.One<Integer> response = Sinks.one();
+        MetadataCache<Integer> cache = new MetadataCache<>("test", () -> {
+            loads.incrementAndGet();
+            return response.asMono();
+        }, MINUTE, MINUTE, MINUTE);
+
+        Mono<Integer> first = cache.get();
+        Mono<Integer> second = cache.get();
+        first.subscribe();
+        second.subscribe();
+        response.tryEmitValue(7);
+
+        assertEquals(7, first.block());
+        assertEquals(7, second.block());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void servesTheStaleSnapshotWhileItRefreshes() throws InterruptedException {
+
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache<Integer> cache =
+            new MetadataCache<>("test", () -> Mono.fromSupplier(loads::incrementAndGet), 0L, 0L, MINUTE);
+
+        assertEquals(1, cache.get().block());
+        assertEquals(1, cache.get().block());
+        assertEquals(1, cache.stats().getStaleHits());
+
+        for (int i = 0; i < 100 && cache.stats().getLoads() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, cache.get().block());
+    }
+
+    @Test
+    void reloadsAfterTheMaxStaleAge() throws InterruptedException {
+
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache<Integer> cache =
+            new MetadataCache<>("test", () -> Mono.fromSupplier(loads::incrementAndGet), 1L, 1L, 1L);
+
+        assertEquals(1, cache.get().block());
+        Thread.sleep(5);
+        assertEquals(2, cache.get().block());
+    }
+
+    @Test
+    void refreshesAheadTheSnapshotInUse() throws InterruptedException {
+
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache<Integer> cache =
+            new MetadataCache<>("test", () -> Mono.fromSupplier(loads::incrementAndGet), 20L, 10L, MINUTE);
+
+        assertEquals(1, cache.get().block());
+        assertEquals(1, cache.get().block());
+        for (int i = 0; i < 100 && loads.get() < 2; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(2, loads.get());
+        assertEquals(2, cache.get().block());
+    }
+
+    @Test
+    void doesNotRefreshAnUnreadSnapshot() throws InterruptedException {
+
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache<Integer> cache =
+            new MetadataCache<>("test", () -> Mono.fromSupplier(loads::incrementAndGet), 20L, 10L, MINUTE);
+
+        assertEquals(1, cache.get().block());
+        Thread.sleep(100);
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void retriesAFailedLoad() {
+
+        AtomicInteger loads = new AtomicInteger();
+        MetadataCache<Integer> cache = new MetadataCache<>("test",
+            () -> loads.incrementAndGet() == 1 ? Mono.error(new IllegalStateException("down")) : Mono.just(2),
+            MINUTE, MINUTE, MINUTE);
+
+        assertThrows(IllegalStateException.class, () -> cache.get().block());
+        assertEquals(1, cache.stats().getFailures());
+        assertEquals(2, cache.get().block());
+    }
+}
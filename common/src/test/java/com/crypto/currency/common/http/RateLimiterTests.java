@@ -0,0 +1,71 @@
+package com.crypto.currency.common.http;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimiterTests {
+
+    private static final long MINUTE = 60000L;
+
+    @Test
+    void takesTheTokensOfTheWeight() {
+
+        RateLimiter limiter = new RateLimiter(10, MINUTE);
+
+        assertEquals(0L, limiter.reserve(6));
+        assertEquals(0L, limiter.reserve(4));
+        assertTrue(limiter.reserve(6) > 0);
+    }
+
+    @Test
+    void waitsForTheDebtToRefill() {
+
+        RateLimiter limiter = new RateLimiter(10, 1000L);
+        limiter.reserve(10);
+
+        long wait = limiter.reserve(1);
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(90) && wait <= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    void stopsEveryRequestUntilTheRetryAfter() {
+
+        RateLimiter limiter = new RateLimiter(0, 1000L);
+        limiter.pause(Duration.ofSeconds(2L));
+
+        long wait = limiter.reserve(1);
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(1900) && wait <= TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1, limiter.stats().getThrottled());
+    }
+
+    @Test
+    void refillsTheBucketFromTheEndOfThePause() {
+
+        RateLimiter limiter = new RateLimiter(100, 1000L);
+        limiter.pause(Duration.ofMillis(100L));
+
+        long wait = limiter.reserve(1);
+        assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(100) && wait <= TimeUnit.MILLISECONDS.toNanos(110));
+    }
+
+    @Test
+    void readsTheRetryAfterInSecondsOrAsADate() {
+
+        HttpHeaders seconds = new HttpHeaders();
+        seconds.set(HttpHeaders.RETRY_AFTER, "5");
+        assertEquals(Duration.ofSeconds(5L), AsynHttpClient.DefaultWebClient.retryAfter(seconds));
+
+        HttpHeaders date = new HttpHeaders();
+        date.setDate(HttpHeaders.RETRY_AFTER, System.currentTimeMillis() + 3000L);
+        Duration untilDate = AsynHttpClient.DefaultWebClient.retryAfter(date);
+        assertTrue(untilDate.toMillis() > 1000L && untilDate.toMillis() <= 3000L);
+
+        assertEquals(Duration.ofSeconds(1L), AsynHttpClient.DefaultWebClient.retryAfter(new HttpHeaders()));
+    }
+}
@@ -0,0 +1,65 @@
+package com.crypto.currency.common.http;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SingleFlightTests {
+
+    @Test
+    void sharesTheRequestInFlight() {
+
+        SingleFlight<Integer> flights = new SingleFlight<>(0L);
+        AtomicInteger calls = new AtomicInteger();
+        Sinks.One<Integer> response = Sinks.one();
+
+        Mono<Integer> first = flights.execute("key", () -> {
+            calls.incrementAndGet();
+            return response.asMono();
+        });
+        Mono<Integer> second = flights.execute("key", () -> Mono.just(calls.incrementAndGet()));
+        List<Integer> results = Lists.newArrayList();
+        first.subscribe(results::add);
+        second.subscribe(results::add);
+        response.tryEmitValue(7);
+
+        assertEquals(Arrays.asList(7, 7), results);
+        assertEquals(1, calls.get());
+        assertEquals(0, flights.size());
+    }
+
+    @Test
+    void keepsTheResultForTheTtl() throws InterruptedException {
+
+        SingleFlight<Integer> flights = new SingleFlight<>(50L);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals(1, flights.execute("key", () -> Mono.fromSupplier(calls::incrementAndGet)).block());
+        assertEquals(1, flights.execute("key", () -> Mono.fromSupplier(calls::incrementAndGet)).block());
+        assertEquals(2, flights.execute("other", () -> Mono.fromSupplier(calls::incrementAndGet)).block());
+
+        for (int i = 0; i < 100 && flights.size() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(3, flights.execute("key", () -> Mono.fromSupplier(calls::incrementAndGet)).block());
+    }
+
+    @Test
+    void neverKeepsAnError() {
+
+        SingleFlight<Integer> flights = new SingleFlight<>(60000L);
+
+        assertThrows(IllegalStateException.class,
+            () -> flights.execute("key", () -> Mono.<Integer>error(new IllegalStateException("down"))).block());
+        assertEquals(0, flights.size());
+        assertEquals(2, flights.execute("key", () -> Mono.just(2)).block());
+    }
+}
@@ -0,0 +1,86 @@
+package com.crypto.currency.common.http;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValidatorCacheTests {
+
+    private static final String URL = "https://api.exchange.com/symbols";
+
+    @Test
+    void sendsTheValidatorsOfTheCachedResponse() {
+
+        ValidatorCache cache = new ValidatorCache();
+        cache.onResponse(URL, ok("[1]", "\"v1\"", "Wed, 21 Oct 2015 07:28:00 GMT"));
+
+        HttpHeaders headers = new HttpHeaders();
+        cache.applyValidators(URL, headers);
+        assertEquals("\"v1\"", headers.getFirst(HttpHeaders.IF_NONE_MATCH));
+        assertEquals("Wed, 21 Oct 2015 07:28:00 GMT", headers.getFirst(HttpHeaders.IF_MODIFIED_SINCE));
+    }
+
+    @Test
+    void answersANotModifiedWithTheCachedBody() {
+
+        ValidatorCache cache = new ValidatorCache();
+        cache.onResponse(URL, ok("[1]", "\"v1\"", null));
+
+        ResponseEntity<String> response = cache.onResponse(URL, ResponseEntity.status(HttpStatus.NOT_MODIFIED).build());
+        assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode());
+        assertEquals("[1]", response.getBody());
+        assertEquals(1, cache.stats().getHits());
+        assertEquals(3, cache.stats().getBytesSaved());
+    }
+
+    @Test
+    void parsesTheCachedBodyOnce() {
+
+        ValidatorCache cache = new ValidatorCache();
+        AtomicInteger parses = new AtomicInteger();
+        String body = cache.onResponse(URL, ok("[1]", "\"v1\"", null)).getBody();
+        String cached =
+            cache.onResponse(URL, ResponseEntity.status(HttpStatus.NOT_MODIFIED).<String>build()).getBody();
+
+        Object first = cache.parse(URL, body, b -> new Object[] {parses.incrementAndGet()});
+        Object second = cache.parse(URL, cached, b -> new Object[] {parses.incrementAndGet()});
+        assertSame(first, second);
+        assertEquals(1, parses.get());
+    }
+
+    @Test
+    void dropsTheEntryOfAResponseWithoutValidators() {
+
+        ValidatorCache cache = new ValidatorCache();
+        cache.onResponse(URL, ok("[1]", "\"v1\"", null));
+        cache.onResponse(URL, ok("[2]", null, null));
+
+        HttpHeaders headers = new HttpHeaders();
+        cache.applyValidators(URL, headers);
+        assertNull(headers.getFirst(HttpHeaders.IF_NONE_MATCH));
+        assertFalse(cache.isAnswerable(URL, ResponseEntity.status(HttpStatus.NOT_MODIFIED).build()));
+        assertTrue(cache.isAnswerable(URL, ok("[2]", null, null)));
+        assertEquals(0, cache.stats().getEntries());
+    }
+
+    private static ResponseEntity<String> ok(String body, String etag, String lastModified) {
+
+        HttpHeaders headers = new HttpHeaders();
+        if (etag != null) {
+            headers.setETag(etag);
+        }
+        if (lastModified != null) {
+            headers.set(HttpHeaders.LAST_MODIFIED, lastModified);
+        }
+        return ResponseEntity.ok().headers(headers).body(body);
+    }
+}
@@ -0,0 +1,48 @@
+package com.crypto.currency.common.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LazyDecimalTests {
+
+    @Test
+    void readsTheFixedPointValueFromTheText() {
+
+        assertEquals(12345L, LazyDecimal.of("123.45").toFixed(2));
+        assertEquals(1234500L, LazyDecimal.of("123.45").toFixed(4));
+        assertEquals(123L, LazyDecimal.of("123.459").toFixed(0));
+        assertEquals(5L, LazyDecimal.of("0.00000500").toFixed(6));
+        assertEquals(-150L, LazyDecimal.of("-1.5").toFixed(2));
+        assertEquals(100L, LazyDecimal.of("1").toFixed(2));
+    }
+
+    @Test
+    void truncatesTheDecimalsBeyondTheScale() {
+
+        assertEquals(1L, LazyDecimal.of("0.0199").toFixed(2));
+        assertEquals(0L, LazyDecimal.of("0.000001").toFixed(4));
+    }
+
+    @Test
+    void fallsBackToTheBigDecimalForExponentsAndLongValues() {
+
+        assertEquals(150L, LazyDecimal.of("1.5e2").toFixed(0));
+        assertEquals(15L, LazyDecimal.of("1.5E-5").toFixed(6));
+        assertEquals(123456789012345678L, LazyDecimal.of("1234567890.12345678901").toFixed(8));
+        assertThrows(ArithmeticException.class, () -> LazyDecimal.of("12345678901234567890").toFixed(0));
+    }
+
+    @Test
+    void keepsTheBlankAndNullTextsNull() {
+
+        assertNull(LazyDecimal.of(""));
+        assertNull(LazyDecimal.of("null"));
+        assertEquals(new BigDecimal("1.50"), LazyDecimal.toDecimal(LazyDecimal.of(" 1.50 ")));
+        assertEquals(LazyDecimal.of("1.5"), LazyDecimal.of("1.50"));
+    }
+}
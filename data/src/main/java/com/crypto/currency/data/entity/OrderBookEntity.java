@@ -0,0 +1,81 @@
+package com.crypto.currency.data.entity;
+
+import com.crypto.currency.data.enums.DataType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * @author Panzi
+ * @Description kafka order book message, the levels are kept as parallel arrays of fixed-point longs:
+ * the amount of bidPrices[i] is bidAmounts[i], the price is bidPrices[i] / 10^priceScale and the amount is
+ * bidAmounts[i] / 10^amountScale.
+ * @date 2022/7/2 20:40
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class OrderBookEntity {
+
+    private Integer exchangeId;
+
+    private String exchangeName;
+
+    private String baseSymbol;
+
+    private String mainSymbol;
+
+    private LocalDateTime pushTime;
+
+    private LocalDateTime updatedTime;
+
+    private DataType dataType;
+
+    /**
+     * the decimals of the prices and of the amounts
+     */
+    private int priceScale;
+    private int amountScale;
+
+    /**
+     * by price descending
+     */
+    private long[] bidPrices;
+    private long[] bidAmounts;
+
+    /**
+     * by price ascending
+     */
+    private long[] askPrices;
+    private long[] askAmounts;
+
+    /**
+     * the levels of the exchange before the depth truncation
+     */
+    private int bidLevels;
+    private int askLevels;
+
+    /**
+     * (best bid + best ask) / 2
+     */
+    private double midPrice;
+
+    /**
+     * (best ask - best bid) / mid price * 100
+     */
+    private double spreadPercentage;
+
+    /**
+     * the main volume of the bids within 2% below the mid price, of the full book
+     */
+    private double negativeTwoPercentDepth;
+
+    /**
+     * the main volume of the asks within 2% above the mid price, of the full book
+     */
+    private double positiveTwoPercentDepth;
+}
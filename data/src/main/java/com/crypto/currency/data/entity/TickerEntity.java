@@ -46,6 +46,26 @@ public class TickerEntity {
 
     private DataType dataType;
 
+    /**
+     * true : the cmcTickers changed since the last message of the exchange only, false : all the cmcTickers
+     */
+    private boolean delta;
+
+    /**
+     * the id of the full snapshot, shared by its parts, null : delta
+     */
+    private Long snapshotId;
+
+    /**
+     * the part of the message, from 1, the tickers over the threshold are split into several parts
+     */
+    private int part;
+
+    /**
+     * the count of the parts of the message
+     */
+    private int parts;
+
     @Data
     @Builder
     @AllArgsConstructor